@@ -1,6 +1,12 @@
 package ru.practicum.shareit.booking;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+
+import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,6 +16,10 @@ import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 
+import ru.practicum.shareit.booking.dto.BookingBatchMode;
+import ru.practicum.shareit.booking.dto.BookingDecisionDto;
+import ru.practicum.shareit.booking.dto.BookingExportFormat;
+import ru.practicum.shareit.booking.dto.BookingFilterDto;
 import ru.practicum.shareit.booking.dto.BookingInDto;
 import ru.practicum.shareit.booking.dto.BookingState;
 import ru.practicum.shareit.client.BaseClient;
@@ -29,23 +39,70 @@ public class BookingClient extends BaseClient {
     }
 
     public ResponseEntity<Object> getAllBookingsByUser(
-            Long userId, BookingState state, Integer from, Integer size) {
-        Map<String, Object> parameters = Map.of(
-                "state", state.name(),
-                "from", from,
-                "size", size
-        );
-        return get("?state={state}&from={from}&size={size}", userId, parameters);
+            Long userId, BookingFilterDto filter, Integer from, Integer size) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("from", from);
+        parameters.put("size", size);
+        return get("?" + filterQuery(filter, parameters) + "&from={from}&size={size}", userId, parameters);
     }
 
     public ResponseEntity<Object> getAllBookingsAllItemsByOwner(
-            Long userId, BookingState state, Integer from, Integer size) {
+            Long userId, BookingFilterDto filter, Integer from, Integer size) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("from", from);
+        parameters.put("size", size);
+        return get("/owner?" + filterQuery(filter, parameters) + "&from={from}&size={size}", userId, parameters);
+    }
+
+    public ResponseEntity<Object> getBookingsPageByUser(Long userId, BookingFilterDto filter, String cursor,
+                                                        Integer size) {
+        return getPage("/page", userId, filter, cursor, size);
+    }
+
+    public ResponseEntity<Object> getBookingsPageByOwner(Long userId, BookingFilterDto filter, String cursor,
+                                                         Integer size) {
+        return getPage("/owner/page", userId, filter, cursor, size);
+    }
+
+    private ResponseEntity<Object> getPage(String path, Long userId, BookingFilterDto filter, String cursor,
+                                           Integer size) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("size", size);
+        String query = filterQuery(filter, parameters) + "&size={size}";
+        if (cursor == null) {
+            return get(path + "?" + query, userId, parameters);
+        }
+        parameters.put("cursor", cursor);
+        return get(path + "?" + query + "&cursor={cursor}", userId, parameters);
+    }
+
+    /**
+     * Параметры фильтра для сервера: состояния через запятую, остальные условия - только заданные.
+     */
+    private static String filterQuery(BookingFilterDto filter, Map<String, Object> parameters) {
+        parameters.put("state", filter.getState().stream().map(BookingState::name).collect(Collectors.joining(",")));
+        StringBuilder query = new StringBuilder("state={state}");
+        if (filter.getItemId() != null) {
+            parameters.put("itemId", filter.getItemId());
+            query.append("&itemId={itemId}");
+        }
+        if (filter.getRangeStart() != null) {
+            parameters.put("rangeStart", filter.getRangeStart());
+            query.append("&rangeStart={rangeStart}");
+        }
+        if (filter.getRangeEnd() != null) {
+            parameters.put("rangeEnd", filter.getRangeEnd());
+            query.append("&rangeEnd={rangeEnd}");
+        }
+        return query.toString();
+    }
+
+    public void exportBookingsByUser(Long userId, BookingExportFormat format, HttpServletResponse response)
+            throws IOException {
         Map<String, Object> parameters = Map.of(
-                "state", state.name(),
-                "from", from,
-                "size", size
+                "format", format.name()
         );
-        return get("/owner?state={state}&from={from}&size={size}", userId, parameters);
+        download("/export?format={format}", userId, parameters, response);
     }
 
     public ResponseEntity<Object> getBooking(Long userId, Long bookingId) {
@@ -57,6 +114,17 @@ public class BookingClient extends BaseClient {
         return post("", userId, bookingInDto);
     }
 
+    public ResponseEntity<Object> saveBookings(Long userId, BookingBatchMode mode, List<BookingInDto> bookings) {
+        Map<String, Object> parameters = Map.of(
+                "mode", mode.name()
+        );
+        return post("/batch?mode={mode}", userId, parameters, bookings);
+    }
+
+    public ResponseEntity<Object> updateBookings(Long userId, List<BookingDecisionDto> decisions) {
+        return patch("/batch", userId, decisions);
+    }
+
     public ResponseEntity<Object> updateBooking(Long userId, Long bookingId, Boolean approved) {
         Map<String, Object> parameters = Map.of(
                 "approved", approved
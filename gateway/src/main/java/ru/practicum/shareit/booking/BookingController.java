@@ -1,14 +1,25 @@
 package ru.practicum.shareit.booking;
 
+import ru.practicum.shareit.booking.dto.BookingBatchMode;
+import ru.practicum.shareit.booking.dto.BookingDecisionDto;
+import ru.practicum.shareit.booking.dto.BookingExportFormat;
 import ru.practicum.shareit.booking.dto.BookingInDto;
-import ru.practicum.shareit.booking.dto.BookingState;
+import ru.practicum.shareit.booking.dto.BookingFilterDto;
+import ru.practicum.shareit.exception.BadRequest;
 
-import javax.validation.Valid;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.PositiveOrZero;
 
+import java.io.IOException;
+import java.util.List;
+
+import jakarta.servlet.http.HttpServletResponse;
+
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -23,26 +34,68 @@ public class BookingController {
 
 	private final BookingClient bookingClient;
 
+	/**
+	 * Общий предел пакетов создания и решений. Должно совпадать с shareit.bookings.batch-max-size сервера:
+	 * больший пакет сервер все равно отклонит.
+	 */
+	@Value("${shareit.bookings.batch-max-size}")
+	private int batchMaxSize;
+
 	@GetMapping
 	public ResponseEntity<Object> getAllBookingsByUser(
 			@RequestHeader("X-Sharer-User-Id") Long userId,
-			@RequestParam(name = "state", defaultValue = "ALL") BookingState state,
+			BookingFilterDto filter,
 			@PositiveOrZero @RequestParam(name = "from", defaultValue = "0") Integer from,
 			@Positive @RequestParam(name = "size", defaultValue = "10") Integer size) {
-		log.info("Получен список всех бронирований текущего пользователя с id = {}, state = {}, " +
-				"from = {}, size = {}.", userId, state, from, size);
-		return bookingClient.getAllBookingsByUser(userId, state, from, size);
+		log.info("Получен список всех бронирований текущего пользователя с id = {}, filter = {}, " +
+				"from = {}, size = {}.", userId, filter, from, size);
+		return bookingClient.getAllBookingsByUser(userId, filter, from, size);
 	}
 
 	@GetMapping("/owner")
 	public ResponseEntity<Object> getAllBookingsAllItemsByOwner(
 			@RequestHeader("X-Sharer-User-Id") Long userId,
-			@RequestParam(name = "state", defaultValue = "ALL") BookingState state,
+			BookingFilterDto filter,
 			@PositiveOrZero @RequestParam(name = "from", defaultValue = "0") Integer from,
 			@Positive @RequestParam(name = "size", defaultValue = "10") Integer size) {
-		log.info("Получен список всех бронирований для всех вещей владельца с id = {}, state = {}, " +
-				"from = {}, size = {}.", userId, state, from, size);
-		return bookingClient.getAllBookingsAllItemsByOwner(userId, state, from, size);
+		log.info("Получен список всех бронирований для всех вещей владельца с id = {}, filter = {}, " +
+				"from = {}, size = {}.", userId, filter, from, size);
+		return bookingClient.getAllBookingsAllItemsByOwner(userId, filter, from, size);
+	}
+
+	@GetMapping("/page")
+	public ResponseEntity<Object> getBookingsPageByUser(
+			@RequestHeader("X-Sharer-User-Id") Long userId,
+			BookingFilterDto filter,
+			@RequestParam(name = "cursor", required = false) String cursor,
+			@Positive @RequestParam(name = "size", defaultValue = "10") Integer size) {
+		log.info("Получена страница бронирований текущего пользователя с id = {}, filter = {}, " +
+				"cursor = {}, size = {}.", userId, filter, cursor, size);
+		return bookingClient.getBookingsPageByUser(userId, filter, cursor, size);
+	}
+
+	@GetMapping("/owner/page")
+	public ResponseEntity<Object> getBookingsPageByOwner(
+			@RequestHeader("X-Sharer-User-Id") Long userId,
+			BookingFilterDto filter,
+			@RequestParam(name = "cursor", required = false) String cursor,
+			@Positive @RequestParam(name = "size", defaultValue = "10") Integer size) {
+		log.info("Получена страница бронирований для всех вещей владельца с id = {}, filter = {}, " +
+				"cursor = {}, size = {}.", userId, filter, cursor, size);
+		return bookingClient.getBookingsPageByOwner(userId, filter, cursor, size);
+	}
+
+	/**
+	 * Выгрузка может быть сколь угодно длинной, поэтому ответ сервера не разбирается,
+	 * а копируется потоком прямо в ответ шлюза.
+	 */
+	@GetMapping("/export")
+	public void exportBookingsByUser(
+			@RequestHeader("X-Sharer-User-Id") Long userId,
+			@RequestParam(name = "format", defaultValue = "CSV") BookingExportFormat format,
+			HttpServletResponse response) throws IOException {
+		log.info("Получен запрос выгрузки бронирований пользователя с id = {}, format = {}.", userId, format);
+		bookingClient.exportBookingsByUser(userId, format, response);
 	}
 
 	@GetMapping("/{bookingId}")
@@ -61,6 +114,29 @@ public class BookingController {
 		return bookingClient.saveBooking(userId, bookingInDto);
 	}
 
+	/**
+	 * Бронирования пакета проверяет сервер: в режиме BEST_EFFORT ошибка в одном из них
+	 * не должна отклонять весь запрос.
+	 */
+	@PostMapping("/batch")
+	public ResponseEntity<Object> saveBookings(
+			@RequestHeader("X-Sharer-User-Id") Long userId,
+			@RequestParam(name = "mode", defaultValue = "ALL_OR_NOTHING") BookingBatchMode mode,
+			@RequestBody @NotEmpty List<BookingInDto> bookings) throws BadRequest {
+		log.info("Получен пакет из {} бронирований, userId={}, mode = {}.", bookings.size(), userId, mode);
+		checkBatchSize(bookings.size());
+		return bookingClient.saveBookings(userId, mode, bookings);
+	}
+
+	@PatchMapping("/batch")
+	public ResponseEntity<Object> updateBookings(
+			@RequestHeader("X-Sharer-User-Id") Long userId,
+			@RequestBody @NotEmpty List<@Valid BookingDecisionDto> decisions) throws BadRequest {
+		log.info("Получено {} решений по бронированиям, userId={}.", decisions.size(), userId);
+		checkBatchSize(decisions.size());
+		return bookingClient.updateBookings(userId, decisions);
+	}
+
 	@PatchMapping("/{bookingId}")
 	public ResponseEntity<Object> updateBooking(
 			@RequestHeader("X-Sharer-User-Id") Long userId,
@@ -69,4 +145,10 @@ public class BookingController {
 		return bookingClient.updateBooking(userId, bookingId, approved);
 	}
 
+	private void checkBatchSize(int size) throws BadRequest {
+		if (size > batchMaxSize) {
+			throw new BadRequest("В пакете %d элементов, допускается не больше %d.", size, batchMaxSize);
+		}
+	}
+
 }
\ No newline at end of file
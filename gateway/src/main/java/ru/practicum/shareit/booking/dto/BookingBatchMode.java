@@ -0,0 +1,8 @@
+package ru.practicum.shareit.booking.dto;
+
+public enum BookingBatchMode {
+	// Ошибка в любом бронировании отменяет весь пакет
+	ALL_OR_NOTHING,
+	// Создаются все корректные бронирования
+	BEST_EFFORT
+}
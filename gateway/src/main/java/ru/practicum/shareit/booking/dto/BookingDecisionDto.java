@@ -0,0 +1,18 @@
+package ru.practicum.shareit.booking.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+public class BookingDecisionDto {
+
+    @NotNull(message = "У решения должно быть бронирование.")
+    private Long bookingId;
+
+    @NotNull(message = "Решение по бронированию не может быть null.")
+    private Boolean approved;
+}
@@ -0,0 +1,8 @@
+package ru.practicum.shareit.booking.dto;
+
+public enum BookingExportFormat {
+	// Строка заголовка, затем по строке на бронирование
+	CSV,
+	// По JSON-объекту на строку
+	NDJSON
+}
@@ -0,0 +1,30 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Фильтр списков бронирований: несколько состояний (через запятую или повтором параметра),
+ * вещь и период, с которым бронирования пересекаются.
+ */
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+public class BookingFilterDto {
+	private List<BookingState> state = List.of(BookingState.ALL);
+
+	private Long itemId;
+
+	@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+	private LocalDateTime rangeStart;
+
+	@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+	private LocalDateTime rangeEnd;
+}
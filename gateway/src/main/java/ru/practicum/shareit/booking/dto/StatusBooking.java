@@ -5,6 +5,7 @@ public enum StatusBooking {
     WAITING, //  новое бронирование, ожидает одобрения
     APPROVED, // бронирование подтверждено владельцем
     REJECTED, // бронирование отклонено владельцем
-    CANCELED // бронирование отменено создателем
+    CANCELED, // бронирование отменено создателем
+    EXPIRED // владелец не принял решения до начала бронирования
 
 }
\ No newline at end of file
@@ -1,14 +1,18 @@
 package ru.practicum.shareit.client;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
@@ -79,6 +83,35 @@ public class BaseClient {
         return makeAndSendRequest(HttpMethod.DELETE, path, userId, parameters, null);
     }
 
+    /**
+     * Передает ответ сервера в response как есть: статус, тип и имя файла, затем тело.
+     * Тело копируется потоком и в памяти шлюза целиком не собирается.
+     */
+    protected void download(String path, Long userId, Map<String, Object> parameters, HttpServletResponse response)
+            throws IOException {
+        try {
+            rest.execute(path, HttpMethod.GET, request -> {
+                request.getHeaders().setAccept(List.of(MediaType.ALL));
+                request.getHeaders().set("X-Sharer-User-Id", String.valueOf(userId));
+            }, shareitServerResponse -> {
+                response.setStatus(shareitServerResponse.getStatusCode().value());
+                HttpHeaders headers = shareitServerResponse.getHeaders();
+                if (headers.getContentType() != null) {
+                    response.setContentType(headers.getContentType().toString());
+                }
+                if (headers.getFirst(HttpHeaders.CONTENT_DISPOSITION) != null) {
+                    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, headers.getFirst(HttpHeaders.CONTENT_DISPOSITION));
+                }
+                StreamUtils.copy(shareitServerResponse.getBody(), response.getOutputStream());
+                return null;
+            }, parameters);
+        } catch (HttpStatusCodeException e) {
+            response.setStatus(e.getStatusCode().value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getOutputStream().write(e.getResponseBodyAsByteArray());
+        }
+    }
+
     private <T> ResponseEntity<Object> makeAndSendRequest(HttpMethod method, String path, Long userId, @Nullable Map<String, Object> parameters, @Nullable T body) {
         HttpEntity<T> requestEntity = new HttpEntity<>(body, defaultHeaders(userId));
 
@@ -4,6 +4,8 @@ import ru.practicum.shareit.client.BaseClient;
 import ru.practicum.shareit.item.dto.CommentDto;
 import ru.practicum.shareit.item.dto.ItemDto;
 
+import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,13 +50,48 @@ public class ItemClient extends BaseClient {
         return patch("/" + itemId, userId, itemDto);
     }
 
-    public ResponseEntity<Object> findItems(Long userId, String text, Integer from, Integer size) {
+    public ResponseEntity<Object> findItems(Long userId, String text, Integer from, Integer size, Boolean comments) {
         Map<String, Object> parameters = Map.of(
                 "text", text,
                 "from", from,
+                "size", size,
+                "comments", comments
+        );
+        return get("/search?text={text}&from={from}&size={size}&comments={comments}", userId, parameters);
+    }
+
+    public ResponseEntity<Object> findItemsPage(Long userId, String text, String cursor, Integer size, Boolean facets) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("text", text);
+        parameters.put("size", size);
+        parameters.put("facets", facets);
+        if (cursor == null) {
+            return get("/search/page?text={text}&size={size}&facets={facets}", userId, parameters);
+        }
+        parameters.put("cursor", cursor);
+        return get("/search/page?text={text}&cursor={cursor}&size={size}&facets={facets}", userId, parameters);
+    }
+
+    public ResponseEntity<Object> suggest(Long userId, String prefix, Integer size) {
+        Map<String, Object> parameters = Map.of(
+                "prefix", prefix,
                 "size", size
         );
-        return get("/search?text={text}&from={from}&size={size}", userId, parameters);
+        return get("/suggest?prefix={prefix}&size={size}", userId, parameters);
+    }
+
+    public ResponseEntity<Object> getStats(Long userId, LocalDate from, LocalDate to) {
+        Map<String, Object> parameters = new HashMap<>();
+        StringBuilder path = new StringBuilder("/stats");
+        if (from != null) {
+            parameters.put("from", from);
+            path.append(parameters.size() == 1 ? "?" : "&").append("from={from}");
+        }
+        if (to != null) {
+            parameters.put("to", to);
+            path.append(parameters.size() == 1 ? "?" : "&").append("to={to}");
+        }
+        return get(path.toString(), userId, parameters);
     }
 
     public ResponseEntity<Object> saveComment(Long userId, Long itemId, CommentDto commentDto) {
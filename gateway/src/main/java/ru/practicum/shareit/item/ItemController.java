@@ -12,8 +12,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 
+import java.time.LocalDate;
+
 @Controller
 @RequestMapping("/items")
 @RequiredArgsConstructor
@@ -62,10 +65,41 @@ public class ItemController {
             @RequestHeader("X-Sharer-User-Id") Long userId,
             @RequestParam String text,
             @PositiveOrZero @RequestParam(name = "from", defaultValue = "0") Integer from,
+            @Positive @RequestParam(name = "size", defaultValue = "10") Integer size,
+            @RequestParam(name = "comments", defaultValue = "false") Boolean comments) {
+        log.info("Получен список вещей с текстом: {} пользователя с id = {}, from = {}, size = {}, comments = {}.",
+                text, userId, from, size, comments);
+        return itemClient.findItems(userId, text, from, size, comments);
+    }
+
+    @GetMapping("/search/page")
+    public ResponseEntity<Object> findItemsPage(
+            @RequestHeader("X-Sharer-User-Id") Long userId,
+            @RequestParam String text,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @Positive @RequestParam(name = "size", defaultValue = "10") Integer size,
+            @RequestParam(name = "facets", defaultValue = "false") Boolean facets) {
+        log.info("Получена страница вещей с текстом: {} пользователя с id = {}, cursor = {}, size = {}, facets = {}.",
+                text, userId, cursor, size, facets);
+        return itemClient.findItemsPage(userId, text, cursor, size, facets);
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Object> getStats(
+            @RequestHeader("X-Sharer-User-Id") Long userId,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        log.info("Получен запрос статистики вещей пользователя с id = {} с {} по {}.", userId, from, to);
+        return itemClient.getStats(userId, from, to);
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<Object> suggest(
+            @RequestHeader("X-Sharer-User-Id") Long userId,
+            @RequestParam String prefix,
             @Positive @RequestParam(name = "size", defaultValue = "10") Integer size) {
-        log.info("Получен список вещей с текстом: {} пользователя с id = {}, from = {}, size = {}.",
-                text, userId, from, size);
-        return itemClient.findItems(userId, text, from, size);
+        log.info("Получен запрос подсказок по префиксу: {} пользователя с id = {}, size = {}.", prefix, userId, size);
+        return itemClient.suggest(userId, prefix, size);
     }
 
     @PostMapping("/{itemId}/comment")
@@ -0,0 +1,104 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Ограничения пакетов проверяются в шлюзе, до обращения к серверу.
+ */
+@WebMvcTest(BookingController.class)
+class BookingControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private BookingClient bookingClient;
+
+    @Test
+    void decisionsWithinLimitAreForwarded() throws Exception {
+        when(bookingClient.updateBookings(anyLong(), any())).thenReturn(ResponseEntity.ok().build());
+
+        mvc.perform(patch("/bookings/batch")
+                        .header("X-Sharer-User-Id", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonArray(2, "{\"bookingId\":%d,\"approved\":true}")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void tooManyDecisionsAreRejected() throws Exception {
+        mvc.perform(patch("/bookings/batch")
+                        .header("X-Sharer-User-Id", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonArray(101, "{\"bookingId\":%d,\"approved\":true}")))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(bookingClient);
+    }
+
+    @Test
+    void emptyOrIncompleteDecisionsAreRejected() throws Exception {
+        mvc.perform(patch("/bookings/batch")
+                        .header("X-Sharer-User-Id", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(patch("/bookings/batch")
+                        .header("X-Sharer-User-Id", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"bookingId\":1}]"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(bookingClient);
+    }
+
+    @Test
+    void tooManyBookingsAreRejected() throws Exception {
+        mvc.perform(post("/bookings/batch")
+                        .header("X-Sharer-User-Id", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonArray(101, "{\"itemId\":%d}")))
+                .andExpect(status().isBadRequest());
+        mvc.perform(post("/bookings/batch")
+                        .header("X-Sharer-User-Id", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(bookingClient);
+    }
+
+    @Test
+    void bookingsWithinLimitAreForwarded() throws Exception {
+        when(bookingClient.saveBookings(anyLong(), any(), any())).thenReturn(ResponseEntity.status(201).build());
+
+        mvc.perform(post("/bookings/batch")
+                        .header("X-Sharer-User-Id", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonArray(100, "{\"itemId\":%d}")))
+                .andExpect(status().isCreated());
+    }
+
+    private static String jsonArray(int size, String element) {
+        return IntStream.rangeClosed(1, size)
+                .mapToObj(i -> String.format(element, i))
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+}
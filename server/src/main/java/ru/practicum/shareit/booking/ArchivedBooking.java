@@ -0,0 +1,32 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * Бронирование в архиве: только собственные поля, данные вещи и арендатора при чтении берутся из базы.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ArchivedBooking {
+
+    /**
+     * Порядок страниц бронирований: по началу, при равенстве - по id.
+     */
+    static final Comparator<ArchivedBooking> ORDER = Comparator
+            .comparing(ArchivedBooking::getStart)
+            .thenComparing(ArchivedBooking::getId);
+
+    private final Long id;
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final BookingStatus status;
+    private final Long itemId;
+    private final Long bookerId;
+    private final Long ownerId;
+}
@@ -12,6 +12,10 @@ import java.time.LocalDateTime;
  */
 
 @Entity
+@NamedEntityGraph(name = Booking.DETAILS_GRAPH, attributeNodes = {
+        @NamedAttributeNode("item"),
+        @NamedAttributeNode("booker")
+})
 @Getter
 @Setter
 @ToString
@@ -19,6 +23,11 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 public class Booking {
+    /**
+     * Граф загрузки бронирования вместе с вещью и арендатором одним запросом: все, что нужно для BookingDto.
+     */
+    public static final String DETAILS_GRAPH = "Booking.details";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -29,15 +38,24 @@ public class Booking {
     @Column(name = "book_end")
     private LocalDateTime end;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "item_id")
     private Item item;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "booker_id")
     private User booker;
 
+    /**
+     * Владелец вещи на момент бронирования, копия item.owner.id.
+     */
+    @Column(name = "owner_id")
+    private Long ownerId;
+
     @Column(name = "book_status")
     @Enumerated(EnumType.STRING)
     private BookingStatus status = BookingStatus.WAITING;
+
+    @Version
+    private Long version;
 }
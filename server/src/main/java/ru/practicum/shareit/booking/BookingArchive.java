@@ -0,0 +1,295 @@
+package ru.practicum.shareit.booking;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.dao.BookingRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Бронирования, закончившиеся давно и перенесенные из базы: неизменяемые сегменты BookingArchiveSegment
+ * в каталоге shareit.bookings.archive-directory. Сегменты только добавляются; выборка пользователя
+ * читает индексы сегментов и распаковывает только блоки с его строками.
+ * Каталог должен быть общим для всех экземпляров сервера, сегменты других экземпляров подхватываются в reload.
+ * <p>
+ * Сегмент читается, только пока он записан в таблице booking_archive_segments той же базы. schema.sql
+ * пересоздает таблицы при каждом запуске, id выдаются заново с 1, и строки старых сегментов достались бы
+ * новым пользователям и вещам; после пересоздания реестр пуст, и такие сегменты не читаются, а затем удаляются.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookingArchive {
+
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * Незарегистрированный сегмент младше этого возраста может принадлежать переносу, который еще идет
+     * на другом экземпляре, поэтому удаляются только более старые.
+     */
+    static final Duration ABANDONED_SEGMENT_AGE = Duration.ofHours(1);
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final Set<FilterBookingState> STATUS_STATES =
+            EnumSet.of(FilterBookingState.WAITING, FilterBookingState.REJECTED, FilterBookingState.EXPIRED);
+
+    private final BookingProperties properties;
+    private final BookingRepository repo;
+
+    private volatile List<BookingArchiveSegment> segments = List.of();
+
+    @PostConstruct
+    public void init() {
+        try {
+            Files.createDirectories(properties.getArchiveDirectory());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        reload();
+    }
+
+    /**
+     * Открывает зарегистрированные в базе сегменты, появившиеся после прошлого вызова, и закрывает те,
+     * что в реестре больше не числятся. Давно брошенные файлы - незарегистрированные сегменты и временные
+     * файлы - удаляет.
+     */
+    public synchronized void reload() {
+        Set<String> registered = new HashSet<>(repo.findArchiveSegmentNames());
+        Map<Path, BookingArchiveSegment> opened = segments.stream()
+                .collect(Collectors.toMap(BookingArchiveSegment::getFile, Function.identity()));
+        List<BookingArchiveSegment> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(properties.getArchiveDirectory())) {
+            for (Path file : files.sorted().toList()) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(SEGMENT_SUFFIX)
+                        && registered.contains(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()))) {
+                    loaded.add(opened.containsKey(file) ? opened.get(file) : BookingArchiveSegment.open(file));
+                } else if (fileName.endsWith(SEGMENT_SUFFIX) || fileName.endsWith(TEMPORARY_SUFFIX)) {
+                    deleteIfAbandoned(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (loaded.size() != segments.size()) {
+            log.info("Loaded {} booking archive segment(s)", loaded.size());
+        }
+        segments = List.copyOf(loaded);
+    }
+
+    /**
+     * Записывает бронирования новым сегментом. Сегмент появляется в каталоге целиком или не появляется вовсе:
+     * он пишется во временный файл, сбрасывается на диск и только потом переименовывается. Регистрируется
+     * сегмент в транзакции вызывающего: после ее отката этот экземпляр читает сегмент до ближайшего reload,
+     * где строки базы перекрывают его копии, а другие экземпляры его не видят.
+     */
+    public synchronized void append(List<ArchivedBooking> bookings) {
+        if (bookings.isEmpty()) {
+            return;
+        }
+        Path directory = properties.getArchiveDirectory();
+        String name = String.format("%020d-%s", System.currentTimeMillis(), UUID.randomUUID());
+        Path temporary = directory.resolve(name + TEMPORARY_SUFFIX);
+        Path file = directory.resolve(name + SEGMENT_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer data = ByteBuffer.wrap(BookingArchiveSegment.encode(bookings));
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        repo.registerArchiveSegment(name);
+        List<BookingArchiveSegment> appended = new ArrayList<>(segments);
+        appended.add(BookingArchiveSegment.open(file));
+        segments = List.copyOf(appended);
+        log.debug("Archived {} booking(s) to {}", bookings.size(), file);
+    }
+
+    /**
+     * Может ли в архиве найтись что-то по запросу. Архивные бронирования давно закончились,
+     * так что запросы только текущих и будущих бронирований в архив не ходят.
+     */
+    public boolean mayContain(BookingQuery query) {
+        Set<FilterBookingState> states = query.getStates();
+        if (!states.contains(FilterBookingState.ALL) && !states.contains(FilterBookingState.PAST)
+                && states.stream().noneMatch(STATUS_STATES::contains)) {
+            return false;
+        }
+        return segments.stream().anyMatch(segment -> mayContain(segment, query));
+    }
+
+    /**
+     * Страница архивных бронирований по тем же правилам, что BookingRepository.findViews, в порядке (start, id).
+     */
+    public List<ArchivedBooking> find(BookingQuery query) {
+        List<ArchivedBooking> found = new ArrayList<>();
+        for (BookingArchiveSegment segment : segments) {
+            if (!mayContain(segment, query)) {
+                continue;
+            }
+            List<ArchivedBooking> rows = query.getBookerId() != null
+                    ? segment.findByBooker(query.getBookerId())
+                    : segment.findByOwner(query.getOwnerId());
+            rows.stream().filter(booking -> matches(booking, query)).forEach(found::add);
+        }
+        // после сбоя между записью сегмента и удалением строк бронирование может оказаться в двух сегментах
+        Set<Long> seen = new HashSet<>();
+        return found.stream()
+                .sorted(ArchivedBooking.ORDER)
+                .filter(booking -> seen.add(booking.getId()))
+                .skip(query.getFrom())
+                .limit(query.getSize())
+                .toList();
+    }
+
+    /**
+     * Есть ли в архиве бронирование вещи itemId пользователем bookerId. Все они уже закончились.
+     */
+    public boolean hasCompleted(Long itemId, Long bookerId) {
+        return segments.stream().anyMatch(segment -> segment.findByBooker(bookerId).stream()
+                .anyMatch(booking -> booking.getItemId().equals(itemId)));
+    }
+
+    /**
+     * Все бронирования арендатора bookerId в порядке (start, id) - слияние строк его сегментов,
+     * в памяти держится не больше одного распакованного блока на сегмент. Бронирование, попавшее после сбоя
+     * в два сегмента, возвращается один раз.
+     */
+    public Iterator<ArchivedBooking> iterateByBooker(Long bookerId) {
+        return new MergedRows(segments.stream().map(segment -> segment.iterateByBooker(bookerId)).toList());
+    }
+
+    /**
+     * Число бронирований во всех сегментах, вместе с повторами.
+     */
+    public int size() {
+        return segments.stream().mapToInt(BookingArchiveSegment::getRows).sum();
+    }
+
+    public void forEach(Consumer<ArchivedBooking> consumer) {
+        segments.forEach(segment -> segment.forEach(consumer));
+    }
+
+    private static void deleteIfAbandoned(Path file) throws IOException {
+        Instant modified = Files.getLastModifiedTime(file).toInstant();
+        if (modified.isBefore(Instant.now().minus(ABANDONED_SEGMENT_AGE)) && Files.deleteIfExists(file)) {
+            log.info("Deleted unregistered booking archive file {}", file);
+        }
+    }
+
+    private static boolean mayContain(BookingArchiveSegment segment, BookingQuery query) {
+        return !segment.getMaxStart().isBefore(query.getAfter().getStart())
+                && (query.getRangeStart() == null || segment.getMaxEnd().isAfter(query.getRangeStart()));
+    }
+
+    private static boolean matches(ArchivedBooking booking, BookingQuery query) {
+        if (query.getItemId() != null && !query.getItemId().equals(booking.getItemId())) {
+            return false;
+        }
+        if (query.getRangeStart() != null && !booking.getEnd().isAfter(query.getRangeStart())) {
+            return false;
+        }
+        if (query.getRangeEnd() != null && !booking.getStart().isBefore(query.getRangeEnd())) {
+            return false;
+        }
+        int cursor = booking.getStart().compareTo(query.getAfter().getStart());
+        if (cursor < 0 || cursor == 0 && booking.getId() <= query.getAfter().getId()) {
+            return false;
+        }
+        return query.getStates().contains(FilterBookingState.ALL)
+                || query.getStates().stream().anyMatch(state -> matches(booking, state, query.getNow()));
+    }
+
+    private static boolean matches(ArchivedBooking booking, FilterBookingState state, LocalDateTime now) {
+        return switch (state) {
+            case ALL -> true;
+            case CURRENT -> booking.getStart().isBefore(now) && booking.getEnd().isAfter(now);
+            case PAST -> booking.getStart().isBefore(now) && booking.getEnd().isBefore(now);
+            case FUTURE -> booking.getStart().isAfter(now);
+            case WAITING, REJECTED, EXPIRED -> booking.getStatus().name().equals(state.name());
+        };
+    }
+
+    /**
+     * Слияние упорядоченных по (start, id) строк сегментов. Копии одного бронирования совпадают по (start, id)
+     * и приходят подряд, из них возвращается первая.
+     */
+    private static final class MergedRows implements Iterator<ArchivedBooking> {
+
+        private final PriorityQueue<Head> heads =
+                new PriorityQueue<>(Comparator.comparing((Head head) -> head.row, ArchivedBooking.ORDER));
+
+        private MergedRows(List<Iterator<ArchivedBooking>> sources) {
+            sources.forEach(this::advance);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public ArchivedBooking next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            advance(head.rest);
+            while (!heads.isEmpty() && heads.peek().row.getId().equals(head.row.getId())) {
+                advance(heads.poll().rest);
+            }
+            return head.row;
+        }
+
+        private void advance(Iterator<ArchivedBooking> source) {
+            if (source.hasNext()) {
+                heads.add(new Head(source.next(), source));
+            }
+        }
+    }
+
+    private static final class Head {
+
+        private final ArchivedBooking row;
+        private final Iterator<ArchivedBooking> rest;
+
+        private Head(ArchivedBooking row, Iterator<ArchivedBooking> rest) {
+            this.row = row;
+            this.rest = rest;
+        }
+    }
+}
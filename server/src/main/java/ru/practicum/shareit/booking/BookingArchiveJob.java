@@ -0,0 +1,49 @@
+package ru.practicum.shareit.booking;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Переносит в архив бронирования, закончившиеся больше shareit.bookings.archive-after-months месяцев назад,
+ * порциями по BATCH_SIZE, каждая порция - отдельный сегмент в своей транзакции. Затем удаляет опустевшие разделы.
+ * Перенос в каждый момент делает один экземпляр сервера; остальные только подхватывают новые сегменты.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookingArchiveJob {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    /**
+     * Бронирования, перенесенные в архив.
+     */
+    static final String ARCHIVED_METRIC = "bookings.archived";
+
+    private final BookingService bookingService;
+    private final BookingArchive archive;
+    private final BookingProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Scheduled(fixedDelayString = "${shareit.bookings.archive-interval:PT1H}")
+    public void archiveEndedBookings() {
+        archive.reload();
+        LocalDateTime endedBefore = LocalDateTime.now().minusMonths(properties.getArchiveAfterMonths());
+        int archived = 0;
+        int batch;
+        do {
+            batch = bookingService.archiveEndedBookings(endedBefore, BATCH_SIZE);
+            archived += batch;
+        } while (batch == BATCH_SIZE);
+        meterRegistry.counter(ARCHIVED_METRIC).increment(archived);
+        if (archived > 0) {
+            int dropped = bookingService.dropArchivedPartitions(endedBefore);
+            log.info("Archived {} bookings, dropped {} empty partitions", archived, dropped);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package ru.practicum.shareit.booking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Неизменяемый файл архива бронирований, отображаемый в память.
+ * Строки отсортированы по (start, id) и разбиты на блоки по BLOCK_ROWS. Внутри блока значения лежат
+ * по колонкам как разности соседних значений переменной длины, и блок сжат Deflate.
+ * За блоками идут несжатые каталог смещений блоков и индексы арендаторов и владельцев -
+ * пары (id пользователя, номер блока), отсортированные по id, - так что для выборки пользователя
+ * распаковываются только блоки, в которых есть его строки. Время хранится с точностью до микросекунд, как в базе.
+ */
+final class BookingArchiveSegment {
+
+    static final int BLOCK_ROWS = 512;
+
+    private static final int MAGIC = 0x53484241;  // "SHBA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+    private static final BookingStatus[] STATUSES = BookingStatus.values();
+
+    private final Path file;
+    private final MappedByteBuffer data;
+    private final int rows;
+    private final int blocks;
+    private final LocalDateTime maxStart;
+    private final LocalDateTime maxEnd;
+    private final int directoryOffset;
+    private final int bookerIndexOffset;
+    private final int ownerIndexOffset;
+    private final int bookerIndexSize;
+    private final int ownerIndexSize;
+
+    private BookingArchiveSegment(Path file, MappedByteBuffer data) {
+        this.file = file;
+        this.data = data;
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IllegalStateException(String.format("Файл %s не является архивом бронирований", file));
+        }
+        rows = data.getInt(8);
+        blocks = data.getInt(12);
+        maxStart = fromMicros(data.getLong(16));
+        maxEnd = fromMicros(data.getLong(24));
+        directoryOffset = Math.toIntExact(data.getLong(32));
+        bookerIndexOffset = Math.toIntExact(data.getLong(40));
+        ownerIndexOffset = Math.toIntExact(data.getLong(48));
+        bookerIndexSize = data.getInt(56);
+        ownerIndexSize = data.getInt(60);
+    }
+
+    static BookingArchiveSegment open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BookingArchiveSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Содержимое файла архива с бронированиями bookings, не пустыми.
+     */
+    static byte[] encode(List<ArchivedBooking> bookings) {
+        List<ArchivedBooking> sorted = bookings.stream().sorted(ArchivedBooking.ORDER).toList();
+        int blocks = (sorted.size() + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        Map<Long, SortedSet<Integer>> byBooker = new TreeMap<>();
+        Map<Long, SortedSet<Integer>> byOwner = new TreeMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        long[] offsets = new long[blocks + 1];
+        for (int block = 0; block < blocks; block++) {
+            List<ArchivedBooking> rows = sorted.subList(block * BLOCK_ROWS,
+                    Math.min((block + 1) * BLOCK_ROWS, sorted.size()));
+            offsets[block] = HEADER_SIZE + body.size();
+            writeBlock(body, rows);
+            for (ArchivedBooking row : rows) {
+                byBooker.computeIfAbsent(row.getBookerId(), id -> new TreeSet<>()).add(block);
+                byOwner.computeIfAbsent(row.getOwnerId(), id -> new TreeSet<>()).add(block);
+            }
+        }
+        offsets[blocks] = HEADER_SIZE + body.size();
+
+        long bookerIndexOffset = offsets[blocks] + (long) offsets.length * Long.BYTES;
+        int bookerIndexSize = byBooker.values().stream().mapToInt(SortedSet::size).sum();
+        long ownerIndexOffset = bookerIndexOffset + (long) bookerIndexSize * INDEX_ENTRY_SIZE;
+        int ownerIndexSize = byOwner.values().stream().mapToInt(SortedSet::size).sum();
+        ByteBuffer file = ByteBuffer.allocate(Math.toIntExact(
+                ownerIndexOffset + (long) ownerIndexSize * INDEX_ENTRY_SIZE));
+        file.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(sorted.size())
+                .putInt(blocks)
+                .putLong(toMicros(sorted.get(sorted.size() - 1).getStart()))
+                .putLong(sorted.stream().mapToLong(row -> toMicros(row.getEnd())).max().orElseThrow())
+                .putLong(offsets[blocks])
+                .putLong(bookerIndexOffset)
+                .putLong(ownerIndexOffset)
+                .putInt(bookerIndexSize)
+                .putInt(ownerIndexSize)
+                .put(body.toByteArray());
+        for (long offset : offsets) {
+            file.putLong(offset);
+        }
+        writeIndex(file, byBooker);
+        writeIndex(file, byOwner);
+        return file.array();
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    LocalDateTime getMaxStart() {
+        return maxStart;
+    }
+
+    LocalDateTime getMaxEnd() {
+        return maxEnd;
+    }
+
+    /**
+     * Бронирования арендатора в порядке (start, id).
+     */
+    List<ArchivedBooking> findByBooker(long bookerId) {
+        List<ArchivedBooking> found = new ArrayList<>();
+        iterateByBooker(bookerId).forEachRemaining(found::add);
+        return found;
+    }
+
+    /**
+     * Бронирования вещей владельца в порядке (start, id).
+     */
+    List<ArchivedBooking> findByOwner(long ownerId) {
+        List<ArchivedBooking> found = new ArrayList<>();
+        new UserRows(ownerIndexOffset, ownerIndexSize, ownerId, ArchivedBooking::getOwnerId)
+                .forEachRemaining(found::add);
+        return found;
+    }
+
+    /**
+     * Бронирования арендатора в порядке (start, id). Блоки распаковываются по одному по мере чтения,
+     * так что в памяти одновременно лежит не больше BLOCK_ROWS строк.
+     */
+    Iterator<ArchivedBooking> iterateByBooker(long bookerId) {
+        return new UserRows(bookerIndexOffset, bookerIndexSize, bookerId, ArchivedBooking::getBookerId);
+    }
+
+    void forEach(Consumer<ArchivedBooking> consumer) {
+        for (int block = 0; block < blocks; block++) {
+            readBlock(block).forEach(consumer);
+        }
+    }
+
+    /**
+     * Первая запись индекса с id пользователя не меньше userId.
+     */
+    private int firstEntry(int indexOffset, int indexSize, long userId) {
+        int low = 0;
+        int high = indexSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (data.getLong(indexOffset + middle * INDEX_ENTRY_SIZE) < userId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private List<ArchivedBooking> readBlock(int block) {
+        int from = Math.toIntExact(data.getLong(directoryOffset + block * Long.BYTES));
+        int to = Math.toIntExact(data.getLong(directoryOffset + (block + 1) * Long.BYTES));
+        byte[] compressed = new byte[to - from - Integer.BYTES];
+        data.get(from + Integer.BYTES, compressed);
+        byte[] raw = new byte[data.getInt(from)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int inflated = 0;
+            while (inflated < raw.length && !inflater.finished()) {
+                inflated += inflater.inflate(raw, inflated, raw.length - inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(String.format("Поврежден блок %d архива %s", block, file), e);
+        } finally {
+            inflater.end();
+        }
+
+        int count = Math.min(BLOCK_ROWS, rows - block * BLOCK_ROWS);
+        int[] position = {0};
+        long[] ids = readDeltas(raw, position, count);
+        long[] starts = readDeltas(raw, position, count);
+        long[] durations = new long[count];
+        for (int i = 0; i < count; i++) {
+            durations[i] = readVarLong(raw, position);
+        }
+        BookingStatus[] statuses = new BookingStatus[count];
+        for (int i = 0; i < count; i++) {
+            statuses[i] = STATUSES[raw[position[0]++]];
+        }
+        long[] itemIds = readDeltas(raw, position, count);
+        long[] bookerIds = readDeltas(raw, position, count);
+        long[] ownerIds = readDeltas(raw, position, count);
+
+        List<ArchivedBooking> bookings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            bookings.add(new ArchivedBooking(ids[i], fromMicros(starts[i]), fromMicros(starts[i] + durations[i]),
+                    statuses[i], itemIds[i], bookerIds[i], ownerIds[i]));
+        }
+        return bookings;
+    }
+
+    private static void writeBlock(ByteArrayOutputStream body, List<ArchivedBooking> rows) {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        writeDeltas(raw, rows, ArchivedBooking::getId);
+        writeDeltas(raw, rows, row -> toMicros(row.getStart()));
+        for (ArchivedBooking row : rows) {
+            writeVarLong(raw, toMicros(row.getEnd()) - toMicros(row.getStart()));
+        }
+        for (ArchivedBooking row : rows) {
+            raw.write(row.getStatus().ordinal());
+        }
+        writeDeltas(raw, rows, ArchivedBooking::getItemId);
+        writeDeltas(raw, rows, ArchivedBooking::getBookerId);
+        writeDeltas(raw, rows, ArchivedBooking::getOwnerId);
+
+        byte[] bytes = raw.toByteArray();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(bytes);
+        deflater.finish();
+        body.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            body.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+    }
+
+    private static void writeIndex(ByteBuffer file, Map<Long, SortedSet<Integer>> index) {
+        index.forEach((userId, blocks) -> blocks.forEach(block -> file.putLong(userId).putInt(block)));
+    }
+
+    private static void writeDeltas(ByteArrayOutputStream out, List<ArchivedBooking> rows,
+                                    Function<ArchivedBooking, Long> column) {
+        long previous = 0;
+        for (ArchivedBooking row : rows) {
+            long value = column.apply(row);
+            writeVarLong(out, zigZag(value - previous));
+            previous = value;
+        }
+    }
+
+    private static long[] readDeltas(byte[] raw, int[] position, int count) {
+        long[] values = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = readVarLong(raw, position);
+            previous += (delta >>> 1) ^ -(delta & 1);
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] raw, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = raw[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Строки пользователя по записям индекса: номера его блоков в индексе идут по возрастанию,
+     * а блоки - в порядке (start, id).
+     */
+    private final class UserRows implements Iterator<ArchivedBooking> {
+
+        private final int indexOffset;
+        private final int indexSize;
+        private final long userId;
+        private final Function<ArchivedBooking, Long> user;
+        private int entry;
+        private Iterator<ArchivedBooking> block = List.<ArchivedBooking>of().iterator();
+        private ArchivedBooking next;
+
+        private UserRows(int indexOffset, int indexSize, long userId, Function<ArchivedBooking, Long> user) {
+            this.indexOffset = indexOffset;
+            this.indexSize = indexSize;
+            this.userId = userId;
+            this.user = user;
+            entry = firstEntry(indexOffset, indexSize, userId);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (block.hasNext()) {
+                    ArchivedBooking row = block.next();
+                    if (user.apply(row) == userId) {
+                        next = row;
+                    }
+                    continue;
+                }
+                int position = indexOffset + entry * INDEX_ENTRY_SIZE;
+                if (entry >= indexSize || data.getLong(position) != userId) {
+                    return false;
+                }
+                block = readBlock(data.getInt(position + Long.BYTES)).iterator();
+                entry++;
+            }
+            return true;
+        }
+
+        @Override
+        public ArchivedBooking next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ArchivedBooking row = next;
+            next = null;
+            return row;
+        }
+    }
+}
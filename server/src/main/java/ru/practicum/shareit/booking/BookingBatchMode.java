@@ -0,0 +1,8 @@
+package ru.practicum.shareit.booking;
+
+public enum BookingBatchMode {
+    // ошибка в любом бронировании отменяет весь пакет
+    ALL_OR_NOTHING,
+    // создаются все корректные бронирования, ошибки возвращаются по каждому
+    BEST_EFFORT
+}
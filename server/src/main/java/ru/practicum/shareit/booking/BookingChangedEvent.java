@@ -0,0 +1,34 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Публикуется BookingService при создании бронирования и смене его статуса.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BookingChangedEvent {
+    private final Long bookingId;
+    private final Long itemId;
+    private final Long bookerId;
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final BookingStatus status;
+
+    public static BookingChangedEvent of(Booking booking) {
+        return new BookingChangedEvent(booking.getId(), booking.getItem().getId(),
+                booking.getBooker().getId(), booking.getStart(), booking.getEnd(), booking.getStatus());
+    }
+
+    /**
+     * Занимает ли бронирование вещь: такие бронирования не могут пересекаться по времени.
+     */
+    public boolean isActive() {
+        return status == BookingStatus.WAITING || status == BookingStatus.APPROVED;
+    }
+}
@@ -0,0 +1,155 @@
+package ru.practicum.shareit.booking;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingPair;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пары (вещь, арендатор), у которых есть закончившееся бронирование, - только они могут оставлять отзывы.
+ * В фильтре Блума хранятся пары всех бронирований базы и архива, независимо от времени окончания:
+ * фильтр загружается целиком, пополняется после коммита каждого нового бронирования этого экземпляра,
+ * а refresh дочитывает пары бронирований, закончившихся с прошлого вызова, - в том числе созданных
+ * на других экземплярах. Известная фильтру пара проверяется в базе по индексу с учетом времени окончания,
+ * а если там ее нет - в архиве. Пары, которой фильтр не знает, нет среди бронирований, закончившихся
+ * до caughtUpUntil, поэтому в базе проверяются только закончившиеся позже.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookingCompletionIndex {
+
+    /**
+     * Проверки по исходу: positive и false_positive - фильтр знает пару, recent и negative - фильтр пары
+     * не знает и бронирование нашлось или не нашлось среди недавно закончившихся, unloaded - фильтр
+     * еще не загружен.
+     */
+    static final String LOOKUPS_METRIC = "bookings.completion-index.lookups";
+
+    /**
+     * Запас на транзакции, закоммиченные уже после выборки refresh: их бронирования могли закончиться
+     * раньше ее границы.
+     */
+    static final Duration COMMIT_LAG = Duration.ofMinutes(1);
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final BookingRepository repo;
+    private final BookingArchive archive;
+    private final BookingProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private volatile PairBloomFilter filter;
+
+    /**
+     * Фильтр знает пары всех бронирований, закончившихся до caughtUpUntil минус COMMIT_LAG.
+     * Пишется после filter, читается до него.
+     */
+    private volatile LocalDateTime caughtUpUntil;
+
+    /**
+     * Пары бронирований, закоммиченных во время загрузки фильтра: выборка загрузки могла их не увидеть.
+     * null - загрузка не идет.
+     */
+    private List<long[]> pendingPairs;
+
+    /**
+     * Закончилось ли к моменту now хотя бы одно бронирование вещи itemId пользователем bookerId.
+     */
+    public boolean hasCompleted(Long itemId, Long bookerId, LocalDateTime now) {
+        LocalDateTime until = caughtUpUntil;
+        PairBloomFilter current = filter;
+        if (current == null || until == null) {
+            count("unloaded");
+            return repo.existsEndedBefore(itemId, bookerId, now) || archive.hasCompleted(itemId, bookerId);
+        }
+        if (!current.mightContain(itemId, bookerId)) {
+            boolean completed = repo.existsEndedBetween(itemId, bookerId, until.minus(COMMIT_LAG), now);
+            count(completed ? "recent" : "negative");
+            return completed;
+        }
+        boolean completed = repo.existsEndedBefore(itemId, bookerId, now) || archive.hasCompleted(itemId, bookerId);
+        count(completed ? "positive" : "false_positive");
+        return completed;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onBookingChanged(BookingChangedEvent event) {
+        add(event.getItemId(), event.getBookerId());
+    }
+
+    /**
+     * Добавляет в фильтр пары перенесенных в архив бронирований. Обычно фильтр их уже знает:
+     * бронирование попало в него при создании или при загрузке.
+     */
+    public void addArchived(List<ArchivedBooking> bookings) {
+        bookings.forEach(booking -> add(booking.getItemId(), booking.getBookerId()));
+    }
+
+    /**
+     * Загружает фильтр при первом вызове и перестраивает его с запасом после переполнения,
+     * в остальных случаях дочитывает пары бронирований, закончившихся с прошлого вызова.
+     * Бронирования, закоммиченные во время загрузки, добавляются в новый фильтр перед его публикацией.
+     */
+    public void refresh() {
+        PairBloomFilter current = filter;
+        LocalDateTime until = LocalDateTime.now();
+        if (current != null && !current.isFull()) {
+            List<BookingPair> ended = repo.findPairsEndedBetween(caughtUpUntil.minus(COMMIT_LAG), until);
+            ended.forEach(pair -> add(pair.getItemId(), pair.getBookerId()));
+            caughtUpUntil = until;
+            return;
+        }
+        synchronized (this) {
+            pendingPairs = new ArrayList<>();
+        }
+        PairBloomFilter loaded;
+        try {
+            List<BookingPair> pairs = repo.findAllPairs();
+            loaded = new PairBloomFilter(Math.max((pairs.size() + archive.size()) * 2,
+                    properties.getCompletionIndexExpectedPairs()), FALSE_POSITIVE_RATE);
+            pairs.forEach(pair -> loaded.add(pair.getItemId(), pair.getBookerId()));
+            archive.forEach(booking -> loaded.add(booking.getItemId(), booking.getBookerId()));
+            log.info("Loaded {} item-booker pairs and {} archived bookings", pairs.size(), archive.size());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendingPairs = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            pendingPairs.forEach(pair -> loaded.add(pair[0], pair[1]));
+            pendingPairs = null;
+            filter = loaded;
+            caughtUpUntil = until;
+        }
+    }
+
+    private synchronized void add(Long itemId, Long bookerId) {
+        if (itemId == null || bookerId == null) {
+            return;
+        }
+        if (pendingPairs != null) {
+            pendingPairs.add(new long[]{itemId, bookerId});
+        }
+        PairBloomFilter current = filter;
+        if (current != null && !current.mightContain(itemId, bookerId)) {
+            current.add(itemId, bookerId);
+            // повторная запись volatile-поля публикует добавленные биты читающим потокам
+            filter = current;
+        }
+    }
+
+    private void count(String result) {
+        meterRegistry.counter(LOOKUPS_METRIC, "result", result).increment();
+    }
+}
@@ -0,0 +1,21 @@
+package ru.practicum.shareit.booking;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Загружает BookingCompletionIndex после старта, перестраивает его, когда фильтр переполнился, а между
+ * перестроениями дочитывает закончившиеся бронирования. Пока фильтр не загружен, проверка отзыва идет в базу.
+ */
+@Component
+@RequiredArgsConstructor
+public class BookingCompletionIndexJob {
+
+    private final BookingCompletionIndex completionIndex;
+
+    @Scheduled(fixedDelayString = "${shareit.bookings.completion-index-refresh-interval:PT10S}")
+    public void refreshCompletionIndex() {
+        completionIndex.refresh();
+    }
+}
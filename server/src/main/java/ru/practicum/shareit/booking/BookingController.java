@@ -2,11 +2,21 @@ package ru.practicum.shareit.booking;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.shareit.booking.dto.BookingCreationDto;
+import ru.practicum.shareit.booking.dto.BookingDecisionRequest;
+import ru.practicum.shareit.booking.dto.BookingDecisionResult;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingFilter;
+import ru.practicum.shareit.booking.dto.BookingPageDto;
 import ru.practicum.shareit.booking.dto.CreateBookingRequest;
 import ru.practicum.shareit.exception.BadRequest;
+import ru.practicum.shareit.exception.ConflictException;
 import ru.practicum.shareit.exception.ForbiddenException;
 import ru.practicum.shareit.exception.NotFoundException;
 
@@ -27,19 +37,39 @@ public class BookingController {
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     public BookingDto createBooking(@RequestBody CreateBookingRequest request,
-                                                    @RequestHeader("X-Sharer-User-Id") Long userid) throws NotFoundException, BadRequest {
+                                                    @RequestHeader("X-Sharer-User-Id") Long userid)
+            throws NotFoundException, BadRequest, ConflictException {
         Booking booking = bookingService.createBooking(request, userid);
         return mapper.toDto(booking);
     }
 
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public List<BookingCreationDto> createBookings(@RequestBody List<CreateBookingRequest> requests,
+                                                   @RequestParam(name = "mode", defaultValue = "ALL_OR_NOTHING")
+                                                   BookingBatchMode mode,
+                                                   @RequestHeader("X-Sharer-User-Id") Long userId)
+            throws NotFoundException, BadRequest, ConflictException {
+        List<BookingCreation> creations = bookingService.createBookings(requests, mode, userId);
+        return mapper.toCreationDto(creations);
+    }
+
     @PatchMapping("/{bookingId}")
     public BookingDto approveBooking(@PathVariable Long bookingId,
                                                      @RequestParam Boolean approved,
-                                                     @RequestHeader("X-Sharer-User-Id") Long userId) throws ForbiddenException, NotFoundException {
+                                                     @RequestHeader("X-Sharer-User-Id") Long userId)
+            throws ForbiddenException, NotFoundException, ConflictException {
         Booking booking = bookingService.approveBooking(bookingId, approved, userId);
         return mapper.toDto(booking);
     }
 
+    @PatchMapping("/batch")
+    public List<BookingDecisionResult> approveBookings(@RequestBody List<BookingDecisionRequest> decisions,
+                                                       @RequestHeader("X-Sharer-User-Id") Long userId)
+            throws BadRequest {
+        return bookingService.approveBookings(decisions, userId);
+    }
+
     @GetMapping("/{bookingId}")
     public BookingDto getBooking(@PathVariable Long bookingId,
                                  @RequestHeader(value = "X-Sharer-User-Id", required = true) Long userId) throws ForbiddenException, NotFoundException {
@@ -51,16 +81,54 @@ public class BookingController {
     }
 
     @GetMapping()
-    public List<BookingDto> getCurrentUserBookings(@RequestParam(required = false, defaultValue = "ALL") String stateValue,
-                                                   @RequestHeader("X-Sharer-User-Id") Long userId) throws NotFoundException {
-        List<Booking> bookings = bookingService.getUserBookings(stateValue, userId);
+    public List<BookingDto> getCurrentUserBookings(BookingFilter filter,
+                                                   @RequestParam(name = "from", defaultValue = "0") Integer from,
+                                                   @RequestParam(name = "size", defaultValue = "10") Integer size,
+                                                   @RequestHeader("X-Sharer-User-Id") Long userId)
+            throws NotFoundException, BadRequest {
+        List<BookingView> bookings = bookingService.getUserBookings(filter, userId, from, size);
         return mapper.toDto(bookings);
     }
 
+    @GetMapping("/page")
+    public BookingPageDto getCurrentUserBookingsPage(BookingFilter filter,
+                                                     @RequestParam(name = "cursor", required = false) String cursor,
+                                                     @RequestParam(name = "size", defaultValue = "10") Integer size,
+                                                     @RequestHeader("X-Sharer-User-Id") Long userId)
+            throws NotFoundException, BadRequest {
+        BookingPage page = bookingService.getUserBookingsPage(filter, userId, cursor, size);
+        return mapper.toDto(page);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCurrentUserBookings(
+            @RequestParam(name = "format", defaultValue = "CSV") BookingExportFormat format,
+            @RequestHeader("X-Sharer-User-Id") Long userId) throws NotFoundException {
+        StreamingResponseBody body = bookingService.exportUserBookings(userId, format);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("bookings." + format.getExtension()).build().toString())
+                .body(body);
+    }
+
     @GetMapping("/owner")
-    public List<BookingDto> getOwnerBookings(@RequestParam(required = false, defaultValue = "ALL") String stateValue,
-                                             @RequestHeader("X-Sharer-User-Id") Long userId) throws NotFoundException {
-        List<Booking> bookings = bookingService.getOwnerBookings(stateValue, userId);
+    public List<BookingDto> getOwnerBookings(BookingFilter filter,
+                                             @RequestParam(name = "from", defaultValue = "0") Integer from,
+                                             @RequestParam(name = "size", defaultValue = "10") Integer size,
+                                             @RequestHeader("X-Sharer-User-Id") Long userId)
+            throws NotFoundException, BadRequest {
+        List<BookingView> bookings = bookingService.getOwnerBookings(filter, userId, from, size);
         return mapper.toDto(bookings);
     }
+
+    @GetMapping("/owner/page")
+    public BookingPageDto getOwnerBookingsPage(BookingFilter filter,
+                                               @RequestParam(name = "cursor", required = false) String cursor,
+                                               @RequestParam(name = "size", defaultValue = "10") Integer size,
+                                               @RequestHeader("X-Sharer-User-Id") Long userId)
+            throws NotFoundException, BadRequest {
+        BookingPage page = bookingService.getOwnerBookingsPage(filter, userId, cursor, size);
+        return mapper.toDto(page);
+    }
 }
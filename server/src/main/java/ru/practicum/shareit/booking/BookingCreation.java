@@ -0,0 +1,27 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Итог создания одного бронирования из пакета: index - его номер в запросе,
+ * booking != null только для созданного.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BookingCreation {
+    private final int index;
+    private final Outcome outcome;
+    private final Booking booking;
+    private final String error;
+
+    public enum Outcome {
+        CREATED,
+        // бронирование некорректно само по себе: даты, вещь
+        INVALID,
+        // пересекается с другим бронированием пакета или уже существующим
+        CONFLICT
+    }
+}
@@ -0,0 +1,44 @@
+package ru.practicum.shareit.booking;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Переводит в EXPIRED ожидающие бронирования, владелец которых не принял решения до их начала.
+ * Бронирования обрабатываются порциями, каждая порция в своей транзакции. Несколько экземпляров сервера
+ * не мешают друг другу и решениям владельцев: заблокированные строки пропускаются.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookingExpiryJob {
+
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Длительность одного запуска, число истекших бронирований - в BookingService.EXPIRED_METRIC.
+     */
+    static final String RUN_METRIC = "bookings.expiry.run";
+
+    private final BookingService bookingService;
+    private final MeterRegistry meterRegistry;
+
+    @Scheduled(fixedDelayString = "${shareit.bookings.expiry-interval:PT1M}")
+    public void expireStaleBookings() {
+        Timer.Sample run = Timer.start(meterRegistry);
+        int expired = 0;
+        int batch;
+        do {
+            batch = bookingService.expireStaleBookings(BATCH_SIZE);
+            expired += batch;
+        } while (batch == BATCH_SIZE);
+        run.stop(meterRegistry.timer(RUN_METRIC));
+        if (expired > 0) {
+            log.info("Expired {} waiting bookings", expired);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package ru.practicum.shareit.booking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingExportDto;
+import ru.practicum.shareit.booking.dto.BookingExportRow;
+import ru.practicum.shareit.item.ItemService;
+import ru.practicum.shareit.item.model.Item;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Пишет всю историю бронирований арендатора в поток ответа, строка за строкой, в порядке (start, id).
+ * Бронирования из базы читаются с курсора на сервере и сливаются с архивными, которые читаются из сегментов
+ * по блоку; названия вещей архивных строк запрашиваются пачками по ITEM_NAMES_BATCH_SIZE строк. Память
+ * не зависит от длины истории: ни история, ни ответ целиком не собираются.
+ * Бронирование, которое есть и в базе, и в архиве, берется из базы.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookingExporter {
+
+    static final String CSV_HEADER = "id,start,end,status,itemId,itemName";
+
+    static final int ITEM_NAMES_BATCH_SIZE = 500;
+
+    private final BookingRepository repo;
+    private final BookingMapper mapper;
+    private final BookingArchive archive;
+    private final ItemService itemService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Курсор открыт, пока идет транзакция, поэтому вся выгрузка пишется внутри нее.
+     */
+    @Transactional(readOnly = true)
+    public void write(long bookerId, BookingExportFormat format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == BookingExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        ArchivedRows archived = new ArchivedRows(archive.iterateByBooker(bookerId));
+        long rows = 0;
+        try {
+            try (Stream<BookingExportRow> bookings = repo.streamByBooker(bookerId)) {
+                for (BookingExportRow booking : (Iterable<BookingExportRow>) bookings::iterator) {
+                    while (archived.peek() != null && isBefore(archived.peek(), booking)) {
+                        rows += writeArchived(archived, format, writer);
+                    }
+                    // удаление после переноса в архив откатилось: строка базы заменяет архивную копию
+                    if (archived.peek() != null && archived.peek().getId().equals(booking.getId())) {
+                        archived.poll();
+                    }
+                    writeRow(mapper.toExportDto(booking), format, writer);
+                    rows++;
+                }
+            }
+            while (archived.peek() != null) {
+                rows += writeArchived(archived, format, writer);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        log.info("Exported {} booking(s) of user {} as {}", rows, bookerId, format);
+    }
+
+    /**
+     * Названия вещей архивных бронирований, одним запросом. Удаленных вещей в результате нет.
+     */
+    private Map<Long, String> itemNames(Collection<ArchivedBooking> bookings) {
+        if (bookings.isEmpty()) {
+            return Map.of();
+        }
+        return itemService.getByIds(bookings.stream().map(ArchivedBooking::getItemId).collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(Item::getId, Item::getName));
+    }
+
+    /**
+     * Пишет следующую архивную строку. Бронирования удаленных вещей пропускаются, как их пропускает
+     * соединение с items в базе.
+     */
+    private int writeArchived(ArchivedRows archived, BookingExportFormat format, Writer writer) {
+        ArchivedBooking booking = archived.poll();
+        String itemName = archived.itemName(booking);
+        if (itemName == null) {
+            return 0;
+        }
+        writeRow(mapper.toExportDto(booking, itemName), format, writer);
+        return 1;
+    }
+
+    private static boolean isBefore(ArchivedBooking archived, BookingExportRow booking) {
+        int byStart = archived.getStart().compareTo(booking.getStart());
+        return byStart < 0 || (byStart == 0 && archived.getId() < booking.getId());
+    }
+
+    private void writeRow(BookingExportDto booking, BookingExportFormat format, Writer writer) {
+        try {
+            if (format == BookingExportFormat.CSV) {
+                writer.write(toCsv(booking));
+            } else {
+                writer.write(objectMapper.writeValueAsString(booking));
+            }
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String toCsv(BookingExportDto booking) {
+        return String.join(",", List.of(String.valueOf(booking.getId()), booking.getStart().toString(),
+                booking.getEnd().toString(), booking.getStatus(), String.valueOf(booking.getItemId()),
+                csvField(booking.getItemName())));
+    }
+
+    /**
+     * Поле в кавычках, если в нем есть запятая, кавычка или перевод строки; кавычки внутри удваиваются.
+     */
+    private static String csvField(String value) {
+        if (value.chars().noneMatch(c -> c == ',' || c == '"' || c == '\n' || c == '\r')) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Архивные строки, прочитанные вперед пачкой не больше ITEM_NAMES_BATCH_SIZE вместе с названиями их вещей.
+     */
+    private final class ArchivedRows {
+
+        private final Iterator<ArchivedBooking> source;
+        private final Deque<ArchivedBooking> batch = new ArrayDeque<>();
+        private Map<Long, String> names = Map.of();
+
+        private ArchivedRows(Iterator<ArchivedBooking> source) {
+            this.source = source;
+        }
+
+        ArchivedBooking peek() {
+            if (batch.isEmpty() && source.hasNext()) {
+                while (batch.size() < ITEM_NAMES_BATCH_SIZE && source.hasNext()) {
+                    batch.add(source.next());
+                }
+                names = itemNames(batch);
+            }
+            return batch.peekFirst();
+        }
+
+        /**
+         * Следующая строка; ее название остается доступно через itemName до следующего вызова peek.
+         */
+        ArchivedBooking poll() {
+            peek();
+            return batch.pollFirst();
+        }
+
+        String itemName(ArchivedBooking booking) {
+            return names.get(booking.getItemId());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ru.practicum.shareit.booking;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingInterval;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Занятые интервалы вещей в памяти. Индекс только выбирает путь создания бронирования: пересечение
+ * с известным ему интервалом проверяется запросом вместо заведомо неудачной вставки, но отклоняет
+ * бронирование только база. Источник истины - ограничение excl_booking_periods_item_period:
+ * бронирования, о которых индекс не знает, находит вставка. Изменения с других экземпляров сервера
+ * индекс видит после перечитывания интервалов вещи, не позже чем через interval-index-ttl, или раньше,
+ * если база не подтвердила конфликт и интервалы вещи сброшены (evict).
+ * Интервалы вещи загружаются только после конфликта в базе (watch): промах по индексу не стоит
+ * лишнего запроса, и в памяти держатся только вещи, за которые бронирования действительно спорят.
+ * Активные бронирования одной вещи не пересекаются, поэтому интервалы хранятся упорядоченными по началу,
+ * и для проверки достаточно одного соседа.
+ */
+@Component
+public class BookingIntervalIndex {
+
+    static final String NAME = "bookingIntervals";
+
+    private final BookingRepository repo;
+    private final Cache<Long, ItemIntervals> items;
+
+    public BookingIntervalIndex(BookingRepository repo, BookingProperties properties, MeterRegistry meterRegistry) {
+        this.repo = repo;
+        items = Caffeine.newBuilder()
+                .maximumSize(properties.getIntervalIndexMaximumSize())
+                .expireAfterWrite(properties.getIntervalIndexTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, items, NAME);
+    }
+
+    /**
+     * id известного бронирования вещи, пересекающегося с [start, end). Интервалы вещи, которой нет
+     * в индексе, не загружаются: пересечение найдет вставка.
+     */
+    public Optional<Long> findConflict(Long itemId, LocalDateTime start, LocalDateTime end) {
+        ItemIntervals intervals = items.getIfPresent(itemId);
+        return intervals == null ? Optional.empty() : intervals.findConflict(start, end);
+    }
+
+    /**
+     * Загружает интервалы вещи, если их еще нет в индексе. Вызывается, когда вставка бронирования
+     * наткнулась на пересечение.
+     */
+    public void watch(Long itemId) {
+        items.get(itemId, this::load);
+    }
+
+    /**
+     * Сбрасывает интервалы вещи, разошедшиеся с базой: при следующем конфликте вставки они загрузятся заново.
+     */
+    public void evict(Long itemId) {
+        items.invalidate(itemId);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onBookingChanged(BookingChangedEvent event) {
+        ItemIntervals intervals = items.getIfPresent(event.getItemId());
+        if (intervals == null) {
+            return;
+        }
+        if (event.isActive()) {
+            intervals.add(event.getBookingId(), event.getStart(), event.getEnd());
+        } else {
+            intervals.remove(event.getBookingId(), event.getStart());
+        }
+    }
+
+    private ItemIntervals load(Long itemId) {
+        ItemIntervals intervals = new ItemIntervals();
+        for (BookingInterval interval : repo.findActiveIntervals(itemId, LocalDateTime.now())) {
+            intervals.add(interval.getId(), interval.getStart(), interval.getEnd());
+        }
+        return intervals;
+    }
+
+    private static final class ItemIntervals {
+        private final TreeMap<LocalDateTime, Interval> byStart = new TreeMap<>();
+
+        synchronized Optional<Long> findConflict(LocalDateTime start, LocalDateTime end) {
+            Map.Entry<LocalDateTime, Interval> previous = byStart.lowerEntry(end);
+            if (previous != null && previous.getValue().getEnd().isAfter(start)) {
+                return Optional.of(previous.getValue().getBookingId());
+            }
+            return Optional.empty();
+        }
+
+        synchronized void add(Long bookingId, LocalDateTime start, LocalDateTime end) {
+            byStart.put(start, new Interval(bookingId, end));
+        }
+
+        synchronized void remove(Long bookingId, LocalDateTime start) {
+            Interval interval = byStart.get(start);
+            if (interval != null && interval.getBookingId().equals(bookingId)) {
+                byStart.remove(start);
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static final class Interval {
+        private final Long bookingId;
+        private final LocalDateTime end;
+    }
+}
@@ -2,9 +2,17 @@ package ru.practicum.shareit.booking;
 
 import org.mapstruct.InjectionStrategy;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import ru.practicum.shareit.booking.dto.BookingArchiveRow;
+import ru.practicum.shareit.booking.dto.BookingCreationDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingExportDto;
+import ru.practicum.shareit.booking.dto.BookingExportRow;
+import ru.practicum.shareit.booking.dto.BookingPageDto;
 import ru.practicum.shareit.booking.dto.CreateBookingRequest;
+import ru.practicum.shareit.item.dto.CommentDto;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.model.CommentView;
 import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.dto.UserDto;
@@ -15,11 +23,40 @@ import java.util.List;
 public interface BookingMapper {
     BookingDto toDto(Booking booking);
 
-    List<BookingDto> toDto(List<Booking> bookings);
+    @Mapping(target = "item.id", source = "itemId")
+    @Mapping(target = "item.name", source = "itemName")
+    @Mapping(target = "item.description", source = "itemDescription")
+    @Mapping(target = "item.available", source = "itemAvailable")
+    @Mapping(target = "item.lastBooking", source = "itemLastBooking")
+    @Mapping(target = "item.nextBooking", source = "itemNextBooking")
+    @Mapping(target = "item.comments", source = "itemComments")
+    @Mapping(target = "item.commentSnippets", ignore = true)
+    @Mapping(target = "booker.id", source = "bookerId")
+    @Mapping(target = "booker.name", source = "bookerName")
+    @Mapping(target = "booker.email", source = "bookerEmail")
+    BookingDto toDto(BookingView booking);
 
+    List<BookingDto> toDto(List<BookingView> bookings);
+
+    BookingPageDto toDto(BookingPage page);
+
+    BookingCreationDto toDto(BookingCreation creation);
+
+    List<BookingCreationDto> toCreationDto(List<BookingCreation> creations);
+
+    @Mapping(target = "ownerId", ignore = true)
+    @Mapping(target = "version", ignore = true)
     Booking toBooking(CreateBookingRequest request);
 
+    ArchivedBooking toArchived(BookingArchiveRow row);
+
+    BookingExportDto toExportDto(BookingExportRow row);
+
+    BookingExportDto toExportDto(ArchivedBooking booking, String itemName);
+
     ItemDto toItemDto(Item item);
 
     UserDto toUserDto(User user);
+
+    CommentDto toCommentDto(CommentView comment);
 }
@@ -0,0 +1,18 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Страница бронирований. nextCursor == null, если страница последняя.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BookingPage {
+    private final List<BookingView> bookings;
+    private final String nextCursor;
+}
@@ -0,0 +1,28 @@
+package ru.practicum.shareit.booking;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Заранее создает месячные разделы таблицы бронирований, чтобы новые бронирования не копились
+ * в разделе по умолчанию. Несколько экземпляров сервера не мешают друг другу: разделы создаются
+ * под рекомендательной блокировкой, уже существующие пропускаются.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookingPartitionJob {
+
+    private final BookingService bookingService;
+    private final BookingProperties properties;
+
+    @Scheduled(fixedDelayString = "${shareit.bookings.partition-maintenance-interval:PT6H}")
+    public void createFuturePartitions() {
+        int created = bookingService.maintainPartitions(properties.getPartitionsAhead());
+        if (created > 0) {
+            log.info("Created {} booking partitions", created);
+        }
+    }
+}
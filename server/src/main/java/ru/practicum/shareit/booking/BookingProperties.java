@@ -0,0 +1,53 @@
+package ru.practicum.shareit.booking;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shareit.bookings")
+public class BookingProperties {
+
+    /**
+     * Для скольких вещей держать в памяти занятые интервалы, по которым до вставки отсекаются пересечения.
+     */
+    private int intervalIndexMaximumSize = 10_000;
+
+    /**
+     * Через сколько интервалы вещи перечитываются из базы. Ограничивает, насколько индекс может отстать
+     * от бронирований, созданных и отклоненных другими экземплярами сервера: до перечитывания отклоненное там
+     * бронирование стоит лишнего запроса проверки, но отказа не вызывает.
+     */
+    private Duration intervalIndexTtl = Duration.ofMinutes(1);
+
+    /**
+     * На сколько месяцев вперед держать созданные разделы таблицы бронирований.
+     * Бронирования дальше этого срока попадают в раздел по умолчанию.
+     */
+    private int partitionsAhead = 12;
+
+    /**
+     * На сколько пар (вещь, арендатор) с бронированием рассчитан фильтр BookingCompletionIndex
+     * при первой загрузке. Когда пар становится больше, фильтр перестраивается с запасом.
+     */
+    private int completionIndexExpectedPairs = 100_000;
+
+    /**
+     * Сколько бронирований или решений по бронированиям можно передать одним пакетом.
+     */
+    private int batchMaxSize = 100;
+
+    /**
+     * Через сколько месяцев после окончания бронирование переносится из базы в архив.
+     */
+    private int archiveAfterMonths = 12;
+
+    /**
+     * Каталог сегментов архива бронирований. У всех экземпляров сервера он должен быть общим.
+     */
+    private Path archiveDirectory = Path.of("booking-archive");
+}
@@ -0,0 +1,31 @@
+package ru.practicum.shareit.booking;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.shareit.booking.dto.BookingCursor;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Условия выборки страницы бронирований. Задается ровно одна роль: bookerId или ownerId.
+ * Состояния объединяются через ИЛИ, остальные условия - через И; незаданные условия не ограничивают выборку.
+ */
+@Getter
+@ToString
+@Builder(toBuilder = true)
+public class BookingQuery {
+    private final Long bookerId;
+    private final Long ownerId;
+    @Builder.Default
+    private final Set<FilterBookingState> states = Set.of(FilterBookingState.ALL);
+    private final Long itemId;
+    private final LocalDateTime rangeStart;  // бронирование заканчивается позже
+    private final LocalDateTime rangeEnd;    // и начинается раньше
+    private final LocalDateTime now;
+    @Builder.Default
+    private final BookingCursor after = BookingCursor.FIRST;
+    private final int from;
+    private final int size;
+}
@@ -1,80 +1,416 @@
 package ru.practicum.shareit.booking;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingArchiveRow;
+import ru.practicum.shareit.booking.dto.BookingCursor;
+import ru.practicum.shareit.booking.dto.BookingDecisionRequest;
+import ru.practicum.shareit.booking.dto.BookingDecisionResult;
+import ru.practicum.shareit.booking.dto.BookingDecisionState;
+import ru.practicum.shareit.booking.dto.BookingFilter;
+import ru.practicum.shareit.booking.dto.BookingInsertedRow;
 import ru.practicum.shareit.booking.dto.CreateBookingRequest;
 import ru.practicum.shareit.exception.BadRequest;
+import ru.practicum.shareit.exception.ConflictException;
 import ru.practicum.shareit.exception.ForbiddenException;
 import ru.practicum.shareit.exception.NotFoundException;
 import ru.practicum.shareit.item.ItemService;
+import ru.practicum.shareit.item.model.CommentView;
 import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.user.UserService;
 import ru.practicum.shareit.user.User;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @Validated
 @RequiredArgsConstructor
 public class BookingService {
+
+    /**
+     * Сколько раз повторить вставку, если мешавшее ей бронирование успели отклонить до проверки.
+     */
+    private static final int INSERT_ATTEMPTS = 3;
+
+    /**
+     * Решения по бронированиям: applied - статус изменен, repeated - повтор уже принятого решения,
+     * conflict - бронирование уже рассмотрено иначе, в том числе проигранная гонка двух решений.
+     */
+    static final String TRANSITIONS_METRIC = "bookings.transitions";
+    static final String TRANSITION_APPLIED = "applied";
+    static final String TRANSITION_REPEATED = "repeated";
+    static final String TRANSITION_CONFLICT = "conflict";
+
+    /**
+     * Ожидающие бронирования, переведенные в EXPIRED, потому что владелец не ответил до их начала.
+     */
+    static final String EXPIRED_METRIC = "bookings.expired";
+
     private final UserService userService;
     private final ItemService itemService;
     private final BookingRepository repo;
     private final BookingMapper mapper;
+    private final BookingIntervalIndex intervalIndex;
+    private final BookingCompletionIndex completionIndex;
+    private final BookingArchive archive;
+    private final BookingExporter exporter;
+    private final BookingProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
 
     @Transactional
-    public Booking createBooking(@Valid CreateBookingRequest request, long userId) throws NotFoundException, BadRequest {
+    public Booking createBooking(@Valid CreateBookingRequest request, long userId) throws NotFoundException, BadRequest, ConflictException {
         log.info("creating booking = {}", request);
 
         User booker = userService.getById(userId);
         Item item = itemService.getById(request.getItemId());
 
-        if (request.getStart().isAfter(request.getEnd())) {
-            throw new BadRequest("Начало бронирования не должно быть после его окончания");
+        String error = validationError(request, item);
+        if (error != null) {
+            throw new BadRequest(error);
         }
 
-        if (request.getStart().isEqual(request.getEnd())) {
-            throw new BadRequest("Начало бронирования не должно совпадать с его окончанием");
+        Booking booking = mapper.toBooking(request);
+        booking.setBooker(booker);
+        booking.setItem(item);
+        booking.setOwnerId(item.getOwner().getId());
+
+        Optional<Long> knownConflict = intervalIndex.findConflict(item.getId(), booking.getStart(), booking.getEnd());
+        if (knownConflict.isPresent()) {
+            // отмены и истечения с других экземпляров до индекса не доходят: конфликт подтверждается в базе
+            // вместо заведомо неудачной вставки, а разошедшиеся с базой интервалы вещи сбрасываются
+            Optional<Long> conflict = repo.findOverlapping(item.getId(), booking.getStart(), booking.getEnd());
+            if (!conflict.equals(knownConflict)) {
+                intervalIndex.evict(item.getId());
+            }
+            throwIfOverlaps(booking, conflict);
+        }
+
+        Long bookingId = null;
+        for (int attempt = 0; bookingId == null && attempt < INSERT_ATTEMPTS; attempt++) {
+            bookingId = repo.insertIfFree(item.getId(), booker.getId(), booking.getOwnerId(), booking.getStart(), booking.getEnd(),
+                    booking.getStatus().name()).orElse(null);
+            if (bookingId == null) {
+                intervalIndex.watch(item.getId());
+                throwIfOverlaps(booking);
+            }
+        }
+        if (bookingId == null) {
+            throw new ConflictException("Вещь с id = %d уже забронирована на это время", item.getId());
+        }
+        booking.setId(bookingId);
+
+        itemService.refreshBookingDates(item);
+        eventPublisher.publishEvent(BookingChangedEvent.of(booking));
+        log.info("created booking {}", booking);
+
+        return booking;
+    }
+
+    /**
+     * Создает бронирования пакетом: вещи читаются одним запросом, даты и пересечения внутри пакета
+     * проверяются в памяти, все прошедшие проверку бронирования вставляются одним запросом.
+     * Результаты возвращаются в порядке запроса. В режиме ALL_OR_NOTHING первая же ошибка
+     * отменяет весь пакет.
+     */
+    @Transactional(rollbackFor = ConflictException.class)
+    public List<BookingCreation> createBookings(List<CreateBookingRequest> requests, BookingBatchMode mode, long userId)
+            throws NotFoundException, BadRequest, ConflictException {
+        log.info("creating {} booking(s) for user {} in mode {}", requests.size(), userId, mode);
+        checkBatchSize(requests.size());
+
+        User booker = userService.getById(userId);
+        Set<Long> requestedItemIds = requests.stream()
+                .map(CreateBookingRequest::getItemId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, Item> items = itemService.getByIds(requestedItemIds).stream()
+                .collect(Collectors.toMap(Item::getId, Function.identity()));
+
+        BookingCreation[] results = new BookingCreation[requests.size()];
+        List<Integer> accepted = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            CreateBookingRequest request = requests.get(i);
+            String error = validationError(request, items.get(request.getItemId()));
+            if (error == null) {
+                accepted.add(i);
+            } else {
+                results[i] = new BookingCreation(i, BookingCreation.Outcome.INVALID, null, error);
+            }
+        }
+        rejectOverlapsWithinBatch(requests, accepted, results);
+        failIfAnyRejected(mode, results);
+
+        Map<Integer, Long> bookingIdByIndex = new HashMap<>();
+        if (!accepted.isEmpty()) {
+            List<BookingInsertedRow> rows = repo.insertAllIfFree(booker.getId(),
+                    accepted.stream().map(i -> requests.get(i).getStart()).toArray(LocalDateTime[]::new),
+                    accepted.stream().map(i -> requests.get(i).getEnd()).toArray(LocalDateTime[]::new),
+                    accepted.stream().map(i -> requests.get(i).getItemId()).toArray(Long[]::new),
+                    accepted.stream().map(i -> items.get(requests.get(i).getItemId()).getOwner().getId())
+                            .toArray(Long[]::new));
+            rows.forEach(row -> bookingIdByIndex.put(accepted.get(row.getPosition() - 1), row.getId()));
         }
+        for (Integer i : accepted) {
+            if (!bookingIdByIndex.containsKey(i)) {
+                CreateBookingRequest request = requests.get(i);
+                results[i] = new BookingCreation(i, BookingCreation.Outcome.CONFLICT, null,
+                        overlapError(request.getItemId(), request.getStart(), request.getEnd()));
+            }
+        }
+        failIfAnyRejected(mode, results);
+
+        Set<Long> bookedItemIds = new HashSet<>();
+        bookingIdByIndex.forEach((i, bookingId) -> {
+            Item item = items.get(requests.get(i).getItemId());
+            Booking booking = mapper.toBooking(requests.get(i));
+            booking.setId(bookingId);
+            booking.setBooker(booker);
+            booking.setItem(item);
+            booking.setOwnerId(item.getOwner().getId());
+            results[i] = new BookingCreation(i, BookingCreation.Outcome.CREATED, booking, null);
+            bookedItemIds.add(item.getId());
+            eventPublisher.publishEvent(BookingChangedEvent.of(booking));
+        });
+        itemService.refreshAllBookingDates(bookedItemIds);
+
+        log.info("created {} of {} booking(s)", bookingIdByIndex.size(), requests.size());
+        return Arrays.asList(results);
+    }
 
+    private String validationError(CreateBookingRequest request, Item item) {
+        if (request.getItemId() == null || request.getStart() == null || request.getEnd() == null) {
+            return "У бронирования должны быть указаны вещь, начало и окончание";
+        }
+        if (item == null) {
+            return String.format("не найдена вещь с id = %s", request.getItemId());
+        }
+        if (request.getStart().isAfter(request.getEnd())) {
+            return "Начало бронирования не должно быть после его окончания";
+        }
+        if (request.getStart().isEqual(request.getEnd())) {
+            return "Начало бронирования не должно совпадать с его окончанием";
+        }
         if (!item.isAvailable()) {
-            throw new BadRequest("Вещь с id = %s недоступна для бронирования", item.getId());
+            return String.format("Вещь с id = %s недоступна для бронирования", item.getId());
         }
+        return null;
+    }
 
+    /**
+     * Убирает из accepted бронирования, пересекающиеся с более ранними бронированиями той же вещи в пакете.
+     */
+    private void rejectOverlapsWithinBatch(List<CreateBookingRequest> requests, List<Integer> accepted,
+                                           BookingCreation[] results) {
+        List<Integer> byItemAndStart = new ArrayList<>(accepted);
+        byItemAndStart.sort(Comparator.comparing((Integer i) -> requests.get(i).getItemId())
+                .thenComparing(i -> requests.get(i).getStart()));
+        Integer previous = null;
+        for (Integer i : byItemAndStart) {
+            CreateBookingRequest request = requests.get(i);
+            if (previous != null && requests.get(previous).getItemId().equals(request.getItemId())
+                    && requests.get(previous).getEnd().isAfter(request.getStart())) {
+                results[i] = new BookingCreation(i, BookingCreation.Outcome.CONFLICT, null,
+                        String.format("Пересекается с бронированием номер %d в пакете", previous));
+                continue;
+            }
+            previous = i;
+        }
+        accepted.removeIf(i -> results[i] != null);
+    }
 
-        Booking booking = mapper.toBooking(request);
-        booking.setBooker(booker);
-        booking.setItem(item);
+    private void failIfAnyRejected(BookingBatchMode mode, BookingCreation[] results)
+            throws BadRequest, ConflictException {
+        if (mode != BookingBatchMode.ALL_OR_NOTHING) {
+            return;
+        }
+        for (BookingCreation result : results) {
+            if (result == null) {
+                continue;
+            }
+            if (result.getOutcome() == BookingCreation.Outcome.INVALID) {
+                throw new BadRequest("Бронирование номер %d в пакете: %s", result.getIndex(), result.getError());
+            }
+            if (result.getOutcome() == BookingCreation.Outcome.CONFLICT) {
+                throw new ConflictException("Бронирование номер %d в пакете: %s", result.getIndex(), result.getError());
+            }
+        }
+    }
+
+    private String overlapError(Long itemId, LocalDateTime start, LocalDateTime end) {
+        return repo.findOverlapping(itemId, start, end)
+                .map(conflictId -> String.format(
+                        "Вещь с id = %d уже забронирована на это время: конфликт с бронированием с id = %d",
+                        itemId, conflictId))
+                .orElse(String.format("Вещь с id = %d уже забронирована на это время", itemId));
+    }
 
-        Booking createdBooking = repo.save(booking);
-        log.info("created booking {}", createdBooking);
+    private void throwIfOverlaps(Booking booking) throws ConflictException {
+        throwIfOverlaps(booking, repo.findOverlapping(booking.getItem().getId(), booking.getStart(), booking.getEnd()));
+    }
 
-        return createdBooking;
+    private static void throwIfOverlaps(Booking booking, Optional<Long> conflict) throws ConflictException {
+        if (conflict.isPresent()) {
+            throw new ConflictException("Вещь с id = %d уже забронирована на это время: конфликт с бронированием с id = %d",
+                    booking.getItem().getId(), conflict.get());
+        }
     }
 
+    /**
+     * Решение владельца по ожидающему бронированию. Повтор того же решения возвращает бронирование
+     * без изменений, другое решение по уже рассмотренному бронированию - ConflictException.
+     */
     @Transactional
-    public Booking approveBooking(Long bookingId, boolean approved, long userId) throws NotFoundException, ForbiddenException {
+    public Booking approveBooking(Long bookingId, boolean approved, long userId)
+            throws NotFoundException, ForbiddenException, ConflictException {
         log.info("approving booking = {}", bookingId);
 
-        Booking booking = repo.findById(bookingId)
-                .orElseThrow(() -> new NotFoundException("не найдено бронирование с id = %s", bookingId));
+        BookingStatus decision = approved ? BookingStatus.APPROVED : BookingStatus.REJECTED;
+        if (repo.decideIfWaiting(bookingId, userId, decision) == 1) {
+            Booking booking = findById(bookingId);
+            itemService.refreshBookingDates(booking.getItem());
+            eventPublisher.publishEvent(BookingChangedEvent.of(booking));
+            countTransition(TRANSITION_APPLIED);
+            log.info("У вещи с id = {} поменялся статус на {}", bookingId, booking.getStatus());
+            return booking;
+        }
 
-        Long ownerId = booking.getItem().getOwner().getId();
+        Booking booking = findById(bookingId);
+        Long ownerId = booking.getOwnerId();
         if (!ownerId.equals(userId)) {
             throw new ForbiddenException("Пользователю с id = %d запрещено вносить изменения в вещь с id = %d: " +
                     "id ее владельца = %d", userId, bookingId, ownerId);
         }
+        if (booking.getStatus() == decision) {
+            countTransition(TRANSITION_REPEATED);
+            log.info("booking {} already has status {}", bookingId, decision);
+            return booking;
+        }
+        countTransition(TRANSITION_CONFLICT);
+        throw new ConflictException("Бронирование с id = %d уже рассмотрено, его статус %s",
+                bookingId, booking.getStatus());
+    }
 
-        booking.setStatus(approved ? BookingStatus.APPROVED : BookingStatus.REJECTED);
-        log.info("У вещи с id = {} поменялся статус на {}", bookingId, booking.getStatus());
-        return booking;
+    private Booking findById(Long bookingId) throws NotFoundException {
+        return repo.findById(bookingId)
+                .orElseThrow(() -> new NotFoundException("не найдено бронирование с id = %s", bookingId));
+    }
+
+    private void countTransition(String outcome) {
+        meterRegistry.counter(TRANSITIONS_METRIC, "outcome", outcome).increment();
+    }
+
+    /**
+     * Решения владельца сразу по нескольким бронированиям: одна выборка для проверки владельца и статусов
+     * и один UPDATE для всех ожидающих. Результаты возвращаются в порядке решений, ошибка по одному
+     * бронированию не мешает остальным.
+     */
+    @Transactional
+    public List<BookingDecisionResult> approveBookings(List<BookingDecisionRequest> decisions, long userId)
+            throws BadRequest {
+        log.info("approving {} booking(s) by user {}", decisions.size(), userId);
+        checkBatchSize(decisions.size());
+
+        Map<Long, BookingStatus> requested = new LinkedHashMap<>();
+        for (BookingDecisionRequest decision : decisions) {
+            if (decision.getBookingId() == null || decision.getApproved() == null) {
+                throw new BadRequest("В каждом решении должны быть указаны bookingId и approved");
+            }
+            BookingStatus status = decision.getApproved() ? BookingStatus.APPROVED : BookingStatus.REJECTED;
+            if (requested.put(decision.getBookingId(), status) != null) {
+                throw new BadRequest("Решение по бронированию с id = %d указано несколько раз", decision.getBookingId());
+            }
+        }
+
+        Map<Long, BookingDecisionState> states = findDecisionStates(requested.keySet());
+        Map<Long, BookingDecisionResult> results = new HashMap<>();
+        List<Long> waitingIds = new ArrayList<>();
+        requested.forEach((bookingId, decision) -> {
+            BookingDecisionState state = states.get(bookingId);
+            if (state == null) {
+                results.put(bookingId, new BookingDecisionResult(bookingId, BookingDecisionResult.Outcome.NOT_FOUND,
+                        null, String.format("не найдено бронирование с id = %s", bookingId)));
+            } else if (!state.getOwnerId().equals(userId)) {
+                results.put(bookingId, new BookingDecisionResult(bookingId, BookingDecisionResult.Outcome.FORBIDDEN,
+                        null, String.format("Пользователю с id = %d запрещено рассматривать бронирование с id = %d",
+                        userId, bookingId)));
+            } else if (BookingStatus.valueOf(state.getStatus()) == BookingStatus.WAITING) {
+                waitingIds.add(bookingId);
+            } else {
+                results.put(bookingId, decided(bookingId, decision, BookingStatus.valueOf(state.getStatus())));
+            }
+        });
+
+        Set<Long> appliedIds = new HashSet<>();
+        if (!waitingIds.isEmpty()) {
+            appliedIds.addAll(repo.decideAllIfWaiting(userId, waitingIds.toArray(Long[]::new),
+                    waitingIds.stream().map(id -> requested.get(id).name()).toArray(String[]::new)));
+        }
+
+        // проигравшие гонку: статус успели изменить между выборкой и UPDATE
+        List<Long> lostIds = waitingIds.stream().filter(id -> !appliedIds.contains(id)).toList();
+        if (!lostIds.isEmpty()) {
+            findDecisionStates(lostIds).forEach((bookingId, state) -> results.put(bookingId,
+                    decided(bookingId, requested.get(bookingId), BookingStatus.valueOf(state.getStatus()))));
+        }
+
+        Set<Long> itemIds = new HashSet<>();
+        for (Long bookingId : appliedIds) {
+            BookingDecisionState state = states.get(bookingId);
+            BookingStatus status = requested.get(bookingId);
+            results.put(bookingId, new BookingDecisionResult(bookingId, BookingDecisionResult.Outcome.APPLIED,
+                    status, null));
+            itemIds.add(state.getItemId());
+            eventPublisher.publishEvent(new BookingChangedEvent(bookingId, state.getItemId(),
+                    state.getBookerId(), state.getStart(), state.getEnd(), status));
+            countTransition(TRANSITION_APPLIED);
+        }
+        itemService.refreshAllBookingDates(itemIds);
+
+        log.info("applied {} of {} decision(s)", appliedIds.size(), requested.size());
+        return requested.keySet().stream().map(results::get).toList();
+    }
+
+    private Map<Long, BookingDecisionState> findDecisionStates(Collection<Long> bookingIds) {
+        return repo.findDecisionStates(bookingIds).stream()
+                .collect(Collectors.toMap(BookingDecisionState::getId, Function.identity()));
+    }
+
+    private BookingDecisionResult decided(Long bookingId, BookingStatus decision, BookingStatus current) {
+        if (current == decision) {
+            countTransition(TRANSITION_REPEATED);
+            return new BookingDecisionResult(bookingId, BookingDecisionResult.Outcome.REPEATED, current, null);
+        }
+        countTransition(TRANSITION_CONFLICT);
+        return new BookingDecisionResult(bookingId, BookingDecisionResult.Outcome.CONFLICT, current,
+                String.format("Бронирование с id = %d уже рассмотрено, его статус %s", bookingId, current));
     }
 
     public Booking getById(long bookingId, long userId) throws NotFoundException, ForbiddenException {
@@ -88,51 +424,235 @@ public class BookingService {
        return booking;
     }
 
-    List<Booking> getUserBookings(String stateValue, long userId) throws NotFoundException {
-        log.info("getting bookings for user {} with state {}", userId, stateValue);
+    List<BookingView> getUserBookings(BookingFilter filter, long userId, @PositiveOrZero int from, @Positive int size)
+            throws NotFoundException, BadRequest {
+        log.info("getting bookings for user {} with filter {}, from {}, size {}", userId, filter, from, size);
 
-        LocalDateTime now = LocalDateTime.now();
+        List<BookingView> bookings = findUserBookings(filter, userId, BookingCursor.FIRST, from, size);
+        log.info("found {} booking(s)", bookings.size());
 
-        FilterBookingState state = FilterBookingState.valueOf(stateValue);
-        User user = userService.getById(userId);
+        return bookings;
+    }
 
-        List<Booking> bookings = switch (state) {
-            case ALL -> repo.findAllByBookerOrderByStartAsc(user);
-            case CURRENT -> repo.findAllByBookerAndStartBeforeAndEndAfterOrderByStartAsc(user, now, now);
-            case PAST -> repo.findAllByBookerAndEndBeforeOrderByStartAsc(user, now);
-            case FUTURE -> repo.findAllByBookerAndStartAfterOrderByStartAsc(user, now);
-            case WAITING -> repo.findAllByBookerAndStatusOrderByStartAsc(user, BookingStatus.WAITING);
-            case REJECTED -> repo.findAllByBookerAndStatusOrderByStartAsc(user, BookingStatus.REJECTED);
-        };
+    public BookingPage getUserBookingsPage(BookingFilter filter, long userId, String cursor, @Positive int size)
+            throws NotFoundException, BadRequest {
+        log.info("getting bookings page for user {} with filter {}, cursor {}, size {}", userId, filter, cursor, size);
 
+        BookingCursor after = cursor == null ? BookingCursor.FIRST : BookingCursor.decode(cursor);
+        return toPage(findUserBookings(filter, userId, after, 0, size), size);
+    }
+
+    public List<BookingView> getOwnerBookings(BookingFilter filter, long userId, @PositiveOrZero int from,
+                                              @Positive int size) throws NotFoundException, BadRequest {
+        log.info("getting owner bookings for user {} with filter {}, from {}, size {}", userId, filter, from, size);
+
+        List<BookingView> bookings = findOwnerBookings(filter, userId, BookingCursor.FIRST, from, size);
         log.info("found {} booking(s)", bookings.size());
 
         return bookings;
     }
 
-    public List<Booking> getOwnerBookings(String stateValue, long userId) throws NotFoundException {
-        log.info("getting owner bookings...");
+    public BookingPage getOwnerBookingsPage(BookingFilter filter, long userId, String cursor, @Positive int size)
+            throws NotFoundException, BadRequest {
+        log.info("getting owner bookings page for user {} with filter {}, cursor {}, size {}",
+                userId, filter, cursor, size);
 
-        LocalDateTime now = LocalDateTime.now();
+        BookingCursor after = cursor == null ? BookingCursor.FIRST : BookingCursor.decode(cursor);
+        return toPage(findOwnerBookings(filter, userId, after, 0, size), size);
+    }
 
-        FilterBookingState state = FilterBookingState.valueOf(stateValue);
-        User owner = userService.getById(userId);
+    /**
+     * Выгрузка всей истории бронирований пользователя. Пользователь проверяется сразу, чтобы ошибка
+     * успела стать обычным ответом; строки пишутся позже, когда ответ уже отправляется.
+     */
+    public StreamingResponseBody exportUserBookings(long userId, BookingExportFormat format)
+            throws NotFoundException {
+        log.info("exporting bookings of user {} as {}", userId, format);
+        userService.getById(userId);
 
-        List<Booking> bookings = switch (state) {
-            case ALL -> repo.findAllSortedOwnerBookings(owner);
-            case CURRENT -> repo.findAllCurrentByOwnerOrderByStartAsc(owner, now);
-            case PAST -> repo.findAllPastByOwnerOrderByStartAsc(owner, now);
-            case FUTURE -> repo.findAllSortedOwnerBookings(owner, now);
-            case WAITING -> repo.findAllByOwnerAndStatusOrderByStartAsc(owner, BookingStatus.WAITING);
-            case REJECTED -> repo.findAllByOwnerAndStatusOrderByStartAsc(owner, BookingStatus.REJECTED);
-        };
+        return out -> exporter.write(userId, format, out);
+    }
 
-        log.info("found {} booking(s)", bookings.size());
+    /**
+     * Переводит в EXPIRED не больше limit ожидающих бронирований, начало которых уже прошло.
+     * Возвращает число истекших бронирований.
+     */
+    @Transactional
+    public int expireStaleBookings(int limit) {
+        List<BookingDecisionState> expired = repo.expireWaitingStartedBefore(LocalDateTime.now(), limit);
+        expired.forEach(state -> eventPublisher.publishEvent(new BookingChangedEvent(state.getId(),
+                state.getItemId(), state.getBookerId(), state.getStart(), state.getEnd(), BookingStatus.EXPIRED)));
+        meterRegistry.counter(EXPIRED_METRIC).increment(expired.size());
+        return expired.size();
+    }
 
-        return bookings;
+    /**
+     * Создает месячные разделы бронирований с текущего месяца на monthsAhead месяцев вперед и удаляет
+     * интервалы закончившихся бронирований. Возвращает число созданных разделов.
+     */
+    @Transactional
+    public int maintainPartitions(int monthsAhead) {
+        LocalDateTime now = LocalDateTime.now();
+        int created = repo.createPartitions(now.toLocalDate().withDayOfMonth(1), monthsAhead + 1);
+        int deleted = repo.deletePeriodsEndedBefore(now);
+        log.debug("Created {} booking partitions, deleted {} ended booking periods", created, deleted);
+        return created;
+    }
+
+    /**
+     * Переносит в архив не больше limit бронирований, закончившихся до endedBefore, и удаляет их из базы.
+     * Сегмент записывается до удаления строк: если транзакция не завершится, строки останутся в базе,
+     * а их копии в архиве при чтении перекрываются строками базы. Возвращает число перенесенных бронирований,
+     * 0 - в том числе если перенос уже идет на другом экземпляре сервера.
+     */
+    @Transactional
+    public int archiveEndedBookings(LocalDateTime endedBefore, int limit) {
+        if (!repo.tryLockArchive()) {
+            return 0;
+        }
+        List<BookingArchiveRow> rows = repo.lockEndedBefore(endedBefore, limit);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<ArchivedBooking> archived = rows.stream().map(mapper::toArchived).toList();
+        archive.append(archived);
+        completionIndex.addArchived(archived);
+        repo.deleteArchived(rows.stream().map(BookingArchiveRow::getId).toArray(Long[]::new),
+                rows.stream().map(BookingArchiveRow::getStart).toArray(LocalDateTime[]::new));
+        return rows.size();
+    }
+
+    /**
+     * Удаляет опустевшие после переноса в архив месячные разделы, целиком лежащие раньше before.
+     */
+    @Transactional
+    public int dropArchivedPartitions(LocalDateTime before) {
+        return repo.dropEmptyPartitions(before);
     }
 
     public boolean existPastApprovedItemBookingByUser(Item item, User user) {
-        return repo.existsByItemAndBookerAndEndBefore(item, user, LocalDateTime.now());
+        return completionIndex.hasCompleted(item.getId(), user.getId(), LocalDateTime.now());
+    }
+
+    private List<BookingView> findUserBookings(BookingFilter filter, long userId, BookingCursor after, int from,
+                                               int size) throws NotFoundException, BadRequest {
+        BookingQuery.BookingQueryBuilder query = toQuery(filter, after, from, size);
+        User booker = userService.getById(userId);
+
+        return withItemComments(findViews(query.bookerId(booker.getId()).build()));
+    }
+
+    private List<BookingView> findOwnerBookings(BookingFilter filter, long userId, BookingCursor after, int from,
+                                                int size) throws NotFoundException, BadRequest {
+        BookingQuery.BookingQueryBuilder query = toQuery(filter, after, from, size);
+        userService.getById(userId);
+
+        return withItemComments(findViews(query.ownerId(userId).build()));
+    }
+
+    /**
+     * Страница бронирований из базы и архива. Если архив может что-то добавить, из обоих источников
+     * читаются первые from + size строк, сливаются по (start, id), и страница вырезается уже из слияния.
+     * Бронирование, которое есть и в базе, и в архиве, берется из базы.
+     */
+    private List<BookingView> findViews(BookingQuery query) {
+        if (!archive.mayContain(query)) {
+            return repo.findViews(query);
+        }
+        BookingQuery head = query.toBuilder().from(0).size(query.getFrom() + query.getSize()).build();
+        List<BookingView> hot = repo.findViews(head);
+        Set<Long> hotIds = hot.stream().map(BookingView::getId).collect(Collectors.toSet());
+        List<BookingView> archived = toViews(archive.find(head).stream()
+                .filter(booking -> !hotIds.contains(booking.getId()))
+                .toList());
+        return Stream.concat(hot.stream(), archived.stream())
+                .sorted(Comparator.comparing(BookingView::getStart).thenComparing(BookingView::getId))
+                .skip(query.getFrom())
+                .limit(query.getSize())
+                .toList();
+    }
+
+    /**
+     * Строки списка для архивных бронирований: вещи и арендаторы читаются двумя запросами на всю страницу.
+     * Бронирования удаленных с тех пор вещей и пользователей пропускаются, как их пропустила бы база.
+     */
+    private List<BookingView> toViews(List<ArchivedBooking> bookings) {
+        if (bookings.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Item> items = itemService.getByIds(bookings.stream().map(ArchivedBooking::getItemId)
+                        .collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(Item::getId, Function.identity()));
+        Map<Long, User> bookers = userService.getByIds(bookings.stream().map(ArchivedBooking::getBookerId)
+                        .collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return bookings.stream()
+                .filter(booking -> items.containsKey(booking.getItemId()) && bookers.containsKey(booking.getBookerId()))
+                .map(booking -> {
+                    Item item = items.get(booking.getItemId());
+                    User booker = bookers.get(booking.getBookerId());
+                    return new BookingView(booking.getId(), booking.getStart(), booking.getEnd(), booking.getStatus(),
+                            item.getId(), item.getName(), item.getDescription(), item.isAvailable(),
+                            item.getLastBooking(), item.getNextBooking(),
+                            booker.getId(), booker.getName(), booker.getEmail());
+                })
+                .toList();
+    }
+
+    private BookingQuery.BookingQueryBuilder toQuery(BookingFilter filter, BookingCursor after, int from, int size)
+            throws BadRequest {
+        if (filter.getRangeStart() != null && filter.getRangeEnd() != null
+                && !filter.getRangeStart().isBefore(filter.getRangeEnd())) {
+            throw new BadRequest("Начало периода %s должно быть раньше его конца %s",
+                    filter.getRangeStart(), filter.getRangeEnd());
+        }
+        return BookingQuery.builder()
+                .states(toStates(filter.getState()))
+                .itemId(filter.getItemId())
+                .rangeStart(filter.getRangeStart())
+                .rangeEnd(filter.getRangeEnd())
+                .now(LocalDateTime.now())
+                .after(after)
+                .from(from)
+                .size(size);
+    }
+
+    private void checkBatchSize(int size) throws BadRequest {
+        if (size == 0 || size > properties.getBatchMaxSize()) {
+            throw new BadRequest("В пакете должно быть от 1 до %d элементов, передано %d",
+                    properties.getBatchMaxSize(), size);
+        }
+    }
+
+    private static Set<FilterBookingState> toStates(List<String> values) throws BadRequest {
+        Set<FilterBookingState> states = EnumSet.noneOf(FilterBookingState.class);
+        for (String value : values == null ? List.<String>of() : values) {
+            try {
+                states.add(FilterBookingState.valueOf(value.trim()));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequest("Неизвестное состояние бронирования: %s", value);
+            }
+        }
+        return states.isEmpty() ? Set.of(FilterBookingState.ALL) : states;
+    }
+
+    /**
+     * Добавляет к строкам страницы отзывы их вещей, одним запросом на всю страницу.
+     */
+    private List<BookingView> withItemComments(List<BookingView> bookings) {
+        Map<Long, List<CommentView>> comments = itemService.getCommentViews(
+                bookings.stream().map(BookingView::getItemId).collect(Collectors.toSet()));
+        return bookings.stream()
+                .map(booking -> booking.withItemComments(comments.getOrDefault(booking.getItemId(), List.of())))
+                .toList();
+    }
+
+    private BookingPage toPage(List<BookingView> bookings, int size) {
+        String nextCursor = null;
+        if (bookings.size() == size) {
+            BookingView last = bookings.get(bookings.size() - 1);
+            nextCursor = new BookingCursor(last.getStart(), last.getId()).encode();
+        }
+        return new BookingPage(bookings, nextCursor);
     }
 }
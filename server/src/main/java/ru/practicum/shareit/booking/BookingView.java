@@ -0,0 +1,46 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.shareit.item.model.CommentView;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Неизменяемая строка списка бронирований: ровно те поля бронирования, вещи и арендатора, что нужны BookingDto.
+ * Читается JPQL-выражением new без загрузки сущностей в контекст Hibernate, отзывы вещи добавляются отдельным запросом.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BookingView {
+    private final Long id;
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final BookingStatus status;
+    private final Long itemId;
+    private final String itemName;
+    private final String itemDescription;
+    private final boolean itemAvailable;
+    private final LocalDateTime itemLastBooking;
+    private final LocalDateTime itemNextBooking;
+    private final Long bookerId;
+    private final String bookerName;
+    private final String bookerEmail;
+    private final List<CommentView> itemComments;
+
+    public BookingView(Long id, LocalDateTime start, LocalDateTime end, BookingStatus status,
+                       Long itemId, String itemName, String itemDescription, boolean itemAvailable,
+                       LocalDateTime itemLastBooking, LocalDateTime itemNextBooking,
+                       Long bookerId, String bookerName, String bookerEmail) {
+        this(id, start, end, status, itemId, itemName, itemDescription, itemAvailable, itemLastBooking,
+                itemNextBooking, bookerId, bookerName, bookerEmail, List.of());
+    }
+
+    public BookingView withItemComments(List<CommentView> comments) {
+        return new BookingView(id, start, end, status, itemId, itemName, itemDescription, itemAvailable,
+                itemLastBooking, itemNextBooking, bookerId, bookerName, bookerEmail, comments);
+    }
+}
@@ -6,5 +6,6 @@ public enum FilterBookingState {
     PAST,
     FUTURE,
     WAITING,
-    REJECTED
+    REJECTED,
+    EXPIRED
 }
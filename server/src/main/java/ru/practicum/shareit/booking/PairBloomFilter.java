@@ -0,0 +1,74 @@
+package ru.practicum.shareit.booking;
+
+/**
+ * Фильтр Блума для пар чисел: отвечает "точно нет" или "возможно да".
+ * Добавляет пары один поток; читающие потоки видят добавленное после того, как владелец фильтра
+ * опубликует изменения через volatile-поле.
+ */
+final class PairBloomFilter {
+
+    private final long[] words;
+    private final int bits;
+    private final int hashes;
+    private final int capacity;
+    private int size;
+
+    /**
+     * Фильтр на capacity пар с долей ложных срабатываний не больше falsePositiveRate, пока он не переполнен.
+     */
+    PairBloomFilter(int capacity, double falsePositiveRate) {
+        this.capacity = Math.max(capacity, 1);
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        bits = (int) Math.min(Math.max(optimalBits, Long.SIZE), Integer.MAX_VALUE - Long.SIZE);
+        words = new long[(bits + Long.SIZE - 1) / Long.SIZE];
+        hashes = Math.max(1, (int) Math.round((double) bits / this.capacity * ln2));
+    }
+
+    void add(long first, long second) {
+        long h1 = hash(first, second);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bits);
+            words[bit >>> 6] |= 1L << bit;
+        }
+        size++;
+    }
+
+    boolean mightContain(long first, long second) {
+        long h1 = hash(first, second);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bits);
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Добавлено больше пар, чем рассчитан фильтр: ложные срабатывания становятся чаще заданных.
+     */
+    boolean isFull() {
+        return size > capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static long hash(long first, long second) {
+        return mix(first ^ Long.rotateLeft(mix(second), 32));
+    }
+
+    /**
+     * Перемешивание SplitMix64: соседние id дают далекие друг от друга хеши.
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,14 @@
+package ru.practicum.shareit.booking.dao;
+
+import ru.practicum.shareit.booking.BookingQuery;
+import ru.practicum.shareit.booking.BookingView;
+
+import java.util.List;
+
+public interface BookingQueryRepository {
+
+    /**
+     * Страница строк бронирований по условиям query в порядке (start, id), одним запросом.
+     */
+    List<BookingView> findViews(BookingQuery query);
+}
@@ -1,76 +1,301 @@
 package ru.practicum.shareit.booking.dao;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.shareit.booking.Booking;
 import ru.practicum.shareit.booking.BookingStatus;
-import ru.practicum.shareit.item.model.Item;
-import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.booking.dto.BookingArchiveRow;
+import ru.practicum.shareit.booking.dto.BookingDecisionState;
+import ru.practicum.shareit.booking.dto.BookingExportRow;
+import ru.practicum.shareit.booking.dto.BookingInsertedRow;
+import ru.practicum.shareit.booking.dto.BookingInterval;
+import ru.practicum.shareit.booking.dto.BookingPair;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface BookingRepository extends JpaRepository<Booking, Long> {
+public interface BookingRepository extends JpaRepository<Booking, Long>, BookingQueryRepository {
 
-    List<Booking> findAllByBookerOrderByStartAsc(User booker);
+    /**
+     * Сколько строк выгрузки драйвер забирает с курсора за раз.
+     */
+    String EXPORT_FETCH_SIZE = "500";
 
-    List<Booking> findAllByBookerAndStartBeforeAndEndAfterOrderByStartAsc(User booker, LocalDateTime start, LocalDateTime end);
+    /**
+     * Вещь и арендатор читаются тем же запросом, что и бронирование, а не отдельным запросом на каждую строку.
+     */
+    @Override
+    @EntityGraph(Booking.DETAILS_GRAPH)
+    Optional<Booking> findById(Long id);
 
-    List<Booking> findAllByBookerAndEndBeforeOrderByStartAsc(User booker, LocalDateTime end);
+    /**
+     * Вставляет бронирование, если вещь свободна на [start, end). Сначала занимается интервал в booking_periods:
+     * пересечение с активным бронированием проверяет ограничение excl_booking_periods_item_period, и если
+     * конкурирующая транзакция еще не завершилась, вставка ждет ее исхода. Бронирование вставляется,
+     * только если интервал занят. Пустой результат - вставки не было из-за пересечения.
+     */
+    @Transactional
+    @Query(value = """
+            WITH booking AS (
+                SELECT nextval('bookings_id_seq') AS id
+            ), period AS (
+                INSERT INTO booking_periods (booking_id, item_id, period)
+                SELECT booking.id, :itemId, tsrange(:start, :end, '[)')
+                FROM booking
+                ON CONFLICT DO NOTHING
+                RETURNING booking_id
+            )
+            INSERT INTO bookings (id, book_start, book_end, item_id, booker_id, owner_id, book_status)
+            SELECT period.booking_id, :start, :end, :itemId, :bookerId, :ownerId, :status
+            FROM period
+            RETURNING id""", nativeQuery = true)
+    Optional<Long> insertIfFree(@Param("itemId") Long itemId, @Param("bookerId") Long bookerId,
+                                @Param("ownerId") Long ownerId,
+                                @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                @Param("status") String status);
 
-    List<Booking> findAllByBookerAndStartAfterOrderByStartAsc(User booker, LocalDateTime end);
+    /**
+     * Переводит ожидающее бронирование владельца в status одним запросом, не читая его.
+     * 0 - бронирования нет, оно чужое или уже не ожидает решения.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("""
+            UPDATE Booking AS b
+            SET b.status = :status, b.version = b.version + 1
+            WHERE b.id = :id
+            AND b.ownerId = :ownerId
+            AND b.status = ru.practicum.shareit.booking.BookingStatus.WAITING""")
+    int decideIfWaiting(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("status") BookingStatus status);
 
-    List<Booking> findAllByBookerAndStatusOrderByStartAsc(User booker, BookingStatus status);
+    @Query(value = """
+            SELECT booking.id AS "id", booking.owner_id AS "ownerId", booking.item_id AS "itemId",
+                   booking.booker_id AS "bookerId", booking.book_status AS "status", booking.book_start AS "start", booking.book_end AS "end"
+            FROM bookings booking
+            WHERE booking.id IN (:ids)""", nativeQuery = true)
+    List<BookingDecisionState> findDecisionStates(@Param("ids") Collection<Long> ids);
 
-    @Query("""
-            SELECT b
-            FROM Booking as b
-            JOIN b.item as i
-            WHERE i.owner = :owner
-            ORDER BY start ASC""")
-    List<Booking> findAllSortedOwnerBookings(@Param("owner") User owner);
+    /**
+     * Пакетный вариант decideIfWaiting: ids[i] получает statuses[i]. Возвращает id измененных бронирований.
+     */
+    @Transactional
+    @Query(value = """
+            UPDATE bookings booking
+            SET book_status = decision.status, version = booking.version + 1
+            FROM unnest(CAST(:ids AS BIGINT[]), CAST(:statuses AS VARCHAR[])) AS decision(id, status)
+            WHERE booking.id = decision.id
+            AND booking.owner_id = :ownerId
+            AND booking.book_status = 'WAITING'
+            RETURNING booking.id""", nativeQuery = true)
+    List<Long> decideAllIfWaiting(@Param("ownerId") Long ownerId,
+                                  @Param("ids") Long[] ids, @Param("statuses") String[] statuses);
+
+    /**
+     * Переводит в EXPIRED не больше limit ожидающих бронирований, начало которых наступило раньше now.
+     * Строки, которые сейчас меняет решение владельца или другой экземпляр сервера, пропускаются, а не ждут.
+     * Возвращает состояния истекших бронирований.
+     */
+    @Transactional
+    @Query(value = """
+            UPDATE bookings booking
+            SET book_status = 'EXPIRED', version = booking.version + 1
+            WHERE (booking.id, booking.book_start) IN (
+                SELECT stale.id, stale.book_start
+                FROM bookings stale
+                WHERE stale.book_status = 'WAITING'
+                AND stale.book_start < :now
+                ORDER BY stale.book_start
+                LIMIT :limit
+                FOR NO KEY UPDATE SKIP LOCKED
+            )
+            RETURNING booking.id AS "id", booking.owner_id AS "ownerId", booking.item_id AS "itemId",
+                      booking.booker_id AS "bookerId", booking.book_status AS "status", booking.book_start AS "start", booking.book_end AS "end\"""",
+            nativeQuery = true)
+    List<BookingDecisionState> expireWaitingStartedBefore(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * Пакетный вариант insertIfFree: вставляет ожидающие бронирования booker одним запросом.
+     * Возвращает номера вставленных элементов массивов (с 1) и id созданных бронирований,
+     * пропущенные из-за пересечения в результат не попадают.
+     */
+    @Transactional
+    @Query(value = """
+            WITH entry AS (
+                SELECT entry.*, nextval('bookings_id_seq') AS id
+                FROM unnest(CAST(:starts AS TIMESTAMP[]), CAST(:ends AS TIMESTAMP[]),
+                            CAST(:itemIds AS BIGINT[]), CAST(:ownerIds AS BIGINT[]))
+                     WITH ORDINALITY AS entry(book_start, book_end, item_id, owner_id, position)
+            ), period AS (
+                INSERT INTO booking_periods (booking_id, item_id, period)
+                SELECT entry.id, entry.item_id, tsrange(entry.book_start, entry.book_end, '[)')
+                FROM entry
+                ORDER BY entry.position
+                ON CONFLICT DO NOTHING
+                RETURNING booking_id
+            ), inserted AS (
+                INSERT INTO bookings (id, book_start, book_end, item_id, booker_id, owner_id, book_status)
+                SELECT entry.id, entry.book_start, entry.book_end, entry.item_id, :bookerId, entry.owner_id, 'WAITING'
+                FROM entry
+                JOIN period ON period.booking_id = entry.id
+                RETURNING id
+            )
+            SELECT CAST(entry.position AS INT) AS "position", inserted.id AS "id"
+            FROM entry
+            JOIN inserted ON inserted.id = entry.id""",
+            nativeQuery = true)
+    List<BookingInsertedRow> insertAllIfFree(@Param("bookerId") Long bookerId,
+                                             @Param("starts") LocalDateTime[] starts,
+                                             @Param("ends") LocalDateTime[] ends,
+                                             @Param("itemIds") Long[] itemIds,
+                                             @Param("ownerIds") Long[] ownerIds);
+
+    @Query(value = """
+            SELECT period.booking_id
+            FROM booking_periods period
+            WHERE period.item_id = :itemId
+            AND period.period && tsrange(:start, :end, '[)')
+            ORDER BY lower(period.period)
+            LIMIT 1""", nativeQuery = true)
+    Optional<Long> findOverlapping(@Param("itemId") Long itemId,
+                                   @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
+    @Query(value = """
+            SELECT period.booking_id AS "id", lower(period.period) AS "start", upper(period.period) AS "end"
+            FROM booking_periods period
+            WHERE period.item_id = :itemId
+            AND period.period && tsrange(:now, NULL, '()')""", nativeQuery = true)
+    List<BookingInterval> findActiveIntervals(@Param("itemId") Long itemId, @Param("now") LocalDateTime now);
+
+    /**
+     * Условие на начало следует из условия на окончание, но по нему отсекаются разделы будущих месяцев.
+     */
     @Query("""
-            SELECT b
+            SELECT COUNT(b) > 0
             FROM Booking AS b
-            JOIN b.item as i
-            WHERE i.owner = :owner
-            AND b.start < :now AND b.end > :now
-            ORDER BY start ASC
-            """)
-    List<Booking> findAllCurrentByOwnerOrderByStartAsc(@Param("owner") User owner, @Param("now") LocalDateTime now);
+            WHERE b.item.id = :itemId
+            AND b.booker.id = :bookerId
+            AND b.start < :now
+            AND b.end < :now""")
+    boolean existsEndedBefore(@Param("itemId") Long itemId, @Param("bookerId") Long bookerId,
+                              @Param("now") LocalDateTime now);
 
+    /**
+     * Закончилось ли бронирование вещи пользователем в промежутке [from, now): по индексу idx_bookings_end
+     * читается только этот промежуток.
+     */
     @Query("""
-            SELECT b
-            FROM Booking as b
-            JOIN b.item as i
-            WHERE i.owner = :owner
-            AND b.end < :now
-            ORDER BY start ASC""")
-    List<Booking> findAllPastByOwnerOrderByStartAsc(@Param("owner") User owner, @Param("now") LocalDateTime now);
+            SELECT COUNT(b) > 0
+            FROM Booking AS b
+            WHERE b.item.id = :itemId
+            AND b.booker.id = :bookerId
+            AND b.start < :now
+            AND b.end >= :from
+            AND b.end < :now""")
+    boolean existsEndedBetween(@Param("itemId") Long itemId, @Param("bookerId") Long bookerId,
+                               @Param("from") LocalDateTime from, @Param("now") LocalDateTime now);
 
+    @Query(value = """
+            SELECT DISTINCT booking.item_id AS "itemId", booking.booker_id AS "bookerId"
+            FROM bookings booking""", nativeQuery = true)
+    List<BookingPair> findAllPairs();
 
-    @Query("""
-            SELECT b
-            FROM Booking as b
-            JOIN b.item as i
-            WHERE i.owner = :owner
-            AND b.start > :now
-            ORDER BY start ASC""")
-    List<Booking> findAllSortedOwnerBookings(@Param("owner") User owner, @Param("now") LocalDateTime now);
+    @Query(value = """
+            SELECT DISTINCT booking.item_id AS "itemId", booking.booker_id AS "bookerId"
+            FROM bookings booking
+            WHERE booking.book_start < :to
+            AND booking.book_end >= :from
+            AND booking.book_end < :to""", nativeQuery = true)
+    List<BookingPair> findPairsEndedBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
 
-    @Query("""
-            SELECT b
-            FROM Booking as b
-            JOIN b.item as i
-            WHERE i.owner = :owner
-            AND b.status = :status
-            ORDER BY start ASC""")
-    List<Booking> findAllByOwnerAndStatusOrderByStartAsc(@Param("owner") User owner,
-                                                         @Param("status") BookingStatus status);
-
-    boolean existsByItemAndBookerAndEndBefore(Item item, User booker, LocalDateTime now);
+    /**
+     * Создает месячные разделы bookings на months месяцев начиная с месяца firstMonth, если их еще нет.
+     * Возвращает число созданных разделов.
+     */
+    @Query(value = "SELECT create_bookings_partitions(:firstMonth, :months)", nativeQuery = true)
+    int createPartitions(@Param("firstMonth") LocalDate firstMonth, @Param("months") int months);
+
+    /**
+     * Удаляет интервалы бронирований, закончившихся до before: новое бронирование не может начаться в прошлом,
+     * поэтому пересечься с ними уже не может. Возвращает число удаленных интервалов.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM booking_periods WHERE upper(period) < :before", nativeQuery = true)
+    int deletePeriodsEndedBefore(@Param("before") LocalDateTime before);
+
+    /**
+     * Бронирования переносит в архив один экземпляр сервера за раз. false - перенос уже идет в другой транзакции.
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(hashtext('archive_bookings'))", nativeQuery = true)
+    boolean tryLockArchive();
+
+    /**
+     * Блокирует и возвращает не больше limit бронирований, закончившихся до before, по порядку (start, id).
+     */
+    @Query(value = """
+            SELECT booking.id AS "id", booking.book_start AS "start", booking.book_end AS "end",
+                   booking.book_status AS "status", booking.item_id AS "itemId",
+                   booking.booker_id AS "bookerId", booking.owner_id AS "ownerId"
+            FROM bookings booking
+            WHERE booking.book_start < :before
+            AND booking.book_end < :before
+            ORDER BY booking.book_start, booking.id
+            LIMIT :limit
+            FOR UPDATE""", nativeQuery = true)
+    List<BookingArchiveRow> lockEndedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+
+    /**
+     * Удаляет перенесенные в архив бронирования: ids[i] начинается в starts[i], так что каждое ищется в своем разделе.
+     */
+    @Modifying
+    @Query(value = """
+            DELETE FROM bookings booking
+            USING unnest(CAST(:ids AS BIGINT[]), CAST(:starts AS TIMESTAMP[])) AS archived(id, book_start)
+            WHERE booking.id = archived.id
+            AND booking.book_start = archived.book_start""", nativeQuery = true)
+    int deleteArchived(@Param("ids") Long[] ids, @Param("starts") LocalDateTime[] starts);
+
+    /**
+     * Имена сегментов архива, перенесенных из этой базы.
+     */
+    @Query(value = "SELECT name FROM booking_archive_segments", nativeQuery = true)
+    List<String> findArchiveSegmentNames();
+
+    /**
+     * Регистрирует сегмент архива в текущей транзакции: если она откатится, сегмент читаться не будет.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO booking_archive_segments (name) VALUES (:name)", nativeQuery = true)
+    void registerArchiveSegment(@Param("name") String name);
+
+    /**
+     * Удаляет опустевшие месячные разделы, целиком лежащие раньше before. Возвращает число удаленных разделов.
+     */
+    @Query(value = "SELECT drop_empty_bookings_partitions(:before)", nativeQuery = true)
+    int dropEmptyPartitions(@Param("before") LocalDateTime before);
+
+    /**
+     * Все бронирования арендатора в порядке (start, id). Строки читаются с курсора на сервере
+     * по EXPORT_FETCH_SIZE, поэтому поток нужно читать и закрывать внутри транзакции.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE))
+    @Query(value = """
+            SELECT booking.id AS "id", booking.book_start AS "start", booking.book_end AS "end",
+                   booking.book_status AS "status", item.id AS "itemId", item.name AS "itemName"
+            FROM bookings booking
+            JOIN items item ON item.id = booking.item_id
+            WHERE booking.booker_id = :bookerId
+            ORDER BY booking.book_start, booking.id""", nativeQuery = true)
+    Stream<BookingExportRow> streamByBooker(@Param("bookerId") long bookerId);
 }
@@ -0,0 +1,19 @@
+package ru.practicum.shareit.booking.dto;
+
+import java.time.LocalDateTime;
+
+public interface BookingArchiveRow {
+    Long getId();
+
+    LocalDateTime getStart();
+
+    LocalDateTime getEnd();
+
+    String getStatus();
+
+    Long getItemId();
+
+    Long getBookerId();
+
+    Long getOwnerId();
+}
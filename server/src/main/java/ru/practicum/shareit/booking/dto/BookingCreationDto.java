@@ -0,0 +1,17 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.*;
+import ru.practicum.shareit.booking.BookingCreation;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingCreationDto {
+    private int index;
+    private BookingCreation.Outcome outcome;
+    private BookingDto booking;
+    private String error;
+}
@@ -0,0 +1,39 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import ru.practicum.shareit.booking.BookingStatus;
+
+/**
+ * Итог решения по одному бронированию из пакета. status - статус бронирования после обработки,
+ * null если бронирование не найдено или недоступно пользователю.
+ */
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookingDecisionResult {
+
+    private Long bookingId;
+
+    private Outcome outcome;
+
+    private BookingStatus status;
+
+    private String error;
+
+    public enum Outcome {
+        // статус изменен
+        APPLIED,
+        // такое решение уже было принято
+        REPEATED,
+        // бронирование уже рассмотрено иначе
+        CONFLICT,
+        NOT_FOUND,
+        FORBIDDEN
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.shareit.booking.dto;
+
+import java.time.LocalDateTime;
+
+public interface BookingDecisionState {
+    Long getId();
+
+    Long getOwnerId();
+
+    Long getItemId();
+
+    Long getBookerId();
+
+    String getStatus();
+
+    LocalDateTime getStart();
+
+    LocalDateTime getEnd();
+}
@@ -0,0 +1,35 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Фильтр списков бронирований из параметров запроса: state можно передать несколько раз или через запятую.
+ */
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingFilter {
+    private List<String> state = List.of("ALL");
+
+    private Long itemId;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime rangeStart;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime rangeEnd;
+
+    public static BookingFilter of(String... states) {
+        return new BookingFilter(List.of(states), null, null, null);
+    }
+}
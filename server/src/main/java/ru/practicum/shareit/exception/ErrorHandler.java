@@ -3,6 +3,7 @@ package ru.practicum.shareit.exception;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -29,6 +30,12 @@ public class ErrorHandler {
                 HttpStatus.CONFLICT);
     }
 
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleOptimisticLock(OptimisticLockingFailureException e) {
+        return new ResponseEntity<>(new ErrorResponse("Ошибка во время обработки",
+                "Данные изменены другим запросом, повторите попытку"), HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler
     public ResponseEntity<ErrorResponse> handleConstrainViolation(ConstraintViolationException e) {
         Set<ConstraintViolation<?>> violations = e.getConstraintViolations();
@@ -0,0 +1,34 @@
+package ru.practicum.shareit.item;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Сдвигает сохраненные даты последнего и ближайшего бронирования вещей по мере того, как проходит время.
+ * Вещи обрабатываются порциями, каждая порция в своей транзакции. Несколько экземпляров сервера
+ * не мешают друг другу: заблокированные строки пропускаются.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ItemBookingDatesJob {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final ItemService itemService;
+
+    @Scheduled(fixedDelayString = "${shareit.items.booking-dates-refresh-interval:PT1M}")
+    public void refreshExpiredBookingDates() {
+        int refreshed = 0;
+        int batch;
+        do {
+            batch = itemService.refreshExpiredBookingDates(BATCH_SIZE);
+            refreshed += batch;
+        } while (batch == BATCH_SIZE);
+        if (refreshed > 0) {
+            log.debug("Refreshed booking dates of {} items", refreshed);
+        }
+    }
+}
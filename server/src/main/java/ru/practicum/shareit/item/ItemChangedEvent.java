@@ -0,0 +1,22 @@
+package ru.practicum.shareit.item;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.shareit.item.model.ItemDocument;
+
+/**
+ * Публикуется ItemService при создании, изменении и удалении вещи.
+ * before == null для новой вещи, after == null для удаленной.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ItemChangedEvent {
+    private final ItemDocument before;
+    private final ItemDocument after;
+
+    public Long getItemId() {
+        return after != null ? after.getId() : before.getId();
+    }
+}
@@ -2,6 +2,7 @@ package ru.practicum.shareit.item;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -11,7 +12,9 @@ import ru.practicum.shareit.exception.NotFoundException;
 import ru.practicum.shareit.item.dto.*;
 import ru.practicum.shareit.item.model.Comment;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemSearchPage;
 
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -45,8 +48,9 @@ public class ItemController {
     }
 
     @GetMapping("/{itemId}")
-    public ItemDto getItemById(@PathVariable Long itemId) throws NotFoundException {
-        Item item = itemService.getById(itemId);
+    public ItemDto getItemById(@PathVariable Long itemId,
+                               @RequestHeader("X-Sharer-User-Id") Long userId) throws NotFoundException {
+        Item item = itemService.getById(itemId, userId);
         return itemMapper.toDto(item);
     }
 
@@ -57,11 +61,40 @@ public class ItemController {
     }
 
     @GetMapping("/search")
-    public List<ItemDto> search(@RequestParam("text") String searchString) {
-        List<Item> items = itemService.search(searchString);
+    public List<ItemDto> search(@RequestParam("text") String searchString,
+                                @RequestParam(name = "from", defaultValue = "0") Integer from,
+                                @RequestParam(name = "size", defaultValue = "10") Integer size,
+                                @RequestParam(name = "comments", defaultValue = "false") boolean comments) {
+        List<Item> items = itemService.search(searchString, from, size, comments);
         return itemMapper.toDto(items);
     }
 
+    @GetMapping("/search/page")
+    public ItemSearchPageDto searchPage(@RequestParam("text") String searchString,
+                                        @RequestParam(name = "cursor", required = false) String cursor,
+                                        @RequestParam(name = "size", defaultValue = "10") Integer size,
+                                        @RequestParam(name = "facets", defaultValue = "false") boolean facets)
+            throws BadRequest {
+        ItemSearchPage page = itemService.searchPage(searchString, cursor, size, facets);
+        return itemMapper.toDto(page);
+    }
+
+    @GetMapping("/stats")
+    public List<ItemStatsDto> getStats(@RequestHeader("X-Sharer-User-Id") Long userId,
+                                       @RequestParam(name = "from", required = false)
+                                       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                       @RequestParam(name = "to", required = false)
+                                       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to)
+            throws NotFoundException, BadRequest {
+        return itemMapper.toStatsDto(itemService.getStats(userId, from, to));
+    }
+
+    @GetMapping("/suggest")
+    public List<String> suggest(@RequestParam("prefix") String prefix,
+                                @RequestParam(name = "size", defaultValue = "10") Integer size) {
+        return itemService.suggest(prefix, size);
+    }
+
     @PostMapping("/{itemId}/comment")
     public ResponseEntity<CommentDto> createComment(@RequestBody CreateCommentRequest request,
                                                     @PathVariable Long itemId,
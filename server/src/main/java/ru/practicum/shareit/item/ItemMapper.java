@@ -7,8 +7,14 @@ import ru.practicum.shareit.item.dto.CommentDto;
 import ru.practicum.shareit.item.dto.CreateCommentRequest;
 import ru.practicum.shareit.item.dto.CreateItemRequest;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.dto.ItemSearchFacetsDto;
+import ru.practicum.shareit.item.dto.ItemSearchPageDto;
+import ru.practicum.shareit.item.dto.ItemStatsDto;
 import ru.practicum.shareit.item.model.Comment;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemSearchFacets;
+import ru.practicum.shareit.item.model.ItemSearchPage;
+import ru.practicum.shareit.item.model.ItemStats;
 
 import java.util.List;
 
@@ -19,6 +25,14 @@ public interface ItemMapper {
 
     List<ItemDto> toDto(List<Item> item);
 
+    ItemSearchPageDto toDto(ItemSearchPage page);
+
+    ItemSearchFacetsDto toDto(ItemSearchFacets facets);
+
+    List<ItemStatsDto> toStatsDto(List<ItemStats> stats);
+
+    @Mapping(target = "bookingDatesValidUntil", ignore = true)
+    @Mapping(target = "commentSnippets", ignore = true)
     Item toItem(CreateItemRequest request);
 
     Comment toComment(CreateCommentRequest request);
@@ -0,0 +1,22 @@
+package ru.practicum.shareit.item;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Периодически сливает накопленные поправки подсказок в новый словарь, если их набралось
+ * suggestMergeThreshold. Сборка словаря идет в потоке планировщика, а не в потоке запроса.
+ */
+@Component
+@RequiredArgsConstructor
+public class ItemNameSuggestMergeJob {
+
+    private final ItemNameSuggester nameSuggester;
+
+    @Scheduled(fixedDelayString = "${shareit.search.suggest-merge-interval:PT10S}",
+            initialDelayString = "${shareit.search.suggest-merge-interval:PT10S}")
+    public void mergeSuggestions() {
+        nameSuggester.merge();
+    }
+}
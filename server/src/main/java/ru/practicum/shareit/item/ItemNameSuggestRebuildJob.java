@@ -0,0 +1,22 @@
+package ru.practicum.shareit.item;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Периодически собирает словарь подсказок из базы заново. Поправки копятся только от изменений вещей
+ * на этом экземпляре сервера, изменения с других экземпляров подсказки видят после пересборки.
+ */
+@Component
+@RequiredArgsConstructor
+public class ItemNameSuggestRebuildJob {
+
+    private final ItemNameSuggester nameSuggester;
+
+    @Scheduled(fixedDelayString = "${shareit.search.suggest-rebuild-interval:PT5M}",
+            initialDelayString = "${shareit.search.suggest-rebuild-interval:PT5M}")
+    public void rebuildSuggestions() {
+        nameSuggester.rebuild();
+    }
+}
@@ -0,0 +1,238 @@
+package ru.practicum.shareit.item;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.shareit.item.PackedNameIndex.NameCount;
+import ru.practicum.shareit.item.dao.ItemRepository;
+import ru.practicum.shareit.item.dto.ItemNameCount;
+import ru.practicum.shareit.item.model.ItemDocument;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Подсказки названий доступных вещей по префиксу.
+ * Основа - упакованный словарь PackedNameIndex, собранный при старте. Изменения вещей после коммита
+ * копятся поверх него как поправки к счетчикам названий. Слияние их в новый словарь запускает
+ * ItemNameSuggestMergeJob, когда поправок набирается suggestMergeThreshold, а не поток запроса.
+ * Поправки приходят только от изменений на этом экземпляре сервера, поэтому ItemNameSuggestRebuildJob
+ * периодически собирает словарь из базы заново. Поправки и их число читаются и меняются только под lock.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ItemNameSuggester {
+
+    private final ItemRepository itemRepository;
+    private final ItemSearchProperties properties;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object mergeMonitor = new Object();
+    private final Object rebuildMonitor = new Object();
+    /**
+     * Поправки к счетчикам словаря: название без регистра -> точное название -> поправка.
+     */
+    private final NavigableMap<String, Map<String, Integer>> pending = new TreeMap<>();
+    private final Set<String> changedDuringRebuild = new HashSet<>();
+    private PackedNameIndex packed = PackedNameIndex.EMPTY;
+    private int pendingSize;
+    private boolean rebuilding;
+
+    /**
+     * До limit названий, начинающихся с prefix без учета регистра, самые частые первыми.
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String folded = PackedNameIndex.fold(prefix.strip());
+        if (folded.isEmpty()) {
+            return List.of();
+        }
+        PriorityQueue<NameCount> top = new PriorityQueue<>(limit + 1, PackedNameIndex.BEST.reversed());
+        lock.readLock().lock();
+        try {
+            Set<String> changed = new HashSet<>();
+            pending.subMap(folded, true, folded + Character.MAX_VALUE, true).values()
+                    .forEach(names -> names.forEach((name, delta) -> {
+                        changed.add(name);
+                        int count = packed.count(name) + delta;
+                        if (count > 0) {
+                            PackedNameIndex.offer(top, new NameCount(name, count), limit);
+                        }
+                    }));
+            packed.collectTop(folded, limit, changed::contains, top);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<NameCount> best = new ArrayList<>(top);
+        best.sort(PackedNameIndex.BEST);
+        return best.stream().map(NameCount::getName).toList();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onItemChanged(ItemChangedEvent event) {
+        String before = availableName(event.getBefore());
+        String after = availableName(event.getAfter());
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (before != null) {
+                adjust(before, -1);
+            }
+            if (after != null) {
+                adjust(after, 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Собирает словарь из базы заново, накопленные поправки при этом отбрасываются: база их уже учитывает.
+     * Названия, изменившиеся во время сборки, пересчитываются отдельно.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (rebuildMonitor) {
+            doRebuild();
+        }
+    }
+
+    private void doRebuild() {
+        long started = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            rebuilding = true;
+            changedDuringRebuild.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        PackedNameIndex loaded = PackedNameIndex.build(toSortedCounts(itemRepository.countAvailableByName()));
+
+        lock.writeLock().lock();
+        try {
+            packed = loaded;
+            pending.clear();
+            pendingSize = 0;
+            if (!changedDuringRebuild.isEmpty()) {
+                Map<String, Integer> actual = new TreeMap<>();
+                itemRepository.countAvailableByName(changedDuringRebuild)
+                        .forEach(count -> actual.put(count.getName(), Math.toIntExact(count.getCount())));
+                changedDuringRebuild.forEach(name ->
+                        adjust(name, actual.getOrDefault(name, 0) - packed.count(name)));
+            }
+            rebuilding = false;
+            log.info("Built item name suggestions with {} names in {} ms",
+                    packed.size(), System.currentTimeMillis() - started);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Сливает накопленные поправки в новый словарь. Сборка идет без блокировки,
+     * поправки, пришедшие за это время, остаются поверх нового словаря.
+     */
+    public void merge() {
+        synchronized (mergeMonitor) {
+            PackedNameIndex base;
+            List<NameCount> merged = new ArrayList<>();
+            NavigableMap<String, Map<String, Integer>> snapshot = new TreeMap<>();
+            lock.readLock().lock();
+            try {
+                if (rebuilding || pendingSize < properties.getSuggestMergeThreshold()) {
+                    return;
+                }
+                log.debug("Merging {} pending name change(s) into suggestions", pendingSize);
+                base = packed;
+                pending.forEach((folded, names) -> snapshot.put(folded, new TreeMap<>(names)));
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Iterator<NameCount> changes = snapshot.values().stream()
+                    .flatMap(names -> names.entrySet().stream())
+                    .map(change -> new NameCount(change.getKey(), change.getValue()))
+                    .iterator();
+            NameCount[] change = {next(changes)};
+            base.forEach(entry -> {
+                while (change[0] != null && PackedNameIndex.ORDER.compare(change[0].getName(), entry.getName()) < 0) {
+                    merged.add(change[0]);
+                    change[0] = next(changes);
+                }
+                if (change[0] != null && change[0].getName().equals(entry.getName())) {
+                    merged.add(new NameCount(entry.getName(), entry.getCount() + change[0].getCount()));
+                    change[0] = next(changes);
+                } else {
+                    merged.add(entry);
+                }
+            });
+            while (change[0] != null) {
+                merged.add(change[0]);
+                change[0] = next(changes);
+            }
+            PackedNameIndex rebuilt = PackedNameIndex.build(merged);
+
+            lock.writeLock().lock();
+            try {
+                if (rebuilding || packed != base) {
+                    return;
+                }
+                packed = rebuilt;
+                snapshot.forEach((folded, names) -> names.forEach((name, delta) -> adjust(name, -delta)));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void adjust(String name, int delta) {
+        if (rebuilding) {
+            changedDuringRebuild.add(name);
+        }
+        if (delta == 0) {
+            return;
+        }
+        Map<String, Integer> names = pending.computeIfAbsent(PackedNameIndex.fold(name), folded -> new TreeMap<>());
+        Integer updated = names.merge(name, delta, Integer::sum);
+        if (updated == delta) {
+            pendingSize++;
+        } else if (updated == 0) {
+            names.remove(name);
+            pendingSize--;
+            if (names.isEmpty()) {
+                pending.remove(PackedNameIndex.fold(name));
+            }
+        }
+    }
+
+    private static String availableName(ItemDocument document) {
+        return document == null || !document.isAvailable() ? null : document.getName();
+    }
+
+    private static List<NameCount> toSortedCounts(List<ItemNameCount> counts) {
+        return counts.stream()
+                .map(count -> new NameCount(count.getName(), Math.toIntExact(count.getCount())))
+                .sorted((left, right) -> PackedNameIndex.ORDER.compare(left.getName(), right.getName()))
+                .toList();
+    }
+
+    private static NameCount next(Iterator<NameCount> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+}
@@ -0,0 +1,170 @@
+package ru.practicum.shareit.item;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.shareit.item.dao.ItemRepository;
+import ru.practicum.shareit.item.model.ItemDocument;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Кэш страниц поиска вещей в базе: нормализованный запрос + from/size -> id найденных вещей.
+ * Хранятся только id, сами вещи каждый раз читаются по первичному ключу в текущей сессии.
+ * После коммита изменения вещи удаляются записи запросов, которые могли ее найти.
+ */
+@Slf4j
+@Component
+public class ItemSearchCache {
+
+    static final String NAME = "itemSearch";
+
+    private final Cache<Key, List<Long>> cache;
+    private final ItemRepository repo;
+
+    /**
+     * Растет при каждой инвалидации. Загрузка, во время которой поколение сменилось, могла прочитать
+     * базу до коммита изменения и в кэш не сохраняется.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public ItemSearchCache(ItemSearchProperties properties, ItemRepository repo, MeterRegistry meterRegistry) {
+        this.repo = repo;
+        ItemSearchProperties.Cache settings = properties.getCache();
+        cache = Caffeine.newBuilder()
+                .maximumSize(settings.getMaximumSize())
+                .expireAfterWrite(settings.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Возвращает id вещей страницы. Одновременные промахи по одному ключу ждут одну загрузку,
+     * а не идут в базу каждый сам по себе.
+     */
+    public List<Long> get(String query, int from, int size, Supplier<List<Long>> loader) {
+        Key key = new Key(normalize(query), from, size);
+        long started = generation.get();
+        AtomicReference<List<Long>> loaded = new AtomicReference<>();
+        List<Long> ids = cache.get(key, k -> {
+            loaded.set(loader.get());
+            return generation.get() == started ? loaded.get() : null;
+        });
+        if (ids == null) {
+            return loaded.get();
+        }
+        // инвалидация могла пройти по кэшу, пока запись еще не появилась в нем
+        if (generation.get() != started) {
+            cache.asMap().remove(key, ids);
+        }
+        return ids;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onItemChanged(ItemChangedEvent event) {
+        ItemDocument before = event.getBefore();
+        ItemDocument after = event.getAfter();
+        if (before != null && after != null && !changesSearchResults(before, after)) {
+            return;
+        }
+        String beforeText = searchableText(before);
+        String afterText = searchableText(after);
+        if (beforeText == null && afterText == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        Set<String> matched = matchingQueries(beforeText, afterText);
+        cache.asMap().keySet().removeIf(key -> matched.contains(key.getQuery()));
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Приводит запрос к виду ключа кэша. Поиск в базе не зависит от регистра и лишних пробелов,
+     * поэтому "Дрель" и " дрель " попадают в одну запись.
+     */
+    public static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean changesSearchResults(ItemDocument before, ItemDocument after) {
+        return before.isAvailable() != after.isAvailable()
+                || !Objects.equals(before.getName(), after.getName())
+                || !Objects.equals(before.getDescription(), after.getDescription());
+    }
+
+    /**
+     * Текст вещи, по которому она может найтись, или null, если в выдачу она не попадает вовсе.
+     */
+    private static String searchableText(ItemDocument document) {
+        if (document == null || !document.isAvailable()) {
+            return null;
+        }
+        return document.getName() + " " + document.getDescription();
+    }
+
+    /**
+     * Запросы из кэша, в выдачу которых вещь с текстом beforeText или afterText могла попасть:
+     * подстрокой (ILIKE) или по лексемам полнотекстового поиска, которые считает база. Лишняя инвалидация
+     * стоит одного повторного запроса, пропущенная - устаревшей выдачи до TTL, поэтому при ошибке базы
+     * кэш очищается целиком.
+     */
+    private Set<String> matchingQueries(String beforeText, String afterText) {
+        Set<String> queries = new HashSet<>();
+        cache.asMap().keySet().forEach(key -> queries.add(key.getQuery()));
+        Set<String> matched = new HashSet<>();
+        if (queries.isEmpty()) {
+            return matched;
+        }
+        String text = beforeText == null ? afterText : afterText == null ? beforeText : beforeText + " " + afterText;
+        String foldedText = foldCase(text);
+        for (String query : queries) {
+            if (foldedText.contains(foldCase(query))) {
+                matched.add(query);
+            }
+        }
+        queries.removeAll(matched);
+        if (queries.isEmpty()) {
+            return matched;
+        }
+        try {
+            matched.addAll(repo.findQueriesMatching(queries.toArray(String[]::new), text));
+        } catch (RuntimeException e) {
+            log.warn("Could not match cached search queries, clearing the cache", e);
+            cache.invalidateAll();
+        }
+        return matched;
+    }
+
+    private static String foldCase(String text) {
+        return text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class Key {
+        private final String query;
+        private final int from;
+        private final int size;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.practicum.shareit.item;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shareit.search")
+public class ItemSearchProperties {
+
+    /**
+     * Чем отвечать на поисковые запросы: полнотекстовым индексом Postgres или индексом в памяти сервера.
+     */
+    private Engine engine = Engine.DATABASE;
+
+    /**
+     * Сколько id вещей читает из базы одна порция при перестроении индекса в памяти.
+     */
+    private int indexLoadChunkSize = 10_000;
+
+    /**
+     * Сколько порций читается параллельно при перестроении индекса в памяти.
+     */
+    private int indexLoadThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Сколько изменений названий копится поверх упакованного словаря подсказок, прежде чем он будет пересобран.
+     */
+    private int suggestMergeThreshold = 10_000;
+
+    /**
+     * Сколько самых частых владельцев показывать в фасетах поиска.
+     */
+    private int facetOwnersLimit = 10;
+
+    /**
+     * Как часто обновлять словарь слов вещей, по которому исправляются опечатки в запросе.
+     */
+    private Duration termsRefreshInterval = Duration.ofMinutes(5);
+
+    /**
+     * Кэш результатов поиска в базе.
+     */
+    private Cache cache = new Cache();
+
+    public enum Engine {
+        DATABASE,
+        MEMORY
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+
+        /**
+         * Сколько страниц результатов держать в кэше. Вытеснение W-TinyLFU, поэтому редкие запросы
+         * не выталкивают популярные.
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * Сколько живет страница с момента загрузки. Ограничивает устаревание на случай,
+         * если выборочная инвалидация что-то пропустила.
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+    }
+}
@@ -0,0 +1,29 @@
+package ru.practicum.shareit.item;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.shareit.item.dao.ItemRepository;
+
+/**
+ * Периодически обновляет словарь item_search_terms, по которому исправляются опечатки в поиске.
+ * Обновление конкурентное, поиск во время него продолжает читать старую версию словаря.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ItemSearchTermsJob {
+
+    private final ItemRepository itemRepository;
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${shareit.search.terms-refresh-interval:PT5M}",
+            initialDelayString = "${shareit.search.terms-refresh-interval:PT5M}")
+    public void refreshSearchTerms() {
+        long started = System.currentTimeMillis();
+        itemRepository.refreshSearchTerms();
+        log.debug("Refreshed search terms in {} ms", System.currentTimeMillis() - started);
+    }
+}
@@ -2,26 +2,52 @@ package ru.practicum.shareit.item;
 
 import org.springframework.transaction.annotation.Transactional;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
+import ru.practicum.shareit.exception.BadRequest;
 import ru.practicum.shareit.exception.ForbiddenException;
 import ru.practicum.shareit.exception.NotFoundException;
+import ru.practicum.shareit.item.dao.CommentRepository;
+import ru.practicum.shareit.item.dao.InMemoryItemRepo;
 import ru.practicum.shareit.item.dao.ItemRepository;
 import ru.practicum.shareit.item.dto.CreateItemRequest;
 import ru.practicum.shareit.item.dto.ItemLastNextBookDate;
+import ru.practicum.shareit.item.dto.ItemSearchCursor;
+import ru.practicum.shareit.item.dto.ItemSearchFacetRow;
+import ru.practicum.shareit.item.dto.ItemSearchHit;
 import ru.practicum.shareit.item.dto.UpdateItemRequest;
+import ru.practicum.shareit.item.model.CommentView;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemDocument;
+import ru.practicum.shareit.item.model.ItemSearchFacets;
+import ru.practicum.shareit.item.model.ItemSearchPage;
+import ru.practicum.shareit.item.model.ItemStats;
 import ru.practicum.shareit.request.dao.ItemRequestRepository;
 import ru.practicum.shareit.request.model.ItemRequest;
 import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserDeletedEvent;
 import ru.practicum.shareit.user.UserService;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -30,10 +56,26 @@ import java.util.Map;
 @Transactional(readOnly = true)
 public class ItemService {
 
+    private static final int COMMENT_SNIPPETS_PER_ITEM = 3;
+    private static final int FACET_BY_OWNER = 1;
+    private static final int FACET_BY_REQUEST = 2;
+    /**
+     * Период статистики по умолчанию: четыре недели по сегодняшний день.
+     */
+    private static final int STATS_DEFAULT_DAYS = 28;
+    private static final double SECONDS_PER_HOUR = 3600.0;
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
     private final UserService userService;
     private final ItemRequestRepository itemRequestRepository;
     private final ItemRepository repo;
+    private final CommentRepository commentRepository;
+    private final InMemoryItemRepo itemIndex;
     private final ItemMapper itemMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ItemSearchCache searchCache;
+    private final ItemNameSuggester nameSuggester;
+    private final ItemSearchProperties searchProperties;
 
     @Transactional
     public Item createItem(@Valid CreateItemRequest request, Long userId) throws NotFoundException {
@@ -46,7 +88,9 @@ public class ItemService {
                     .orElseThrow(() -> new NotFoundException("Could not find item request with id = " + requestId));
             item.setRequest(itemRequest);
         }
-        return repo.save(item);
+        Item savedItem = repo.save(item);
+        eventPublisher.publishEvent(new ItemChangedEvent(null, ItemDocument.from(savedItem)));
+        return savedItem;
     }
 
     @Transactional
@@ -58,6 +102,7 @@ public class ItemService {
         if (!item.getOwner().getId().equals(owner.getId())) {
             throw new ForbiddenException("Пользователю %s запрещено изменять вещь %s, он не ее владелец", userId, itemId);
         }
+        ItemDocument before = ItemDocument.from(item);
 
         String newName = request.getName();
         String newDescription = request.getDescription();
@@ -75,7 +120,24 @@ public class ItemService {
             item.setAvailable(newAvailable);
         }
 
-        return repo.save(item);
+        Item savedItem = repo.save(item);
+        eventPublisher.publishEvent(new ItemChangedEvent(before, ItemDocument.from(item)));
+        return savedItem;
+    }
+
+    public List<Item> getByIds(Collection<Long> itemIds) {
+        return repo.findAllById(itemIds);
+    }
+
+    /**
+     * Отзывы вещей одним запросом, по вещам. Вещей без отзывов в результате нет.
+     */
+    public Map<Long, List<CommentView>> getCommentViews(Collection<Long> itemIds) {
+        if (itemIds.isEmpty()) {
+            return Map.of();
+        }
+        return commentRepository.findViewsByItemIds(itemIds).stream()
+                .collect(Collectors.groupingBy(CommentView::getItemId));
     }
 
     public Item getById(Long itemId) throws NotFoundException {
@@ -83,21 +145,117 @@ public class ItemService {
                 .orElseThrow(() -> new NotFoundException("не найдена вещь с id = %s", itemId));
     }
 
+    /**
+     * Вещь глазами пользователя userId. Даты последнего и ближайшего бронирования видит только владелец,
+     * остальным они возвращаются пустыми. Колонки дат Hibernate не обновляет, так что обнуление
+     * в загруженной вещи в базу не попадет.
+     */
+    public Item getById(Long itemId, Long userId) throws NotFoundException {
+        Item item = getById(itemId);
+        if (item.getOwner() != null && Objects.equals(item.getOwner().getId(), userId)) {
+            fillStaleBookingDates(List.of(item), LocalDateTime.now());
+        } else {
+            item.setLastBooking(null);
+            item.setNextBooking(null);
+        }
+        return item;
+    }
+
     public List<Item> getItemsByUserId(Long userId) throws NotFoundException {
         LocalDateTime now = LocalDateTime.now();
         User owner = userService.getById(userId);
-        Map<Long, ItemLastNextBookDate> itemById = groupById(repo.getLastAndNextBookingDate(owner, now));
-
         List<Item> items = repo.findAllByOwnerWithComments(owner);
+        fillStaleBookingDates(items, now);
+        return items;
+    }
+
+    /**
+     * Статистика бронирований вещей владельца за дни с from по to включительно. Читается из суточных сводок
+     * item_daily_stats, поэтому стоит одной выборки по вещам владельца при любой длине периода.
+     */
+    public List<ItemStats> getStats(Long ownerId, LocalDate from, LocalDate to) throws NotFoundException, BadRequest {
+        LocalDate last = to == null ? LocalDate.now() : to;
+        LocalDate first = from == null ? last.minusDays(STATS_DEFAULT_DAYS - 1) : from;
+        if (first.isAfter(last)) {
+            throw new BadRequest("Начало периода %s должно быть не позже его конца %s", first, last);
+        }
+        userService.getById(ownerId);
+
+        double weeks = (ChronoUnit.DAYS.between(first, last) + 1) / 7.0;
+        return repo.findStats(ownerId, first, last).stream()
+                .map(row -> {
+                    long decided = row.getApproved() + row.getRejected() + row.getExpired();
+                    double bookedHours = row.getBookedSeconds() / SECONDS_PER_HOUR;
+                    return new ItemStats(row.getItemId(), row.getItemName(), row.getRequests(),
+                            row.getApproved(), row.getRejected(), row.getExpired(),
+                            decided == 0 ? null : (double) row.getApproved() / decided,
+                            row.getRequests() == 0 ? null : row.getLeadSeconds() / SECONDS_PER_HOUR / row.getRequests(),
+                            bookedHours, bookedHours / weeks);
+                })
+                .toList();
+    }
+
+    /**
+     * Пересчитывает сохраненные даты последнего и ближайшего бронирования вещи и переносит их
+     * в уже загруженную вещь: UPDATE идет мимо нее, и без этого ответ вернул бы прежние даты.
+     * Вызывается в транзакции, которая создала или изменила бронирование этой вещи.
+     */
+    @Transactional
+    public void refreshBookingDates(Item item) {
+        refreshAllBookingDates(List.of(item.getId()));
+        repo.findStoredBookingDates(List.of(item.getId())).forEach(dates -> {
+            item.setLastBooking(dates.getLastBooking());
+            item.setNextBooking(dates.getNextBooking());
+            item.setBookingDatesValidUntil(dates.getValidUntil());
+        });
+    }
+
+    @Transactional
+    public void refreshAllBookingDates(Collection<Long> itemIds) {
+        if (itemIds.isEmpty()) {
+            return;
+        }
+        List<Long> lockedIds = repo.lockForBookingDates(itemIds);
+        repo.refreshBookingDates(lockedIds, LocalDateTime.now());
+    }
+
+    /**
+     * Сдвигает вперед даты бронирований не больше чем у limit вещей, у которых они устарели.
+     * Возвращает число обработанных вещей.
+     */
+    @Transactional
+    public int refreshExpiredBookingDates(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> itemIds = repo.lockExpiredBookingDates(now, limit);
+        if (!itemIds.isEmpty()) {
+            repo.refreshBookingDates(itemIds, now);
+        }
+        return itemIds.size();
+    }
+
+    /**
+     * Сохраненные даты бронирований читаются как есть. Если момент их пересчета уже наступил,
+     * а фоновая задача еще не успела, даты считаются на лету только для таких вещей.
+     */
+    private void fillStaleBookingDates(List<Item> items, LocalDateTime now) {
+        List<Long> staleIds = items.stream()
+                .filter(item -> item.getBookingDatesValidUntil() != null
+                        && !item.getBookingDatesValidUntil().isAfter(now))
+                .map(Item::getId)
+                .toList();
+        if (staleIds.isEmpty()) {
+            return;
+        }
+        Map<Long, ItemLastNextBookDate> itemById = groupById(repo.getLastAndNextBookingDate(staleIds, now));
         items.forEach(item -> {
-            if (itemById.get(item.getId()) != null) {
-                ItemLastNextBookDate date = itemById.get(item.getId());
-                item.setLastBooking(date.getLastBooking());
+            ItemLastNextBookDate date = itemById.get(item.getId());
+            if (date != null) {
+                if (date.getLastBooking() != null) {
+                    item.setLastBooking(date.getLastBooking());
+                }
                 item.setNextBooking(date.getNextBooking());
             }
         });
-
-        return items;
     }
 
     @Transactional
@@ -110,13 +268,189 @@ public class ItemService {
         }
 
         repo.deleteById(itemId);
+        eventPublisher.publishEvent(new ItemChangedEvent(ItemDocument.from(item), null));
+    }
+
+    /**
+     * Вещи удаляемого пользователя база удалит каскадно; индексам поиска об их удалении сообщается
+     * так же, как об удалении вещи владельцем, после коммита.
+     */
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        List<ItemDocument> items = repo.findDocumentsByOwnerId(event.getUserId());
+        items.forEach(item -> eventPublisher.publishEvent(new ItemChangedEvent(item, null)));
+        log.info("Removing {} item(s) of deleted user {}", items.size(), event.getUserId());
+    }
+
+    public List<Item> search(String searchString, @PositiveOrZero int from, @Positive int size) {
+        return search(searchString, from, size, false);
     }
 
-    public List<Item> search(String searchString) {
+    /**
+     * withComments - искать еще и по текстам отзывов; у найденных вещей заполняются commentSnippets.
+     * Такой поиск всегда идет в базу: индекс в памяти и кэш выдачи отзывы не учитывают.
+     */
+    public List<Item> search(String searchString, @PositiveOrZero int from, @Positive int size, boolean withComments) {
         if (searchString == null || searchString.isBlank()) {
             return List.of();
         }
-        return repo.search(searchString);
+        if (withComments) {
+            return searchWithComments(ItemSearchCache.normalize(searchString), from, size);
+        }
+        if (itemIndex.isReady()) {
+            return itemIndex.search(searchString, from, size);
+        }
+        String query = ItemSearchCache.normalize(searchString);
+        Map<Long, Item> loaded = new HashMap<>();
+        List<Long> ids = searchCache.get(query, from, size, () -> {
+            List<Item> items = repo.search(query, toContainsPattern(query), from, size);
+            items.forEach(item -> loaded.put(item.getId(), item));
+            return items.stream().map(Item::getId).toList();
+        });
+        // вещи из кэша перечитываются по id, свежезагруженные уже есть в сессии
+        return loaded.isEmpty() ? findAllByIdInOrder(ids) : ids.stream().map(loaded::get).toList();
+    }
+
+    private List<Item> searchWithComments(String query, int from, int size) {
+        List<Long> ids = repo.searchWithComments(query, toContainsPattern(query), from, size).stream()
+                .map(ItemSearchHit::getId)
+                .toList();
+        List<Item> items = findAllByIdInOrder(ids);
+        if (items.isEmpty()) {
+            return items;
+        }
+        Map<Long, List<String>> snippets = new HashMap<>();
+        repo.findCommentSnippets(query, ids, COMMENT_SNIPPETS_PER_ITEM).forEach(snippet ->
+                snippets.computeIfAbsent(snippet.getItemId(), id -> new ArrayList<>()).add(snippet.getSnippet()));
+        items.forEach(item -> item.setCommentSnippets(snippets.getOrDefault(item.getId(), List.of())));
+        return items;
+    }
+
+    public List<String> suggest(String prefix, @Positive int size) {
+        if (prefix == null || prefix.isBlank()) {
+            return List.of();
+        }
+        return nameSuggester.suggest(prefix, size);
+    }
+
+    public ItemSearchPage searchPage(String searchString, String cursor, @Positive int size,
+                                     boolean withFacets) throws BadRequest {
+        if (searchString == null || searchString.isBlank()) {
+            return new ItemSearchPage(List.of(), null, null, withFacets ? ItemSearchFacets.EMPTY : null);
+        }
+        ItemSearchCursor after = cursor == null ? ItemSearchCursor.FIRST : ItemSearchCursor.decode(cursor);
+        ItemSearchPage page = findPage(searchString, after, size);
+        String suggestion = null;
+        if (cursor == null && page.getItems().isEmpty()) {
+            // ничего не нашлось: пробуем запрос с исправленными опечатками и отдаем его выдачу вместе с исправлением
+            String corrected = correctSpelling(searchString);
+            ItemSearchPage correctedPage = corrected == null ? null : findPage(corrected, ItemSearchCursor.FIRST, size);
+            if (correctedPage != null && !correctedPage.getItems().isEmpty()) {
+                page = correctedPage;
+                suggestion = corrected;
+            }
+        }
+        ItemSearchFacets facets = withFacets ? findFacets(suggestion != null ? suggestion : searchString) : null;
+        return new ItemSearchPage(page.getItems(), page.getNextCursor(), suggestion, facets);
+    }
+
+    private ItemSearchFacets findFacets(String searchString) {
+        int owners = searchProperties.getFacetOwnersLimit();
+        if (itemIndex.isReady()) {
+            return itemIndex.facets(searchString, owners);
+        }
+        long available = 0;
+        long unavailable = 0;
+        long forRequest = 0;
+        long notForRequest = 0;
+        Map<Long, Long> byOwner = new LinkedHashMap<>();
+        List<ItemSearchFacetRow> rows = repo.searchFacets(searchString, toContainsPattern(searchString), owners);
+        for (ItemSearchFacetRow row : rows) {
+            switch (row.getGrouping()) {
+                case FACET_BY_OWNER -> byOwner.put(row.getOwnerId(), row.getAvailable());
+                case FACET_BY_REQUEST -> {
+                    if (row.getForRequest()) {
+                        forRequest = row.getAvailable();
+                    } else {
+                        notForRequest = row.getAvailable();
+                    }
+                }
+                default -> {
+                    available = row.getAvailable();
+                    unavailable = row.getUnavailable();
+                }
+            }
+        }
+        // строки по владельцам приходят в порядке группировки, а не по числу вещей
+        Map<Long, Long> topOwners = new LinkedHashMap<>();
+        byOwner.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .forEach(owner -> topOwners.put(owner.getKey(), owner.getValue()));
+        return new ItemSearchFacets(available, available, unavailable, forRequest, notForRequest, topOwners);
+    }
+
+    private ItemSearchPage findPage(String searchString, ItemSearchCursor after, int size) {
+        List<ItemSearchHit> hits;
+        List<Item> items;
+        if (itemIndex.isReady()) {
+            hits = itemIndex.searchAfter(searchString, after.getScore(), after.getId(), size);
+            items = hits.stream()
+                    .map(hit -> itemIndex.getItemById(hit.getId()))
+                    .flatMap(Optional::stream)
+                    .toList();
+        } else {
+            hits = repo.searchAfter(searchString, toContainsPattern(searchString),
+                    after.getScore(), after.getId(), size);
+            items = findAllByIdInOrder(hits.stream().map(ItemSearchHit::getId).toList());
+        }
+
+        String nextCursor = null;
+        if (hits.size() == size) {
+            ItemSearchHit last = hits.get(hits.size() - 1);
+            nextCursor = new ItemSearchCursor(last.getScore(), last.getId()).encode();
+        }
+        return new ItemSearchPage(items, nextCursor);
+    }
+
+    /**
+     * Заменяет слова запроса, которых нет в словаре вещей, на ближайшие по триграммам.
+     * Возвращает null, если исправлять нечего.
+     */
+    private String correctSpelling(String searchString) {
+        List<String> words = Arrays.stream(WORD_SEPARATOR.split(ItemSearchCache.normalize(searchString)))
+                .filter(word -> !word.isEmpty())
+                .toList();
+        if (words.isEmpty()) {
+            return null;
+        }
+        String query = String.join(" ", words);
+        String suggestion = repo.findTermCorrections(query).stream()
+                .map(term -> term.getCorrection() != null ? term.getCorrection() : term.getWord())
+                .collect(Collectors.joining(" "));
+        return suggestion.equals(query) ? null : suggestion;
+    }
+
+    private List<Item> findAllByIdInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Item> itemById = new HashMap<>();
+        repo.findAllById(ids).forEach(item -> itemById.put(item.getId(), item));
+        return ids.stream()
+                .map(itemById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Экранирует спецсимволы LIKE, чтобы пользовательский текст искался как обычная подстрока.
+     */
+    static String toContainsPattern(String searchString) {
+        String escaped = searchString
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
     }
 
     private Map<Long, ItemLastNextBookDate> groupById(List<ItemLastNextBookDate> items) {
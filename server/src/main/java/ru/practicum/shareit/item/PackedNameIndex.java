@@ -0,0 +1,227 @@
+package ru.practicum.shareit.item;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Неизменяемый упакованный словарь названий вещей с количеством доступных вещей у каждого названия.
+ * Названия отсортированы без учета регистра и хранятся в одном массиве байт блоками по BLOCK_SIZE:
+ * первое название блока целиком, остальные как длина общего с предыдущим префикса и остаток в UTF-8.
+ * Для каждого блока хранится максимальный счетчик, чтобы при выборе топа пропускать блоки целиком.
+ */
+final class PackedNameIndex {
+
+    static final int BLOCK_SIZE = 16;
+
+    static final Comparator<String> ORDER = Comparator
+            .comparing(PackedNameIndex::fold)
+            .thenComparing(Comparator.naturalOrder());
+
+    /**
+     * Лучшие подсказки первыми: чаще встречающиеся названия, при равенстве - по алфавиту.
+     */
+    static final Comparator<NameCount> BEST = Comparator
+            .comparing(NameCount::getCount, Comparator.reverseOrder())
+            .thenComparing(NameCount::getName, ORDER);
+
+    static final PackedNameIndex EMPTY = build(List.of());
+
+    private final byte[] data;
+    private final int[] blockOffsets;
+    private final int[] blockMax;
+    private final int[] counts;
+
+    private PackedNameIndex(byte[] data, int[] blockOffsets, int[] blockMax, int[] counts) {
+        this.data = data;
+        this.blockOffsets = blockOffsets;
+        this.blockMax = blockMax;
+        this.counts = counts;
+    }
+
+    /**
+     * Строит словарь из названий, отсортированных по ORDER без повторов. Названия с нулевым счетчиком пропускаются.
+     */
+    static PackedNameIndex build(List<NameCount> sorted) {
+        List<NameCount> entries = sorted.stream().filter(entry -> entry.getCount() > 0).toList();
+        int blocks = (entries.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] blockOffsets = new int[blocks];
+        int[] blockMax = new int[blocks];
+        int[] counts = new int[entries.size()];
+        byte[] previous = new byte[0];
+        for (int i = 0; i < entries.size(); i++) {
+            byte[] name = entries.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            int block = i / BLOCK_SIZE;
+            int shared = 0;
+            if (i % BLOCK_SIZE == 0) {
+                blockOffsets[block] = out.size();
+            } else {
+                shared = Arrays.mismatch(previous, name);
+                shared = shared < 0 ? name.length : shared;
+            }
+            writeVarInt(out, shared);
+            writeVarInt(out, name.length - shared);
+            out.write(name, shared, name.length - shared);
+            counts[i] = entries.get(i).getCount();
+            blockMax[block] = Math.max(blockMax[block], counts[i]);
+            previous = name;
+        }
+        return new PackedNameIndex(out.toByteArray(), blockOffsets, blockMax, counts);
+    }
+
+    int size() {
+        return counts.length;
+    }
+
+    /**
+     * Сколько доступных вещей с точно таким названием, 0 если названия нет.
+     */
+    int count(String name) {
+        int block = lastBlockStartingAtOrBefore(name);
+        if (block < 0) {
+            return 0;
+        }
+        String[] names = decodeBlock(block);
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return counts[block * BLOCK_SIZE + i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Добавляет в кучу top лучшие названия, начинающиеся с foldedPrefix, держа в ней не больше limit записей.
+     * Блоки перебираются от большего максимального счетчика к меньшему и отбрасываются,
+     * как только их максимум не может вытеснить худшую запись кучи.
+     */
+    void collectTop(String foldedPrefix, int limit, Predicate<String> skip, PriorityQueue<NameCount> top) {
+        int from = Math.max(firstBlock(head -> fold(head).compareTo(foldedPrefix) >= 0) - 1, 0);
+        int to = firstBlock(head -> {
+            String folded = fold(head);
+            return folded.compareTo(foldedPrefix) > 0 && !folded.startsWith(foldedPrefix);
+        });
+        PriorityQueue<Integer> blocks = new PriorityQueue<>(Math.max(to - from, 1),
+                Comparator.comparing((Integer block) -> blockMax[block]).reversed());
+        for (int block = from; block < to; block++) {
+            blocks.add(block);
+        }
+        while (!blocks.isEmpty()) {
+            int block = blocks.poll();
+            if (top.size() == limit && blockMax[block] < top.peek().getCount()) {
+                break;
+            }
+            String[] names = decodeBlock(block);
+            for (int i = 0; i < names.length; i++) {
+                if (fold(names[i]).startsWith(foldedPrefix) && !skip.test(names[i])) {
+                    offer(top, new NameCount(names[i], counts[block * BLOCK_SIZE + i]), limit);
+                }
+            }
+        }
+    }
+
+    /**
+     * Все названия по порядку, для слияния с накопленными изменениями.
+     */
+    void forEach(Consumer<NameCount> consumer) {
+        for (int block = 0; block < blockOffsets.length; block++) {
+            String[] names = decodeBlock(block);
+            for (int i = 0; i < names.length; i++) {
+                consumer.accept(new NameCount(names[i], counts[block * BLOCK_SIZE + i]));
+            }
+        }
+    }
+
+    static void offer(PriorityQueue<NameCount> top, NameCount candidate, int limit) {
+        top.add(candidate);
+        if (top.size() > limit) {
+            top.poll();
+        }
+    }
+
+    static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    private int lastBlockStartingAtOrBefore(String name) {
+        return firstBlock(head -> ORDER.compare(head, name) > 0) - 1;
+    }
+
+    /**
+     * Первый блок, чье первое название удовлетворяет монотонному условию, или число блоков, если такого нет.
+     */
+    private int firstBlock(Predicate<String> condition) {
+        int low = 0;
+        int high = blockOffsets.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (condition.test(decodeHead(middle))) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private String decodeHead(int block) {
+        int[] position = {blockOffsets[block]};
+        readVarInt(position);
+        int length = readVarInt(position);
+        return new String(data, position[0], length, StandardCharsets.UTF_8);
+    }
+
+    private String[] decodeBlock(int block) {
+        int entries = Math.min(BLOCK_SIZE, counts.length - block * BLOCK_SIZE);
+        String[] names = new String[entries];
+        int[] position = {blockOffsets[block]};
+        byte[] previous = new byte[0];
+        for (int i = 0; i < entries; i++) {
+            int shared = readVarInt(position);
+            int suffix = readVarInt(position);
+            byte[] name = Arrays.copyOf(previous, shared + suffix);
+            System.arraycopy(data, position[0], name, shared, suffix);
+            position[0] += suffix;
+            names[i] = new String(name, StandardCharsets.UTF_8);
+            previous = name;
+        }
+        return names;
+    }
+
+    private int readVarInt(int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static final class NameCount {
+        private final String name;
+        private final int count;
+    }
+}
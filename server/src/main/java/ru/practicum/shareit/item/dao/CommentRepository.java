@@ -1,7 +1,22 @@
 package ru.practicum.shareit.item.dao;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.practicum.shareit.item.model.Comment;
+import ru.practicum.shareit.item.model.CommentView;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface CommentRepository extends JpaRepository<Comment, Long> {
+
+    @Query("""
+            SELECT new ru.practicum.shareit.item.model.CommentView(
+                comment.item.id, comment.id, comment.text, author.name, comment.created)
+            FROM Comment comment
+            JOIN comment.author author
+            WHERE comment.item.id IN :itemIds
+            ORDER BY comment.id""")
+    List<CommentView> findViewsByItemIds(@Param("itemIds") Collection<Long> itemIds);
 }
@@ -0,0 +1,452 @@
+package ru.practicum.shareit.item.dao;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.shareit.item.ItemChangedEvent;
+import ru.practicum.shareit.item.ItemSearchProperties;
+import ru.practicum.shareit.item.dto.ItemSearchHit;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemDocument;
+import ru.practicum.shareit.item.model.ItemSearchFacets;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Поисковый индекс вещей в памяти сервера.
+ * Для каждого слова из названия и описания хранится отсортированный список id вещей,
+ * доступность вещей хранится битовой картой по id. Слова запроса ищутся как префиксы слов вещи,
+ * вещь попадает в выдачу, если в ней нашлись все слова запроса.
+ * Индекс перестраивается из базы при старте и затем обновляется после коммита изменений вещей.
+ * Работает, только если shareit.search.engine=memory.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class InMemoryItemRepo implements ItemRepo {
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Comparator<IndexHit> BY_RELEVANCE = Comparator
+            .comparing(IndexHit::getScore, Comparator.reverseOrder())
+            .thenComparing(IndexHit::getId);
+
+    private final ItemRepository itemRepository;
+    private final ItemSearchProperties properties;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, ItemDocument> documents = new HashMap<>();
+    private final NavigableMap<String, LongPostings> terms = new TreeMap<>();
+    private final Map<Long, LongPostings> itemsByOwner = new HashMap<>();
+    private final Map<Long, String[]> nameTokens = new HashMap<>();
+    private final BitSet available = new BitSet();
+    private final Set<Long> availableBeyondBits = new HashSet<>();
+    private final Set<Long> changedDuringRebuild = new HashSet<>();
+    private boolean rebuilding;
+    private volatile boolean ready;
+
+    public boolean isEnabled() {
+        return properties.getEngine() == ItemSearchProperties.Engine.MEMORY;
+    }
+
+    /**
+     * Индекс загружен из базы и может отвечать на запросы.
+     */
+    public boolean isReady() {
+        return isEnabled() && ready;
+    }
+
+    @Override
+    public Item save(Item item) {
+        apply(ItemDocument.from(item));
+        return item;
+    }
+
+    @Override
+    public Optional<Item> getItemById(Long itemId) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(documents.get(itemId)).map(ItemDocument::toItem);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Item> getByUserId(Long userId) {
+        lock.readLock().lock();
+        try {
+            LongPostings ids = itemsByOwner.getOrDefault(userId, new LongPostings());
+            List<Item> items = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                items.add(documents.get(ids.get(i)).toItem());
+            }
+            return items;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Item> search(String searchString) {
+        return search(searchString, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Item> search(String searchString, int from, int size) {
+        List<IndexHit> hits = rank(searchString, (int) Math.min((long) from + size, Integer.MAX_VALUE), hit -> true);
+        return toItems(hits.subList(Math.min(from, hits.size()), hits.size()));
+    }
+
+    @Override
+    public List<ItemSearchHit> searchAfter(String searchString, float score, long id, int size) {
+        return rank(searchString, size,
+                hit -> hit.getScore() < score || (hit.getScore() == score && hit.getId() > id)).stream()
+                .map(ItemSearchHit.class::cast)
+                .toList();
+    }
+
+    /**
+     * Фасеты считаются тем же проходом по совпавшим id: доступность берется из битовой карты,
+     * владелец и запрос - из документов.
+     */
+    @Override
+    public ItemSearchFacets facets(String searchString, int owners) {
+        List<String> queryTokens = tokenize(searchString);
+        if (queryTokens.isEmpty()) {
+            return ItemSearchFacets.EMPTY;
+        }
+        long availableCount = 0;
+        long forRequest = 0;
+        Map<Long, Long> byOwner = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            LongPostings candidates = match(queryTokens);
+            for (int i = 0; i < candidates.size(); i++) {
+                long id = candidates.get(i);
+                if (!isAvailable(id)) {
+                    continue;
+                }
+                ItemDocument document = documents.get(id);
+                availableCount++;
+                if (document.getRequestId() != null) {
+                    forRequest++;
+                }
+                byOwner.merge(document.getOwnerId(), 1L, Long::sum);
+            }
+            Map<Long, Long> topOwners = new LinkedHashMap<>();
+            byOwner.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .limit(owners)
+                    .forEach(owner -> topOwners.put(owner.getKey(), owner.getValue()));
+            return new ItemSearchFacets(availableCount, availableCount, candidates.size() - availableCount,
+                    forRequest, availableCount - forRequest, topOwners);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteById(Long itemId) {
+        lock.writeLock().lock();
+        try {
+            markChanged(itemId);
+            ItemDocument previous = documents.remove(itemId);
+            if (previous != null) {
+                unindex(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onItemChanged(ItemChangedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (event.getAfter() == null) {
+            deleteById(event.getItemId());
+        } else {
+            apply(event.getAfter());
+        }
+    }
+
+    /**
+     * Перестраивает индекс из базы: id вещей делятся на диапазоны,
+     * диапазоны читаются параллельно и по мере готовности добавляются в индекс.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!isEnabled()) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            rebuilding = true;
+            changedDuringRebuild.clear();
+            documents.clear();
+            terms.clear();
+            itemsByOwner.clear();
+            nameTokens.clear();
+            available.clear();
+            availableBeyondBits.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long maxId = itemRepository.findMaxId();
+        int chunkSize = properties.getIndexLoadChunkSize();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, properties.getIndexLoadThreads()));
+        try {
+            List<Future<List<ItemDocument>>> chunks = new ArrayList<>();
+            for (long fromId = 1; fromId <= maxId; fromId += chunkSize) {
+                long chunkFrom = fromId;
+                chunks.add(executor.submit(() -> itemRepository.findDocumentsByIdRange(chunkFrom, chunkFrom + chunkSize)));
+            }
+            for (Future<List<ItemDocument>> chunk : chunks) {
+                List<ItemDocument> loaded = chunk.get();
+                lock.writeLock().lock();
+                try {
+                    loaded.stream()
+                            .filter(document -> !changedDuringRebuild.contains(document.getId()))
+                            .forEach(this::index);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Перестроение поискового индекса прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Не удалось перестроить поисковый индекс", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        lock.writeLock().lock();
+        try {
+            terms.values().forEach(LongPostings::trim);
+            itemsByOwner.values().forEach(LongPostings::trim);
+            rebuilding = false;
+            changedDuringRebuild.clear();
+            ready = true;
+            log.info("Rebuilt search index with {} items and {} terms in {} ms",
+                    documents.size(), terms.size(), System.currentTimeMillis() - started);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT).replace('ё', 'е'))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Первые limit доступных вещей по релевантности среди прошедших фильтр after. Вся выдача не сортируется:
+     * лучшие держатся в куче размером limit, худшая из них на вершине.
+     */
+    private List<IndexHit> rank(String searchString, int limit, Predicate<IndexHit> after) {
+        List<String> queryTokens = tokenize(searchString);
+        if (queryTokens.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        PriorityQueue<IndexHit> top = new PriorityQueue<>(BY_RELEVANCE.reversed());
+        lock.readLock().lock();
+        try {
+            LongPostings candidates = match(queryTokens);
+            for (int i = 0; i < candidates.size(); i++) {
+                long id = candidates.get(i);
+                if (!isAvailable(id)) {
+                    continue;
+                }
+                IndexHit hit = new IndexHit(id, score(nameTokens.get(id), queryTokens));
+                if (!after.test(hit)) {
+                    continue;
+                }
+                if (top.size() < limit) {
+                    top.add(hit);
+                } else if (BY_RELEVANCE.compare(hit, top.peek()) < 0) {
+                    top.poll();
+                    top.add(hit);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<IndexHit> hits = new ArrayList<>(top);
+        hits.sort(BY_RELEVANCE);
+        return hits;
+    }
+
+    /**
+     * Вещи, в которых нашлись все слова запроса, независимо от доступности. Вызывать под блокировкой чтения.
+     */
+    private LongPostings match(List<String> queryTokens) {
+        LongPostings candidates = null;
+        for (String token : queryTokens) {
+            Collection<LongPostings> matching = terms.subMap(token, true, token + Character.MAX_VALUE, false).values();
+            LongPostings union = LongPostings.union(matching);
+            candidates = candidates == null ? union : LongPostings.intersect(candidates, union);
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Слово запроса, найденное в названии, весит вдвое больше найденного только в описании.
+     */
+    private static float score(String[] nameTokens, List<String> queryTokens) {
+        float score = 0;
+        for (String queryToken : queryTokens) {
+            boolean inName = false;
+            for (String token : nameTokens) {
+                if (token.startsWith(queryToken)) {
+                    inName = true;
+                    break;
+                }
+            }
+            score += inName ? 2 : 1;
+        }
+        return score;
+    }
+
+    private List<Item> toItems(List<IndexHit> hits) {
+        lock.readLock().lock();
+        try {
+            return hits.stream()
+                    .map(hit -> documents.get(hit.getId()))
+                    .filter(document -> document != null)
+                    .map(ItemDocument::toItem)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void apply(ItemDocument document) {
+        lock.writeLock().lock();
+        try {
+            markChanged(document.getId());
+            index(document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markChanged(Long itemId) {
+        if (rebuilding) {
+            changedDuringRebuild.add(itemId);
+        }
+    }
+
+    private void index(ItemDocument document) {
+        ItemDocument previous = documents.put(document.getId(), document);
+        if (previous != null) {
+            unindex(previous);
+        }
+        long id = document.getId();
+        for (String token : tokens(document)) {
+            terms.computeIfAbsent(token, t -> new LongPostings()).add(id);
+        }
+        if (document.getOwnerId() != null) {
+            itemsByOwner.computeIfAbsent(document.getOwnerId(), owner -> new LongPostings()).add(id);
+        }
+        nameTokens.put(id, tokenize(document.getName()).toArray(String[]::new));
+        setAvailable(id, document.isAvailable());
+    }
+
+    private void unindex(ItemDocument document) {
+        long id = document.getId();
+        for (String token : tokens(document)) {
+            LongPostings postings = terms.get(token);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.isEmpty()) {
+                    terms.remove(token);
+                }
+            }
+        }
+        LongPostings ownerItems = itemsByOwner.get(document.getOwnerId());
+        if (ownerItems != null) {
+            ownerItems.remove(id);
+            if (ownerItems.isEmpty()) {
+                itemsByOwner.remove(document.getOwnerId());
+            }
+        }
+        nameTokens.remove(id);
+        setAvailable(id, false);
+    }
+
+    private static Set<String> tokens(ItemDocument document) {
+        Set<String> tokens = new HashSet<>(tokenize(document.getName()));
+        tokens.addAll(tokenize(document.getDescription()));
+        return tokens;
+    }
+
+    /**
+     * Доступность хранится битом с номером id; вещи с id больше Integer.MAX_VALUE в карту не помещаются
+     * и хранятся множеством.
+     */
+    private boolean isAvailable(long id) {
+        return id <= Integer.MAX_VALUE ? available.get((int) id) : availableBeyondBits.contains(id);
+    }
+
+    private void setAvailable(long id, boolean value) {
+        if (id <= Integer.MAX_VALUE) {
+            available.set((int) id, value);
+        } else if (value) {
+            availableBeyondBits.add(id);
+        } else {
+            availableBeyondBits.remove(id);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class IndexHit implements ItemSearchHit {
+        private final Long id;
+        private final Float score;
+    }
+}
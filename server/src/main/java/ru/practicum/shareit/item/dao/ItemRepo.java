@@ -1,6 +1,8 @@
 package ru.practicum.shareit.item.dao;
 
+import ru.practicum.shareit.item.dto.ItemSearchHit;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemSearchFacets;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,5 +16,11 @@ public interface ItemRepo {
 
     List<Item> search(String searchString);
 
+    List<Item> search(String searchString, int from, int size);
+
+    List<ItemSearchHit> searchAfter(String searchString, float score, long id, int size);
+
+    ItemSearchFacets facets(String searchString, int owners);
+
     void deleteById(Long itemId);
 }
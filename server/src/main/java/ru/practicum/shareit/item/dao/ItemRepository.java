@@ -1,17 +1,43 @@
 package ru.practicum.shareit.item.dao;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import ru.practicum.shareit.item.dto.ItemCommentSnippet;
 import ru.practicum.shareit.item.dto.ItemLastNextBookDate;
+import ru.practicum.shareit.item.dto.ItemNameCount;
+import ru.practicum.shareit.item.dto.ItemSearchFacetRow;
+import ru.practicum.shareit.item.dto.ItemSearchHit;
+import ru.practicum.shareit.item.dto.ItemSearchTermCorrection;
+import ru.practicum.shareit.item.dto.ItemStatsRow;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemDocument;
 import ru.practicum.shareit.user.User;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface ItemRepository extends JpaRepository<Item, Long> {
 
+    /**
+     * Для каждого слова запроса ближайшее по триграммам слово из словаря item_search_terms.
+     * Кандидаты ищутся по GiST-индексу словаря (оператор <->), таблица items не читается.
+     * correction == word, если слово есть в словаре, и null, если похожих слов нет.
+     */
+    String FIND_TERM_CORRECTIONS = """
+            SELECT query.word AS word,
+                   (SELECT term.word
+                    FROM item_search_terms term
+                    WHERE term.word % query.word
+                    ORDER BY term.word <-> query.word, term.word
+                    LIMIT 1) AS correction
+            FROM unnest(string_to_array(:words, ' ')) WITH ORDINALITY AS query(word, position)
+            ORDER BY query.position
+            """;
+
     String FIND_BY_OWNER_ID = """
             SELECT item
             FROM Item item
@@ -20,38 +46,345 @@ public interface ItemRepository extends JpaRepository<Item, Long> {
             WHERE owner = :owner
             """;
 
+    String SEARCH_SOURCE = """
+            FROM items item
+            CROSS JOIN (
+                SELECT plainto_tsquery('russian', :text) || plainto_tsquery('english', :text) AS query
+            ) search
+            """;
+
+    /**
+     * Полнотекстовый поиск по названию и описанию вещи.
+     * Слова ищутся по GIN-индексу search_vector (русская и английская морфология),
+     * подстроки - по триграммным GIN-индексам name и description.
+     */
+    String TEXT_MATCH = """
+            (
+                item.search_vector @@ search.query
+                OR item.name ilike :pattern
+                OR item.description ilike :pattern
+            )
+            """;
+
+    String SEARCH_MATCH = SEARCH_SOURCE + "WHERE item.available = true AND " + TEXT_MATCH;
+
+    /**
+     * Фасеты поиска одним запросом: grouping = 1 - строки по владельцам (не больше :owners самых частых),
+     * 2 - по признаку "создана по запросу", 3 - итог. Доступность считается по всем совпавшим вещам,
+     * остальные срезы - по доступным, то есть по тем же вещам, что попадают в выдачу.
+     */
+    String SEARCH_FACETS_QUERY = """
+            SELECT facet.grouping as "grouping",
+                   facet.owner_id as "ownerId",
+                   facet.for_request as "forRequest",
+                   facet.available as "available",
+                   facet.unavailable as "unavailable"
+            FROM (
+                SELECT GROUPING(item.owner_id, item.request_id IS NOT NULL) as grouping,
+                       item.owner_id as owner_id,
+                       item.request_id IS NOT NULL as for_request,
+                       count(*) FILTER (WHERE item.available) as available,
+                       count(*) FILTER (WHERE NOT item.available) as unavailable,
+                       row_number() OVER (
+                           PARTITION BY GROUPING(item.owner_id, item.request_id IS NOT NULL)
+                           ORDER BY count(*) FILTER (WHERE item.available) DESC, item.owner_id
+                       ) as position
+            """ + SEARCH_SOURCE + "WHERE " + TEXT_MATCH + """
+                GROUP BY GROUPING SETS ((item.owner_id), (item.request_id IS NOT NULL), ())
+            ) facet
+            WHERE facet.grouping <> 1 OR (facet.position <= :owners AND facet.available > 0)
+            """;
+
     String SEARCH_QUERY = """
-            SELECT id as "id",
-                   owner_id as "owner_id",
-                   name as "name",
-                   description as "description",
-                   available as "available"
-            FROM items
-            WHERE available = true
-            AND (
-                name ilike %:substring%
-                OR description ilike %:substring%
-            );
+            SELECT item.id as "id",
+                   item.owner_id as "owner_id",
+                   item.name as "name",
+                   item.description as "description",
+                   item.available as "available",
+                   item.request_id as "request_id"
+            """ + SEARCH_MATCH + """
+            ORDER BY ts_rank(item.search_vector, search.query) + similarity(item.name, :text) DESC,
+                     item.id
+            LIMIT :size OFFSET :from
+            """;
+
+    /**
+     * Страница поиска после курсора (score, id): сортировка та же, что и в SEARCH_QUERY,
+     * но вместо OFFSET база продолжает с места, где закончилась предыдущая страница.
+     */
+    String SEARCH_AFTER_QUERY = """
+            SELECT hit.id as "id",
+                   hit.score as "score"
+            FROM (
+                SELECT item.id as id,
+                       ts_rank(item.search_vector, search.query) + similarity(item.name, :text) as score
+            """ + SEARCH_MATCH + """
+            ) hit
+            WHERE hit.score < CAST(:score AS real)
+            OR (hit.score = CAST(:score AS real) AND hit.id > :id)
+            ORDER BY hit.score DESC, hit.id
+            LIMIT :size
             """;
 
+    /**
+     * Поиск по вещам и отзывам о них одним ранжированием. Отзывы ищутся по GIN-индексу
+     * comments.search_vector, их релевантность складывается с релевантностью самой вещи
+     * с весом 0.5, так что вещь, найденная и по названию, и по отзывам, стоит выше.
+     */
+    String SEARCH_WITH_COMMENTS_QUERY = """
+            SELECT hit.id as "id",
+                   CAST(sum(hit.score) AS real) as "score"
+            FROM (
+                SELECT item.id as id,
+                       ts_rank(item.search_vector, search.query) + similarity(item.name, :text) as score
+            """ + SEARCH_MATCH + """
+                UNION ALL
+                SELECT comment.item_id as id,
+                       0.5 * sum(ts_rank(comment.search_vector, search.query)) as score
+                FROM comments comment
+                CROSS JOIN (
+                    SELECT plainto_tsquery('russian', :text) || plainto_tsquery('english', :text) AS query
+                ) search
+                WHERE comment.search_vector @@ search.query
+                GROUP BY comment.item_id
+            ) hit
+            JOIN items item ON item.id = hit.id
+            WHERE item.available = true
+            GROUP BY hit.id
+            ORDER BY sum(hit.score) DESC, hit.id
+            LIMIT :size OFFSET :from
+            """;
+
+    /**
+     * Совпавшие фрагменты отзывов для вещей страницы, не больше :perItem самых релевантных на вещь.
+     */
+    String FIND_COMMENT_SNIPPETS = """
+            SELECT snippet.item_id as "itemId",
+                   snippet.snippet as "snippet"
+            FROM (
+                SELECT comment.item_id as item_id,
+                       ts_headline('russian', comment.comment_text, search.query,
+                                   'MaxFragments=1, MinWords=5, MaxWords=20') as snippet,
+                       row_number() OVER (
+                           PARTITION BY comment.item_id
+                           ORDER BY ts_rank(comment.search_vector, search.query) DESC, comment.id
+                       ) as position
+                FROM comments comment
+                CROSS JOIN (
+                    SELECT plainto_tsquery('russian', :text) || plainto_tsquery('english', :text) AS query
+                ) search
+                WHERE comment.item_id IN (:itemIds)
+                AND comment.search_vector @@ search.query
+            ) snippet
+            WHERE snippet.position <= :perItem
+            ORDER BY snippet.item_id, snippet.position
+            """;
+
+    /**
+     * Даты последнего и ближайшего бронирования вещей. Для каждой вещи выполняются LATERAL-подзапросы
+     * с LIMIT 1 по индексам idx_bookings_item_start и idx_bookings_item_end: стоимость растет с числом вещей,
+     * а не с произведением числа прошлых и будущих бронирований, как у двух LEFT JOIN с GROUP BY.
+     * lastBooking - самое позднее начало среди завершившихся бронирований,
+     * nextBooking - самое раннее окончание среди еще не начавшихся,
+     * validUntil - ближайший момент, когда какое-то бронирование начнется или закончится и даты изменятся.
+     */
     String FIND_LAST_AND_NEXT_BOOK_DATE = """
-            SELECT item.id as id,
-                   max(pastBooking.start) as lastBooking,
-                   min(nextBooking.end) as nextBooking
-            FROM Item item
-            JOIN item.owner owner
-            LEFT JOIN Booking pastBooking ON pastBooking.item = item AND pastBooking.end < :now
-            LEFT JOIN Booking nextBooking ON nextBooking.item = item AND nextBooking.start > :now
-            WHERE owner = :owner
-            GROUP BY item.id""";
+            SELECT item.id as "id",
+                   last_booking.book_start as "lastBooking",
+                   next_booking.book_end as "nextBooking",
+                   least(next_start.book_start, next_end.book_end) as "validUntil"
+            FROM items item
+            LEFT JOIN LATERAL (
+                SELECT booking.book_start
+                FROM bookings booking
+                WHERE booking.item_id = item.id
+                AND booking.book_start < :now
+                AND booking.book_end < :now
+                ORDER BY booking.book_start DESC
+                LIMIT 1
+            ) last_booking ON true
+            LEFT JOIN LATERAL (
+                SELECT booking.book_end
+                FROM bookings booking
+                WHERE booking.item_id = item.id
+                AND booking.book_end > :now
+                AND booking.book_start > :now
+                ORDER BY booking.book_end
+                LIMIT 1
+            ) next_booking ON true
+            LEFT JOIN LATERAL (
+                SELECT booking.book_start
+                FROM bookings booking
+                WHERE booking.item_id = item.id
+                AND booking.book_start > :now
+                ORDER BY booking.book_start
+                LIMIT 1
+            ) next_start ON true
+            LEFT JOIN LATERAL (
+                SELECT booking.book_end
+                FROM bookings booking
+                WHERE booking.item_id = item.id
+                AND booking.book_end > :now
+                ORDER BY booking.book_end
+                LIMIT 1
+            ) next_end ON true
+            WHERE item.id IN (:itemIds)
+            """;
+
+    /**
+     * Записывает в items.last_booking/next_booking даты из FIND_LAST_AND_NEXT_BOOK_DATE.
+     * Строки вещей должны быть заблокированы заранее отдельным запросом (lockForBookingDates):
+     * тогда снимок этого запроса видит все бронирования, закоммиченные до получения блокировки.
+     * Прошедшие бронирования со временем уходят в архив, поэтому сохраненная дата последнего
+     * не сбрасывается, когда в таблице их не осталось.
+     */
+    String REFRESH_BOOKING_DATES = """
+            UPDATE items item
+            SET last_booking = COALESCE(dates."lastBooking", item.last_booking),
+                next_booking = dates."nextBooking",
+                booking_dates_valid_until = dates."validUntil"
+            FROM (
+            """ + FIND_LAST_AND_NEXT_BOOK_DATE + """
+            ) dates
+            WHERE item.id = dates."id"
+            """;
 
     @Query(value = FIND_BY_OWNER_ID)
     List<Item> findAllByOwnerWithComments(@Param("owner") User owner);
 
+    @Query(value = SEARCH_FACETS_QUERY, nativeQuery = true)
+    List<ItemSearchFacetRow> searchFacets(@Param("text") String text,
+                                          @Param("pattern") String pattern,
+                                          @Param("owners") int owners);
+
+    @Query(value = SEARCH_WITH_COMMENTS_QUERY, nativeQuery = true)
+    List<ItemSearchHit> searchWithComments(@Param("text") String text,
+                                           @Param("pattern") String pattern,
+                                           @Param("from") int from,
+                                           @Param("size") int size);
+
+    @Query(value = FIND_COMMENT_SNIPPETS, nativeQuery = true)
+    List<ItemCommentSnippet> findCommentSnippets(@Param("text") String text,
+                                                 @Param("itemIds") Collection<Long> itemIds,
+                                                 @Param("perItem") int perItem);
+
+    @Query(value = FIND_TERM_CORRECTIONS, nativeQuery = true)
+    List<ItemSearchTermCorrection> findTermCorrections(@Param("words") String words);
+
+    @Modifying
+    @Query(value = "REFRESH MATERIALIZED VIEW CONCURRENTLY item_search_terms", nativeQuery = true)
+    void refreshSearchTerms();
+
+    /**
+     * Те из запросов queries, которые нашли бы текст text полнотекстовым поиском: лексемы считаются
+     * так же, как в search_vector и SEARCH_SOURCE. Используется для инвалидации кэша выдачи.
+     */
+    @Query(value = """
+            SELECT query.text
+            FROM unnest(CAST(:queries AS TEXT[])) AS query(text)
+            WHERE (to_tsvector('russian', :text) || to_tsvector('english', :text))
+                  @@ (plainto_tsquery('russian', query.text) || plainto_tsquery('english', query.text))
+            """, nativeQuery = true)
+    List<String> findQueriesMatching(@Param("queries") String[] queries, @Param("text") String text);
+
     @Query(value = SEARCH_QUERY, nativeQuery = true)
-    List<Item> search(@Param("substring") String substring);
+    List<Item> search(@Param("text") String text, @Param("pattern") String pattern,
+                      @Param("from") int from, @Param("size") int size);
+
+    @Query(value = SEARCH_AFTER_QUERY, nativeQuery = true)
+    List<ItemSearchHit> searchAfter(@Param("text") String text, @Param("pattern") String pattern,
+                                    @Param("score") float score, @Param("id") long id,
+                                    @Param("size") int size);
+
+    @Query("""
+            SELECT new ru.practicum.shareit.item.model.ItemDocument(
+                item.id, owner.id, item.name, item.description, item.available, request.id)
+            FROM Item item
+            JOIN item.owner owner
+            LEFT JOIN item.request request
+            WHERE item.id >= :fromId AND item.id < :toId""")
+    List<ItemDocument> findDocumentsByIdRange(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    @Query("""
+            SELECT new ru.practicum.shareit.item.model.ItemDocument(
+                item.id, owner.id, item.name, item.description, item.available, request.id)
+            FROM Item item
+            JOIN item.owner owner
+            LEFT JOIN item.request request
+            WHERE owner.id = :ownerId""")
+    List<ItemDocument> findDocumentsByOwnerId(@Param("ownerId") long ownerId);
+
+    @Query("SELECT coalesce(max(item.id), 0) FROM Item item")
+    long findMaxId();
+
+    @Query("""
+            SELECT item.name AS name, count(item) AS count
+            FROM Item item
+            WHERE item.available = true
+            GROUP BY item.name""")
+    List<ItemNameCount> countAvailableByName();
+
+    @Query("""
+            SELECT item.name AS name, count(item) AS count
+            FROM Item item
+            WHERE item.available = true AND item.name IN :names
+            GROUP BY item.name""")
+    List<ItemNameCount> countAvailableByName(@Param("names") Collection<String> names);
 
-    @Query(value = FIND_LAST_AND_NEXT_BOOK_DATE)
-    List<ItemLastNextBookDate> getLastAndNextBookingDate(@Param("owner") User owner,
+    @Query(value = FIND_LAST_AND_NEXT_BOOK_DATE, nativeQuery = true)
+    List<ItemLastNextBookDate> getLastAndNextBookingDate(@Param("itemIds") Collection<Long> itemIds,
                                                          @Param("now") LocalDateTime now);
-}
\ No newline at end of file
+
+    @Query(value = """
+            SELECT item.id AS "id",
+                   item.last_booking AS "lastBooking",
+                   item.next_booking AS "nextBooking",
+                   item.booking_dates_valid_until AS "validUntil"
+            FROM items item
+            WHERE item.id IN (:itemIds)""", nativeQuery = true)
+    List<ItemLastNextBookDate> findStoredBookingDates(@Param("itemIds") Collection<Long> itemIds);
+
+    @Query(value = """
+            SELECT item.id
+            FROM items item
+            WHERE item.id IN (:itemIds)
+            ORDER BY item.id
+            FOR NO KEY UPDATE""", nativeQuery = true)
+    List<Long> lockForBookingDates(@Param("itemIds") Collection<Long> itemIds);
+
+    /**
+     * Вещи, чьи даты бронирований устарели к моменту now. Строки, которые сейчас держат
+     * другие транзакции (например, создание бронирования), пропускаются: их даты пересчитают они сами.
+     */
+    @Query(value = """
+            SELECT item.id
+            FROM items item
+            WHERE item.booking_dates_valid_until <= :now
+            ORDER BY item.booking_dates_valid_until
+            LIMIT :limit
+            FOR NO KEY UPDATE SKIP LOCKED""", nativeQuery = true)
+    List<Long> lockExpiredBookingDates(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = REFRESH_BOOKING_DATES, nativeQuery = true)
+    int refreshBookingDates(@Param("itemIds") Collection<Long> itemIds, @Param("now") LocalDateTime now);
+
+    /**
+     * Суммы суточных сводок вещей владельца за дни с from по to включительно. Вещи без сводок - с нулями.
+     */
+    @Query(value = """
+            SELECT item.id AS "itemId", item.name AS "itemName",
+                   CAST(COALESCE(sum(stats.requests), 0) AS BIGINT) AS "requests",
+                   CAST(COALESCE(sum(stats.lead_seconds), 0) AS BIGINT) AS "leadSeconds",
+                   CAST(COALESCE(sum(stats.approved), 0) AS BIGINT) AS "approved",
+                   CAST(COALESCE(sum(stats.rejected), 0) AS BIGINT) AS "rejected",
+                   CAST(COALESCE(sum(stats.expired), 0) AS BIGINT) AS "expired",
+                   CAST(COALESCE(sum(stats.booked_seconds), 0) AS BIGINT) AS "bookedSeconds"
+            FROM items item
+            LEFT JOIN item_daily_stats stats ON stats.item_id = item.id AND stats.day BETWEEN :from AND :to
+            WHERE item.owner_id = :ownerId
+            GROUP BY item.id, item.name
+            ORDER BY item.id""", nativeQuery = true)
+    List<ItemStatsRow> findStats(@Param("ownerId") Long ownerId,
+                                 @Param("from") LocalDate from, @Param("to") LocalDate to);
+}
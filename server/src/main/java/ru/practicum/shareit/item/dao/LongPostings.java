@@ -0,0 +1,118 @@
+package ru.practicum.shareit.item.dao;
+
+import java.util.Arrays;
+
+/**
+ * Отсортированный список id без повторов поверх примитивного массива long.
+ * Используется как список вхождений терма в индексе: без упаковки в Long
+ * и с бинарным поиском при вставке и удалении.
+ */
+final class LongPostings {
+    private static final long[] EMPTY = new long[0];
+
+    private long[] ids;
+    private int size;
+
+    LongPostings() {
+        this.ids = EMPTY;
+    }
+
+    private LongPostings(long[] ids, int size) {
+        this.ids = ids;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long get(int index) {
+        return ids[index];
+    }
+
+    boolean contains(long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    void add(long id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        ids[position] = id;
+        size++;
+    }
+
+    void remove(long id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if (position < 0) {
+            return;
+        }
+        System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+        size--;
+    }
+
+    /**
+     * Отдает лишнюю емкость массива после массовой загрузки.
+     */
+    void trim() {
+        if (ids.length != size) {
+            ids = size == 0 ? EMPTY : Arrays.copyOf(ids, size);
+        }
+    }
+
+    long[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    static LongPostings union(Iterable<LongPostings> postings) {
+        int total = 0;
+        for (LongPostings p : postings) {
+            total += p.size;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (LongPostings p : postings) {
+            System.arraycopy(p.ids, 0, merged, offset, p.size);
+            offset += p.size;
+        }
+        Arrays.sort(merged);
+        int unique = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (unique == 0 || merged[unique - 1] != merged[i]) {
+                merged[unique++] = merged[i];
+            }
+        }
+        return new LongPostings(merged, unique);
+    }
+
+    static LongPostings intersect(LongPostings left, LongPostings right) {
+        long[] result = new long[Math.min(left.size, right.size)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.size && j < right.size) {
+            long l = left.ids[i];
+            long r = right.ids[j];
+            if (l == r) {
+                result[count++] = l;
+                i++;
+                j++;
+            } else if (l < r) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return new LongPostings(result, count);
+    }
+}
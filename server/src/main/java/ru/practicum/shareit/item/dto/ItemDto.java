@@ -1,5 +1,6 @@
 package ru.practicum.shareit.item.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -22,4 +23,6 @@ public class ItemDto {
     private List<CommentDto> comments;
     private LocalDateTime lastBooking;
     private LocalDateTime nextBooking;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> commentSnippets;
 }
@@ -9,4 +9,6 @@ public interface ItemLastNextBookDate {
     LocalDateTime getLastBooking();
 
     LocalDateTime getNextBooking();
+
+    LocalDateTime getValidUntil();
 }
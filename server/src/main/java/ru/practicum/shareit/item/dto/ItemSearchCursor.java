@@ -0,0 +1,43 @@
+package ru.practicum.shareit.item.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.shareit.exception.BadRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Позиция последней выданной вещи в выдаче поиска: ее релевантность и id.
+ * Клиент получает курсор в непрозрачном виде и передает его обратно за следующей страницей.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ItemSearchCursor {
+
+    public static final ItemSearchCursor FIRST = new ItemSearchCursor(Float.POSITIVE_INFINITY, 0L);
+
+    private static final String SEPARATOR = ":";
+
+    private final float score;
+
+    private final long id;
+
+    public String encode() {
+        String value = score + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ItemSearchCursor decode(String cursor) throws BadRequest {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf(SEPARATOR);
+            return new ItemSearchCursor(Float.parseFloat(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new BadRequest("Некорректный курсор поиска: %s", cursor);
+        }
+    }
+}
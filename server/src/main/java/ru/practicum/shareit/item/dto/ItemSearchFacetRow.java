@@ -0,0 +1,13 @@
+package ru.practicum.shareit.item.dto;
+
+public interface ItemSearchFacetRow {
+    Integer getGrouping();
+
+    Long getOwnerId();
+
+    Boolean getForRequest();
+
+    Long getAvailable();
+
+    Long getUnavailable();
+}
@@ -0,0 +1,20 @@
+package ru.practicum.shareit.item.dto;
+
+import lombok.*;
+
+import java.util.Map;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemSearchFacetsDto {
+    private long total;
+    private long available;
+    private long unavailable;
+    private long forRequest;
+    private long notForRequest;
+    private Map<Long, Long> owners;
+}
@@ -0,0 +1,18 @@
+package ru.practicum.shareit.item.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemSearchPageDto {
+    private List<ItemDto> items;
+    private String nextCursor;
+    private String suggestion;
+    private ItemSearchFacetsDto facets;
+}
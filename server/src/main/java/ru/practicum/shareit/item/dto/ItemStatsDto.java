@@ -0,0 +1,22 @@
+package ru.practicum.shareit.item.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemStatsDto {
+    private Long itemId;
+    private String itemName;
+    private long requests;
+    private long approved;
+    private long rejected;
+    private long expired;
+    private Double approvalRate;
+    private Double averageLeadTimeHours;
+    private double bookedHours;
+    private double bookedHoursPerWeek;
+}
@@ -0,0 +1,19 @@
+package ru.practicum.shareit.item.dto;
+
+public interface ItemStatsRow {
+    Long getItemId();
+
+    String getItemName();
+
+    Long getRequests();
+
+    Long getLeadSeconds();
+
+    Long getApproved();
+
+    Long getRejected();
+
+    Long getExpired();
+
+    Long getBookedSeconds();
+}
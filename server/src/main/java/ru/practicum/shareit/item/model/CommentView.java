@@ -0,0 +1,21 @@
+package ru.practicum.shareit.item.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * Отзыв в том виде, в котором он попадает в ответ: имя автора вместо самого автора, без связи с вещью.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class CommentView {
+    private final Long itemId;
+    private final Long id;
+    private final String text;
+    private final String authorName;
+    private final Instant created;
+}
@@ -2,6 +2,7 @@ package ru.practicum.shareit.item.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 import ru.practicum.shareit.request.model.ItemRequest;
 import ru.practicum.shareit.user.User;
 
@@ -26,8 +27,9 @@ public class Item {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;  // для совместимости с большими значениями, генерируемыми SERIAL
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id")
+    @ToString.Exclude
     private User owner;
 
     private String name;
@@ -36,17 +38,28 @@ public class Item {
 
     private boolean available;
 
+    // отзывы нескольких вещей (например, из страницы бронирований) догружаются одним запросом
     @OneToMany(mappedBy = "item")
+    @BatchSize(size = 100)
     private List<Comment> comments = new ArrayList<>();
 
-    @Transient
+    // даты бронирований пересчитываются SQL-запросом при изменении бронирований и по расписанию,
+    // поэтому Hibernate их только читает
+    @Column(name = "last_booking", insertable = false, updatable = false)
     private LocalDateTime lastBooking;
 
-    @Transient
+    @Column(name = "next_booking", insertable = false, updatable = false)
     private LocalDateTime nextBooking;
 
-    @ManyToOne
+    @Column(name = "booking_dates_valid_until", insertable = false, updatable = false)
+    private LocalDateTime bookingDatesValidUntil;
+
+    @Transient
+    private List<String> commentSnippets;  // фрагменты отзывов, совпавшие с поисковым запросом
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "request_id")
+    @ToString.Exclude
     private ItemRequest request;
     // если вещь была создана по запросу другого пользователя,
     // то в этом поле будет храниться ссылка на соответствующий запрос
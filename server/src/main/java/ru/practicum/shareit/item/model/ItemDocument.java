@@ -0,0 +1,37 @@
+package ru.practicum.shareit.item.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.shareit.request.model.ItemRequest;
+import ru.practicum.shareit.user.User;
+
+/**
+ * Неизменяемый снимок полей вещи, нужных поисковым индексам.
+ * Не привязан к сессии Hibernate, поэтому его можно хранить в памяти и передавать между потоками.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ItemDocument {
+    private final Long id;
+    private final Long ownerId;
+    private final String name;
+    private final String description;
+    private final boolean available;
+    private final Long requestId;
+
+    public static ItemDocument from(Item item) {
+        Long ownerId = item.getOwner() == null ? null : item.getOwner().getId();
+        Long requestId = item.getRequest() == null ? null : item.getRequest().getId();
+        return new ItemDocument(item.getId(), ownerId, item.getName(), item.getDescription(),
+                item.isAvailable(), requestId);
+    }
+
+    public Item toItem() {
+        User owner = new User();
+        owner.setId(ownerId);
+        ItemRequest request = requestId == null ? null : new ItemRequest(requestId);
+        return new Item(id, owner, name, description, available, null, request);
+    }
+}
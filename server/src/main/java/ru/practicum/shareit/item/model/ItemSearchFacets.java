@@ -0,0 +1,26 @@
+package ru.practicum.shareit.item.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+
+/**
+ * Счетчики по всем вещам, совпавшим с поисковым запросом, а не только по текущей странице.
+ * total - сколько всего вещей в выдаче, то есть сколько доступных совпало с запросом.
+ * owners - число вещей в выдаче у самых частых владельцев, по убыванию.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ItemSearchFacets {
+    public static final ItemSearchFacets EMPTY = new ItemSearchFacets(0, 0, 0, 0, 0, Map.of());
+
+    private final long total;
+    private final long available;
+    private final long unavailable;
+    private final long forRequest;
+    private final long notForRequest;
+    private final Map<Long, Long> owners;
+}
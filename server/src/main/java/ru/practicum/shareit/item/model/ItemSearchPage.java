@@ -0,0 +1,27 @@
+package ru.practicum.shareit.item.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Страница выдачи поиска. nextCursor == null, если страница последняя.
+ * suggestion != null, если по запросу ничего не нашлось и выдача построена по исправленному запросу:
+ * следующие страницы тогда нужно запрашивать с текстом suggestion.
+ * facets == null, если фасеты не запрашивались.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ItemSearchPage {
+    private final List<Item> items;
+    private final String nextCursor;
+    private final String suggestion;
+    private final ItemSearchFacets facets;
+
+    public ItemSearchPage(List<Item> items, String nextCursor) {
+        this(items, nextCursor, null, null);
+    }
+}
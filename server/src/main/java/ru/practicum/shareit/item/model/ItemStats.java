@@ -0,0 +1,26 @@
+package ru.practicum.shareit.item.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Статистика вещи за период по суточным сводкам item_daily_stats.
+ * approvalRate - доля подтвержденных среди рассмотренных и истекших, null если решений не было.
+ * averageLeadTimeHours - среднее время от создания бронирования до его начала, null если бронирований не было.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ItemStats {
+    private final Long itemId;
+    private final String itemName;
+    private final long requests;
+    private final long approved;
+    private final long rejected;
+    private final long expired;
+    private final Double approvalRate;
+    private final Double averageLeadTimeHours;
+    private final double bookedHours;
+    private final double bookedHoursPerWeek;
+}
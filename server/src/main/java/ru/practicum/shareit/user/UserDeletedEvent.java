@@ -0,0 +1,16 @@
+package ru.practicum.shareit.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Публикуется UserService до удаления пользователя, в той же транзакции. Вещи пользователя база удаляет
+ * каскадно, так что слушатели успевают прочитать их, пока они еще есть.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class UserDeletedEvent {
+    private final Long userId;
+}
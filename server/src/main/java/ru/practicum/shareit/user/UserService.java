@@ -3,6 +3,7 @@ package ru.practicum.shareit.user;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
@@ -12,6 +13,8 @@ import ru.practicum.shareit.user.dao.UserRepository;
 import ru.practicum.shareit.user.dto.CreateUserRequest;
 import ru.practicum.shareit.user.dto.UpdateUserRequest;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -22,6 +25,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class UserService {
     private final UserRepository repo;
     private final UserMapper userMapper;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public User createUser(@Valid CreateUserRequest request) throws ConflictException {
@@ -45,6 +49,10 @@ public class UserService {
                 .orElseThrow(() -> new NotFoundException("Не найден пользователь с userId = %d", userId));
     }
 
+    public List<User> getByIds(Collection<Long> userIds) {
+        return repo.findAllById(userIds);
+    }
+
     @Transactional
     public User updateUser(Long userId, UpdateUserRequest request) throws ConflictException, NotFoundException {
         log.info("Updating user with id = {} with {}", userId, request);
@@ -69,6 +77,7 @@ public class UserService {
 
     @Transactional
     public void deleteUser(Long userId) {
+        eventPublisher.publishEvent(new UserDeletedEvent(userId));
         repo.deleteById(userId);
     }
 
@@ -0,0 +1,14 @@
+-- Реестр сегментов архива для существующей базы (schema.sql создает его сразу у новой базы).
+--     psql -h localhost -p 6541 -U shareit -d shareit -f server/src/main/resources/migration/booking_archive_segments.sql
+-- BookingArchive читает только зарегистрированные сегменты, поэтому уже записанные сегменты этой базы
+-- нужно зарегистрировать до запуска сервера, например:
+--     ls booking-archive/*.seg | xargs -n1 basename -s .seg \
+--         | psql -h localhost -p 6541 -U shareit -d shareit -c "\copy booking_archive_segments (name) FROM STDIN"
+
+CREATE TABLE IF NOT EXISTS booking_archive_segments (
+    name VARCHAR(64) PRIMARY KEY,
+    created TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT now()
+);
+COMMENT ON TABLE booking_archive_segments IS 'Сегменты каталога архива бронирований, перенесенные из этой базы';
+COMMENT ON COLUMN booking_archive_segments.name IS 'Имя файла сегмента без расширения';
+COMMENT ON COLUMN booking_archive_segments.created IS 'Время регистрации сегмента';
@@ -0,0 +1,31 @@
+-- Функция для существующей базы, которой пользуется BookingService.archiveEndedBookings
+-- (schema.sql создает ее сразу у новой базы).
+--     psql -h localhost -p 6541 -U shareit -d shareit -f server/src/main/resources/migration/bookings_archive.sql
+
+-- Удаляет пустые месячные разделы bookings, целиком лежащие раньше before: их строки перенесены в архив.
+-- Возвращает число удаленных разделов.
+CREATE OR REPLACE FUNCTION drop_empty_bookings_partitions(before TIMESTAMP) RETURNS INT AS '
+DECLARE
+    partition_name TEXT;
+    is_empty BOOLEAN;
+    dropped INT := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext(''create_bookings_partitions''));
+    FOR partition_name IN
+        SELECT child.relname
+        FROM pg_inherits
+        JOIN pg_class parent ON parent.oid = pg_inherits.inhparent
+        JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+        WHERE parent.relname = ''bookings''
+        AND child.relname ~ ''^bookings_[0-9]{4}_[0-9]{2}$''
+        ORDER BY child.relname
+    LOOP
+        CONTINUE WHEN to_date(substr(partition_name, 10), ''YYYY_MM'') + INTERVAL ''1 month'' > before;
+        EXECUTE format(''SELECT NOT EXISTS (SELECT 1 FROM %I)'', partition_name) INTO is_empty;
+        CONTINUE WHEN NOT is_empty;
+        EXECUTE format(''DROP TABLE %I'', partition_name);
+        dropped := dropped + 1;
+    END LOOP;
+    RETURN dropped;
+END;
+' LANGUAGE plpgsql;
@@ -0,0 +1,52 @@
+-- Перенос существующей базы на bookings.owner_id (schema.sql создает колонку сразу у новой базы).
+-- Запуск вне транзакции, чтобы заполнение шло порциями и не держало блокировку на всей таблице:
+--     psql -h localhost -p 6541 -U shareit -d shareit -f server/src/main/resources/migration/bookings_owner_id.sql
+
+ALTER TABLE bookings ADD COLUMN IF NOT EXISTS owner_id BIGINT;
+COMMENT ON COLUMN bookings.owner_id IS 'Идентификатор владельца вещи: копия items.owner_id, чтобы выборки владельца обходились без соединения с items';
+
+-- триггер до заполнения: если владелец вещи сменится во время переноса, ее бронирования все равно получат нового
+CREATE OR REPLACE FUNCTION sync_bookings_owner_id() RETURNS TRIGGER AS '
+BEGIN
+    UPDATE bookings SET owner_id = NEW.owner_id WHERE item_id = NEW.id;
+    RETURN NEW;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER trg_items_owner_id
+    AFTER UPDATE OF owner_id ON items
+    FOR EACH ROW
+    WHEN (OLD.owner_id IS DISTINCT FROM NEW.owner_id)
+    EXECUTE FUNCTION sync_bookings_owner_id();
+
+-- заполнение порциями по 10 000 строк, каждая в своей транзакции
+DO '
+DECLARE
+    updated INT;
+BEGIN
+    LOOP
+        UPDATE bookings booking
+        SET owner_id = item.owner_id
+        FROM items item
+        WHERE booking.item_id = item.id
+        AND booking.id IN (SELECT id FROM bookings WHERE owner_id IS NULL LIMIT 10000);
+        GET DIAGNOSTICS updated = ROW_COUNT;
+        COMMIT;
+        EXIT WHEN updated = 0;
+    END LOOP;
+END;
+';
+
+-- NOT NULL проверяется через валидацию ограничения, которая не блокирует запись в таблицу
+ALTER TABLE bookings ADD CONSTRAINT chk_bookings_owner_id_not_null CHECK (owner_id IS NOT NULL) NOT VALID;
+ALTER TABLE bookings VALIDATE CONSTRAINT chk_bookings_owner_id_not_null;
+ALTER TABLE bookings ALTER COLUMN owner_id SET NOT NULL;
+ALTER TABLE bookings DROP CONSTRAINT chk_bookings_owner_id_not_null;
+
+ALTER TABLE bookings ADD CONSTRAINT fk_bookings_owner_id
+    FOREIGN KEY (owner_id) REFERENCES users (id) ON DELETE CASCADE NOT VALID;
+ALTER TABLE bookings VALIDATE CONSTRAINT fk_bookings_owner_id;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_bookings_owner_start ON bookings (owner_id, book_start, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_bookings_owner_status_start
+    ON bookings (owner_id, book_status, book_start, id);
@@ -0,0 +1,170 @@
+-- Перенос существующей базы на секционированную таблицу bookings (schema.sql создает ее такой сразу у новой базы).
+-- Таблица пересоздается с копированием строк в одной транзакции: чтение во время переноса идет как обычно,
+-- запись в bookings ждет его окончания.
+--     psql -h localhost -p 6541 -U shareit -d shareit -f server/src/main/resources/migration/bookings_partitioning.sql
+
+BEGIN;
+
+LOCK TABLE bookings IN EXCLUSIVE MODE;
+
+DROP INDEX IF EXISTS idx_bookings_item_start;
+DROP INDEX IF EXISTS idx_bookings_item_end;
+DROP INDEX IF EXISTS idx_bookings_booker_start;
+DROP INDEX IF EXISTS idx_bookings_owner_start;
+DROP INDEX IF EXISTS idx_bookings_owner_status_start;
+ALTER TABLE bookings RENAME TO bookings_unpartitioned;
+
+CREATE TABLE bookings (
+    id BIGINT NOT NULL DEFAULT nextval('bookings_id_seq'),
+    book_start TIMESTAMP NOT NULL,
+    book_end TIMESTAMP NOT NULL,
+    item_id BIGINT NOT NULL,
+    booker_id BIGINT NOT NULL,
+    owner_id BIGINT NOT NULL,
+    book_status VARCHAR NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0,
+
+    CONSTRAINT pk_bookings PRIMARY KEY (id, book_start),
+
+    CONSTRAINT fk_bookings_item_id
+        FOREIGN KEY(item_id)
+            REFERENCES items(id)
+                ON DELETE CASCADE,
+
+    CONSTRAINT fk_bookings_booker_id
+        FOREIGN KEY(booker_id)
+            REFERENCES users(id)
+                ON DELETE CASCADE,
+
+    CONSTRAINT fk_bookings_owner_id
+        FOREIGN KEY(owner_id)
+            REFERENCES users(id)
+                ON DELETE CASCADE
+) PARTITION BY RANGE (book_start);
+COMMENT ON TABLE bookings IS 'Таблица бронирования, секционированная по месяцам начала бронирования';
+COMMENT ON COLUMN bookings.id IS 'Идентификатор бронирования';
+COMMENT ON COLUMN bookings.book_start IS 'Начало бронирования';
+COMMENT ON COLUMN bookings.book_end IS 'Окончание бронирования';
+COMMENT ON COLUMN bookings.item_id IS 'Идентификатор вещи, которую бронируют';
+COMMENT ON COLUMN bookings.booker_id IS 'Идентификатор пользователя, который бронирует';
+COMMENT ON COLUMN bookings.owner_id IS 'Идентификатор владельца вещи: копия items.owner_id, чтобы выборки владельца обходились без соединения с items';
+COMMENT ON COLUMN bookings.book_status IS 'Статус бронирования';
+COMMENT ON COLUMN bookings.version IS 'Версия строки для оптимистической блокировки';
+
+CREATE TABLE bookings_default PARTITION OF bookings DEFAULT;
+
+CREATE INDEX idx_bookings_item_start ON bookings (item_id, book_start DESC) INCLUDE (book_end);
+CREATE INDEX idx_bookings_item_end ON bookings (item_id, book_end) INCLUDE (book_start);
+CREATE INDEX idx_bookings_booker_start ON bookings (booker_id, book_start, id);
+CREATE INDEX idx_bookings_owner_start ON bookings (owner_id, book_start, id);
+CREATE INDEX idx_bookings_owner_status_start ON bookings (owner_id, book_status, book_start, id);
+
+CREATE OR REPLACE FUNCTION create_bookings_partitions(first_month DATE, months INT) RETURNS INT AS '
+DECLARE
+    month_start TIMESTAMP;
+    month_end TIMESTAMP;
+    partition_name TEXT;
+    moved bookings_default[];
+    created INT := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext(''create_bookings_partitions''));
+    FOR i IN 0 .. months - 1 LOOP
+        month_start := date_trunc(''month'', first_month) + make_interval(months => i);
+        month_end := month_start + INTERVAL ''1 month'';
+        partition_name := ''bookings_'' || to_char(month_start, ''YYYY_MM'');
+        CONTINUE WHEN to_regclass(partition_name) IS NOT NULL;
+        -- Строки нового месяца убираются из раздела по умолчанию до создания раздела: проверка раздела
+        -- по умолчанию при CREATE их уже не видит, и отсоединять его не нужно.
+        WITH deleted AS (
+            DELETE FROM bookings_default
+            WHERE book_start >= month_start AND book_start < month_end
+            RETURNING bookings_default AS booking
+        )
+        SELECT array_agg(booking) INTO moved FROM deleted;
+        EXECUTE format(''CREATE TABLE %I PARTITION OF bookings FOR VALUES FROM (%L) TO (%L)'',
+                       partition_name, month_start, month_end);
+        IF moved IS NOT NULL THEN
+            INSERT INTO bookings (id, book_start, book_end, item_id, booker_id, owner_id, book_status, version)
+            SELECT id, book_start, book_end, item_id, booker_id, owner_id, book_status, version
+            FROM unnest(moved);
+        END IF;
+        created := created + 1;
+    END LOOP;
+    RETURN created;
+END;
+' LANGUAGE plpgsql;
+
+-- разделы от месяца самого раннего бронирования до года вперед
+DO '
+DECLARE
+    first_month DATE := date_trunc(''month'', COALESCE((SELECT min(book_start) FROM bookings_unpartitioned), now()));
+    months_before INT := CAST(extract(year FROM age(date_trunc(''month'', now()), first_month)) * 12
+                              + extract(month FROM age(date_trunc(''month'', now()), first_month)) AS INT);
+BEGIN
+    PERFORM create_bookings_partitions(first_month, months_before + 13);
+END;
+';
+
+INSERT INTO bookings (id, book_start, book_end, item_id, booker_id, owner_id, book_status, version)
+SELECT id, book_start, book_end, item_id, booker_id, owner_id, book_status, version
+FROM bookings_unpartitioned;
+
+CREATE TABLE booking_periods (
+    booking_id BIGINT PRIMARY KEY,
+    item_id BIGINT NOT NULL,
+    period TSRANGE NOT NULL,
+
+    CONSTRAINT excl_booking_periods_item_period
+        EXCLUDE USING GIST (item_id WITH =, period WITH &&)
+);
+COMMENT ON TABLE booking_periods IS 'Интервалы ожидающих и подтвержденных бронирований: у вещи не может быть двух пересекающихся';
+COMMENT ON COLUMN booking_periods.booking_id IS 'Идентификатор бронирования';
+COMMENT ON COLUMN booking_periods.item_id IS 'Идентификатор вещи';
+COMMENT ON COLUMN booking_periods.period IS 'Интервал бронирования [начало, окончание)';
+
+-- закончившиеся бронирования с новыми пересечься не могут, их интервалы не переносятся
+INSERT INTO booking_periods (booking_id, item_id, period)
+SELECT id, item_id, tsrange(book_start, book_end, '[)')
+FROM bookings
+WHERE book_status IN ('WAITING', 'APPROVED')
+AND book_end >= now();
+
+CREATE OR REPLACE FUNCTION sync_booking_periods() RETURNS TRIGGER AS '
+BEGIN
+    IF TG_OP = ''UPDATE''
+        AND OLD.book_status IN (''WAITING'', ''APPROVED'') AND NEW.book_status IN (''WAITING'', ''APPROVED'')
+        AND OLD.book_start = NEW.book_start AND OLD.book_end = NEW.book_end AND OLD.item_id = NEW.item_id THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP <> ''INSERT'' THEN
+        DELETE FROM booking_periods WHERE booking_id = OLD.id;
+    END IF;
+    IF TG_OP <> ''DELETE'' AND NEW.book_status IN (''WAITING'', ''APPROVED'') THEN
+        INSERT INTO booking_periods (booking_id, item_id, period)
+        VALUES (NEW.id, NEW.item_id, tsrange(NEW.book_start, NEW.book_end, ''[)''))
+        ON CONFLICT (booking_id) DO NOTHING;
+    END IF;
+    RETURN NULL;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER trg_bookings_periods_insert_delete
+    AFTER INSERT OR DELETE ON bookings
+    FOR EACH ROW
+    EXECUTE FUNCTION sync_booking_periods();
+
+CREATE OR REPLACE TRIGGER trg_bookings_periods_update
+    AFTER UPDATE ON bookings
+    FOR EACH ROW
+    WHEN (OLD.book_status IS DISTINCT FROM NEW.book_status
+          OR OLD.book_start IS DISTINCT FROM NEW.book_start
+          OR OLD.book_end IS DISTINCT FROM NEW.book_end
+          OR OLD.item_id IS DISTINCT FROM NEW.item_id)
+    EXECUTE FUNCTION sync_booking_periods();
+
+ALTER SEQUENCE bookings_id_seq OWNED BY bookings.id;
+DROP TABLE bookings_unpartitioned;
+
+COMMIT;
+
+ANALYZE bookings;
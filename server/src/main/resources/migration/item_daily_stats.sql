@@ -0,0 +1,145 @@
+-- Суточные сводки item_daily_stats для существующей базы (schema.sql создает их сразу у новой базы).
+-- Триггеры создаются под блокировкой записи в bookings, так что ни одно изменение не проходит мимо них
+-- и не попадает в заполнение дважды. Из уже существующих бронирований восстанавливается только занятое время
+-- подтвержденных: когда они были созданы и рассмотрены, база не хранит.
+--     psql -h localhost -p 6541 -U shareit -d shareit -f server/src/main/resources/migration/item_daily_stats.sql
+
+BEGIN;
+
+LOCK TABLE bookings IN SHARE MODE;
+
+-- Создает месячные разделы bookings_ГГГГ_ММ на months месяцев начиная с месяца first_month, если их еще нет.
+-- Строки нового месяца, уже попавшие в раздел по умолчанию, переносятся в созданный раздел.
+-- Возвращает число созданных разделов.
+CREATE OR REPLACE FUNCTION create_bookings_partitions(first_month DATE, months INT) RETURNS INT AS '
+DECLARE
+    month_start TIMESTAMP;
+    month_end TIMESTAMP;
+    partition_name TEXT;
+    moved bookings_default[];
+    created INT := 0;
+BEGIN
+    -- разделы создает один экземпляр сервера за раз
+    PERFORM pg_advisory_xact_lock(hashtext(''create_bookings_partitions''));
+    FOR i IN 0 .. months - 1 LOOP
+        month_start := date_trunc(''month'', first_month) + make_interval(months => i);
+        month_end := month_start + INTERVAL ''1 month'';
+        partition_name := ''bookings_'' || to_char(month_start, ''YYYY_MM'');
+        CONTINUE WHEN to_regclass(partition_name) IS NOT NULL;
+        -- Строки нового месяца убираются из раздела по умолчанию до создания раздела: тогда проверка
+        -- раздела по умолчанию при CREATE их не находит, и отсоединять его не нужно. Перенесенные
+        -- строки - не новые бронирования, сводки item_daily_stats их не считают.
+        PERFORM set_config(''shareit.moving_bookings'', ''on'', true);
+        WITH deleted AS (
+            DELETE FROM bookings_default
+            WHERE book_start >= month_start AND book_start < month_end
+            RETURNING bookings_default AS booking
+        )
+        SELECT array_agg(booking) INTO moved FROM deleted;
+        EXECUTE format(''CREATE TABLE %I PARTITION OF bookings FOR VALUES FROM (%L) TO (%L)'',
+                       partition_name, month_start, month_end);
+        IF moved IS NOT NULL THEN
+            INSERT INTO bookings (id, book_start, book_end, item_id, booker_id, owner_id, book_status, version)
+            SELECT id, book_start, book_end, item_id, booker_id, owner_id, book_status, version
+            FROM unnest(moved);
+        END IF;
+        PERFORM set_config(''shareit.moving_bookings'', ''off'', true);
+        created := created + 1;
+    END LOOP;
+    RETURN created;
+END;
+' LANGUAGE plpgsql;
+
+-- Суточные сводки по вещам для статистики владельца (GET /items/stats). Их ведет триггер на bookings в той же
+-- транзакции, что и изменение бронирования, так что статистика за любой период - сумма строк по дням.
+-- Удаление бронирований, в том числе перенос в архив, сводок не меняет.
+CREATE TABLE IF NOT EXISTS item_daily_stats (
+    item_id BIGINT NOT NULL,
+    day DATE NOT NULL,
+    requests INT NOT NULL DEFAULT 0,
+    lead_seconds BIGINT NOT NULL DEFAULT 0,
+    approved INT NOT NULL DEFAULT 0,
+    rejected INT NOT NULL DEFAULT 0,
+    expired INT NOT NULL DEFAULT 0,
+    booked_seconds BIGINT NOT NULL DEFAULT 0,
+
+    CONSTRAINT pk_item_daily_stats PRIMARY KEY (item_id, day),
+
+    CONSTRAINT fk_item_daily_stats_item_id
+        FOREIGN KEY(item_id)
+            REFERENCES items(id)
+                ON DELETE CASCADE
+);
+COMMENT ON TABLE item_daily_stats IS 'Суточные сводки бронирований вещи';
+COMMENT ON COLUMN item_daily_stats.item_id IS 'Идентификатор вещи';
+COMMENT ON COLUMN item_daily_stats.day IS 'День';
+COMMENT ON COLUMN item_daily_stats.requests IS 'Сколько бронирований вещи создано в этот день';
+COMMENT ON COLUMN item_daily_stats.lead_seconds IS 'Сумма секунд от создания до начала у бронирований, созданных в этот день';
+COMMENT ON COLUMN item_daily_stats.approved IS 'Сколько бронирований подтверждено в этот день';
+COMMENT ON COLUMN item_daily_stats.rejected IS 'Сколько бронирований отклонено в этот день';
+COMMENT ON COLUMN item_daily_stats.expired IS 'Сколько бронирований истекло без решения в этот день';
+COMMENT ON COLUMN item_daily_stats.booked_seconds IS 'Сколько секунд этого дня вещь занята подтвержденными бронированиями';
+
+-- Новое бронирование считается запросом в день создания. Решение по ожидающему бронированию считается в день
+-- решения, а подтвержденное бронирование добавляет занятое время каждому дню, который оно покрывает.
+CREATE OR REPLACE FUNCTION update_item_daily_stats() RETURNS TRIGGER AS '
+BEGIN
+    IF TG_OP = ''INSERT'' THEN
+        IF current_setting(''shareit.moving_bookings'', true) = ''on'' THEN
+            RETURN NULL;
+        END IF;
+        INSERT INTO item_daily_stats (item_id, day, requests, lead_seconds)
+        VALUES (NEW.item_id, CAST(LOCALTIMESTAMP AS DATE), 1,
+                GREATEST(CAST(extract(epoch FROM NEW.book_start - LOCALTIMESTAMP) AS BIGINT), 0))
+        ON CONFLICT (item_id, day) DO UPDATE
+        SET requests = item_daily_stats.requests + 1,
+            lead_seconds = item_daily_stats.lead_seconds + EXCLUDED.lead_seconds;
+        RETURN NULL;
+    END IF;
+    INSERT INTO item_daily_stats (item_id, day, approved, rejected, expired)
+    VALUES (NEW.item_id, CAST(LOCALTIMESTAMP AS DATE),
+            CAST(NEW.book_status = ''APPROVED'' AS INT),
+            CAST(NEW.book_status = ''REJECTED'' AS INT),
+            CAST(NEW.book_status = ''EXPIRED'' AS INT))
+    ON CONFLICT (item_id, day) DO UPDATE
+    SET approved = item_daily_stats.approved + EXCLUDED.approved,
+        rejected = item_daily_stats.rejected + EXCLUDED.rejected,
+        expired = item_daily_stats.expired + EXCLUDED.expired;
+    IF NEW.book_status = ''APPROVED'' THEN
+        INSERT INTO item_daily_stats (item_id, day, booked_seconds)
+        SELECT NEW.item_id, CAST(day AS DATE),
+               CAST(extract(epoch FROM LEAST(NEW.book_end, day + INTERVAL ''1 day'') - GREATEST(NEW.book_start, day))
+                    AS BIGINT)
+        FROM generate_series(date_trunc(''day'', NEW.book_start), NEW.book_end - INTERVAL ''1 microsecond'',
+                             INTERVAL ''1 day'') AS day
+        ON CONFLICT (item_id, day) DO UPDATE
+        SET booked_seconds = item_daily_stats.booked_seconds + EXCLUDED.booked_seconds;
+    END IF;
+    RETURN NULL;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER trg_bookings_stats_insert
+    AFTER INSERT ON bookings
+    FOR EACH ROW
+    EXECUTE FUNCTION update_item_daily_stats();
+
+CREATE OR REPLACE TRIGGER trg_bookings_stats_update
+    AFTER UPDATE ON bookings
+    FOR EACH ROW
+    WHEN (OLD.book_status = 'WAITING' AND NEW.book_status <> 'WAITING')
+    EXECUTE FUNCTION update_item_daily_stats();
+
+INSERT INTO item_daily_stats (item_id, day, booked_seconds)
+SELECT booking.item_id, CAST(day AS DATE),
+       sum(CAST(extract(epoch FROM LEAST(booking.book_end, day + INTERVAL '1 day') - GREATEST(booking.book_start, day))
+                AS BIGINT))
+FROM bookings booking
+CROSS JOIN LATERAL generate_series(date_trunc('day', booking.book_start),
+                                   booking.book_end - INTERVAL '1 microsecond', INTERVAL '1 day') AS day
+WHERE booking.book_status = 'APPROVED'
+GROUP BY booking.item_id, CAST(day AS DATE)
+ON CONFLICT (item_id, day) DO UPDATE
+SET booked_seconds = item_daily_stats.booked_seconds + EXCLUDED.booked_seconds;
+
+COMMIT;
@@ -1,9 +1,15 @@
 DROP TABLE IF EXISTS users CASCADE;
 DROP TABLE IF EXISTS items CASCADE;
 DROP TABLE IF EXISTS bookings CASCADE;
+DROP TABLE IF EXISTS booking_periods CASCADE;
+DROP TABLE IF EXISTS booking_archive_segments CASCADE;
+DROP TABLE IF EXISTS item_daily_stats CASCADE;
 DROP TABLE IF EXISTS comments CASCADE;
 DROP TABLE IF EXISTS requests CASCADE;
 
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
 CREATE TABLE IF NOT EXISTS users (
     id BIGSERIAL PRIMARY KEY,
     name VARCHAR NOT NULL,
@@ -39,7 +45,16 @@ CREATE TABLE IF NOT EXISTS items (
     name VARCHAR NOT NULL,
     description VARCHAR NOT NULL,
     available BOOLEAN NOT NULL,
+    last_booking TIMESTAMP,
+    next_booking TIMESTAMP,
+    booking_dates_valid_until TIMESTAMP,
     request_id BIGINT,
+    search_vector TSVECTOR GENERATED ALWAYS AS (
+        setweight(to_tsvector('russian', name), 'A') ||
+        setweight(to_tsvector('english', name), 'A') ||
+        setweight(to_tsvector('russian', description), 'B') ||
+        setweight(to_tsvector('english', description), 'B')
+    ) STORED,
 
     CONSTRAINT fk_items_owner_id
         FOREIGN KEY(owner_id)
@@ -58,14 +73,37 @@ COMMENT ON COLUMN items.owner_id IS 'Идентификатор владельц
 COMMENT ON COLUMN items.name IS 'Название вещи';
 COMMENT ON COLUMN items.description IS 'Описание вещи';
 COMMENT ON COLUMN items.available IS 'Доступность вещи';
+COMMENT ON COLUMN items.last_booking IS 'Начало последнего завершившегося бронирования вещи';
+COMMENT ON COLUMN items.next_booking IS 'Окончание ближайшего еще не начавшегося бронирования вещи';
+COMMENT ON COLUMN items.booking_dates_valid_until IS 'Момент, после которого last_booking и next_booking нужно пересчитать';
+COMMENT ON COLUMN items.search_vector IS 'Полнотекстовый индекс названия и описания вещи (русский и английский)';
+
+CREATE INDEX IF NOT EXISTS idx_items_owner_id ON items (owner_id);
+CREATE INDEX IF NOT EXISTS idx_items_booking_dates_valid_until ON items (booking_dates_valid_until)
+    WHERE booking_dates_valid_until IS NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_items_search_vector ON items USING GIN (search_vector);
+CREATE INDEX IF NOT EXISTS idx_items_name_trgm ON items USING GIN (name gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_items_description_trgm ON items USING GIN (description gin_trgm_ops);
+
+CREATE MATERIALIZED VIEW IF NOT EXISTS item_search_terms AS
+    SELECT word
+    FROM ts_stat('SELECT to_tsvector(''simple'', name || '' '' || description) FROM items WHERE available = true');
+COMMENT ON MATERIALIZED VIEW item_search_terms IS 'Словарь слов из названий и описаний доступных вещей для исправления опечаток в поиске';
+CREATE UNIQUE INDEX IF NOT EXISTS uniq_item_search_terms_word ON item_search_terms (word);
+CREATE INDEX IF NOT EXISTS idx_item_search_terms_word_trgm ON item_search_terms USING GIST (word gist_trgm_ops);
 
 CREATE TABLE IF NOT EXISTS bookings (
-    id BIGSERIAL PRIMARY KEY,
+    id BIGSERIAL,
     book_start TIMESTAMP NOT NULL,
     book_end TIMESTAMP NOT NULL,
     item_id BIGINT NOT NULL,
     booker_id BIGINT NOT NULL,
+    owner_id BIGINT NOT NULL,
     book_status VARCHAR NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0,
+
+    -- ключ секционирования обязан входить в первичный ключ; id по-прежнему уникален благодаря последовательности
+    CONSTRAINT pk_bookings PRIMARY KEY (id, book_start),
 
     CONSTRAINT fk_bookings_item_id
         FOREIGN KEY(item_id)
@@ -74,16 +112,265 @@ CREATE TABLE IF NOT EXISTS bookings (
 
     CONSTRAINT fk_bookings_booker_id
         FOREIGN KEY(booker_id)
+            REFERENCES users(id)
+                ON DELETE CASCADE,
+
+    CONSTRAINT fk_bookings_owner_id
+        FOREIGN KEY(owner_id)
             REFERENCES users(id)
                 ON DELETE CASCADE
-);
-COMMENT ON TABLE bookings IS 'Таблица бронирования';
+) PARTITION BY RANGE (book_start);
+COMMENT ON TABLE bookings IS 'Таблица бронирования, секционированная по месяцам начала бронирования';
 COMMENT ON COLUMN bookings.id IS 'Идентификатор бронирования';
 COMMENT ON COLUMN bookings.book_start IS 'Начало бронирования';
 COMMENT ON COLUMN bookings.book_end IS 'Окончание бронирования';
 COMMENT ON COLUMN bookings.item_id IS 'Идентификатор вещи, которую бронируют';
 COMMENT ON COLUMN bookings.booker_id IS 'Идентификатор пользователя, который бронирует';
+COMMENT ON COLUMN bookings.owner_id IS 'Идентификатор владельца вещи: копия items.owner_id, чтобы выборки владельца обходились без соединения с items';
 COMMENT ON COLUMN bookings.book_status IS 'Статус бронирования';
+COMMENT ON COLUMN bookings.version IS 'Версия строки для оптимистической блокировки';
+
+-- бронирования вне созданных месячных разделов
+CREATE TABLE IF NOT EXISTS bookings_default PARTITION OF bookings DEFAULT;
+
+-- последнее и ближайшее бронирование вещи берутся одним проходом по индексу от текущего момента
+CREATE INDEX IF NOT EXISTS idx_bookings_item_start ON bookings (item_id, book_start DESC) INCLUDE (book_end);
+CREATE INDEX IF NOT EXISTS idx_bookings_item_end ON bookings (item_id, book_end) INCLUDE (book_start);
+-- страницы бронирований пользователя читаются по порядку (book_start, id) без сортировки
+CREATE INDEX IF NOT EXISTS idx_bookings_booker_start ON bookings (booker_id, book_start, id);
+CREATE INDEX IF NOT EXISTS idx_bookings_owner_start ON bookings (owner_id, book_start, id);
+CREATE INDEX IF NOT EXISTS idx_bookings_owner_status_start ON bookings (owner_id, book_status, book_start, id);
+-- ожидающие бронирования, у которых наступило начало, истекают порциями по порядку начала
+CREATE INDEX IF NOT EXISTS idx_bookings_waiting_start ON bookings (book_start) WHERE book_status = 'WAITING';
+-- пары (вещь, арендатор) только что закончившихся бронирований для BookingCompletionIndex
+CREATE INDEX IF NOT EXISTS idx_bookings_end ON bookings (book_end) INCLUDE (item_id, booker_id);
+
+-- Создает месячные разделы bookings_ГГГГ_ММ на months месяцев начиная с месяца first_month, если их еще нет.
+-- Строки нового месяца, уже попавшие в раздел по умолчанию, переносятся в созданный раздел.
+-- Возвращает число созданных разделов.
+CREATE OR REPLACE FUNCTION create_bookings_partitions(first_month DATE, months INT) RETURNS INT AS '
+DECLARE
+    month_start TIMESTAMP;
+    month_end TIMESTAMP;
+    partition_name TEXT;
+    moved bookings_default[];
+    created INT := 0;
+BEGIN
+    -- разделы создает один экземпляр сервера за раз
+    PERFORM pg_advisory_xact_lock(hashtext(''create_bookings_partitions''));
+    FOR i IN 0 .. months - 1 LOOP
+        month_start := date_trunc(''month'', first_month) + make_interval(months => i);
+        month_end := month_start + INTERVAL ''1 month'';
+        partition_name := ''bookings_'' || to_char(month_start, ''YYYY_MM'');
+        CONTINUE WHEN to_regclass(partition_name) IS NOT NULL;
+        -- Строки нового месяца убираются из раздела по умолчанию до создания раздела: тогда проверка
+        -- раздела по умолчанию при CREATE их не находит, и отсоединять его не нужно. Перенесенные
+        -- строки - не новые бронирования, сводки item_daily_stats их не считают.
+        PERFORM set_config(''shareit.moving_bookings'', ''on'', true);
+        WITH deleted AS (
+            DELETE FROM bookings_default
+            WHERE book_start >= month_start AND book_start < month_end
+            RETURNING bookings_default AS booking
+        )
+        SELECT array_agg(booking) INTO moved FROM deleted;
+        EXECUTE format(''CREATE TABLE %I PARTITION OF bookings FOR VALUES FROM (%L) TO (%L)'',
+                       partition_name, month_start, month_end);
+        IF moved IS NOT NULL THEN
+            INSERT INTO bookings (id, book_start, book_end, item_id, booker_id, owner_id, book_status, version)
+            SELECT id, book_start, book_end, item_id, booker_id, owner_id, book_status, version
+            FROM unnest(moved);
+        END IF;
+        PERFORM set_config(''shareit.moving_bookings'', ''off'', true);
+        created := created + 1;
+    END LOOP;
+    RETURN created;
+END;
+' LANGUAGE plpgsql;
+
+-- Удаляет пустые месячные разделы bookings, целиком лежащие раньше before: их строки перенесены в архив.
+-- Возвращает число удаленных разделов.
+CREATE OR REPLACE FUNCTION drop_empty_bookings_partitions(before TIMESTAMP) RETURNS INT AS '
+DECLARE
+    partition_name TEXT;
+    is_empty BOOLEAN;
+    dropped INT := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext(''create_bookings_partitions''));
+    FOR partition_name IN
+        SELECT child.relname
+        FROM pg_inherits
+        JOIN pg_class parent ON parent.oid = pg_inherits.inhparent
+        JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+        WHERE parent.relname = ''bookings''
+        AND child.relname ~ ''^bookings_[0-9]{4}_[0-9]{2}$''
+        ORDER BY child.relname
+    LOOP
+        CONTINUE WHEN to_date(substr(partition_name, 10), ''YYYY_MM'') + INTERVAL ''1 month'' > before;
+        EXECUTE format(''SELECT NOT EXISTS (SELECT 1 FROM %I)'', partition_name) INTO is_empty;
+        CONTINUE WHEN NOT is_empty;
+        EXECUTE format(''DROP TABLE %I'', partition_name);
+        dropped := dropped + 1;
+    END LOOP;
+    RETURN dropped;
+END;
+' LANGUAGE plpgsql;
+
+-- прошлый месяц и год вперед; дальше разделы создает BookingPartitionJob
+SELECT create_bookings_partitions(CAST(now() - INTERVAL '1 month' AS DATE), 14);
+
+-- Реестр сегментов архива: BookingArchive читает только перечисленные здесь сегменты. Таблица пересоздается
+-- вместе с bookings, поэтому сегменты прежней базы, чьи id выдаются заново, больше не читаются.
+CREATE TABLE IF NOT EXISTS booking_archive_segments (
+    name VARCHAR(64) PRIMARY KEY,
+    created TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT now()
+);
+COMMENT ON TABLE booking_archive_segments IS 'Сегменты каталога архива бронирований, перенесенные из этой базы';
+COMMENT ON COLUMN booking_archive_segments.name IS 'Имя файла сегмента без расширения';
+COMMENT ON COLUMN booking_archive_segments.created IS 'Время регистрации сегмента';
+
+-- Ограничение-исключение на секционированной таблице может сравнивать ключ секционирования только на равенство,
+-- поэтому интервалы ожидающих и подтвержденных бронирований лежат в отдельной несекционированной таблице.
+CREATE TABLE IF NOT EXISTS booking_periods (
+    booking_id BIGINT PRIMARY KEY,
+    item_id BIGINT NOT NULL,
+    period TSRANGE NOT NULL,
+
+    CONSTRAINT excl_booking_periods_item_period
+        EXCLUDE USING GIST (item_id WITH =, period WITH &&)
+);
+COMMENT ON TABLE booking_periods IS 'Интервалы ожидающих и подтвержденных бронирований: у вещи не может быть двух пересекающихся';
+COMMENT ON COLUMN booking_periods.booking_id IS 'Идентификатор бронирования';
+COMMENT ON COLUMN booking_periods.item_id IS 'Идентификатор вещи';
+COMMENT ON COLUMN booking_periods.period IS 'Интервал бронирования [начало, окончание)';
+
+-- Интервал бронирования появляется и исчезает вместе с ним и пропадает, когда бронирование отклонено или отменено.
+-- Пересечение при вставке или изменении в обход insertIfFree завершается ошибкой ограничения.
+CREATE OR REPLACE FUNCTION sync_booking_periods() RETURNS TRIGGER AS '
+BEGIN
+    IF TG_OP = ''UPDATE''
+        AND OLD.book_status IN (''WAITING'', ''APPROVED'') AND NEW.book_status IN (''WAITING'', ''APPROVED'')
+        AND OLD.book_start = NEW.book_start AND OLD.book_end = NEW.book_end AND OLD.item_id = NEW.item_id THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP <> ''INSERT'' THEN
+        DELETE FROM booking_periods WHERE booking_id = OLD.id;
+    END IF;
+    IF TG_OP <> ''DELETE'' AND NEW.book_status IN (''WAITING'', ''APPROVED'') THEN
+        INSERT INTO booking_periods (booking_id, item_id, period)
+        VALUES (NEW.id, NEW.item_id, tsrange(NEW.book_start, NEW.book_end, ''[)''))
+        ON CONFLICT (booking_id) DO NOTHING;
+    END IF;
+    RETURN NULL;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER trg_bookings_periods_insert_delete
+    AFTER INSERT OR DELETE ON bookings
+    FOR EACH ROW
+    EXECUTE FUNCTION sync_booking_periods();
+
+CREATE OR REPLACE TRIGGER trg_bookings_periods_update
+    AFTER UPDATE ON bookings
+    FOR EACH ROW
+    WHEN (OLD.book_status IS DISTINCT FROM NEW.book_status
+          OR OLD.book_start IS DISTINCT FROM NEW.book_start
+          OR OLD.book_end IS DISTINCT FROM NEW.book_end
+          OR OLD.item_id IS DISTINCT FROM NEW.item_id)
+    EXECUTE FUNCTION sync_booking_periods();
+
+-- если у вещи сменится владелец, ее бронирования переходят к нему же
+CREATE OR REPLACE FUNCTION sync_bookings_owner_id() RETURNS TRIGGER AS '
+BEGIN
+    UPDATE bookings SET owner_id = NEW.owner_id WHERE item_id = NEW.id;
+    RETURN NEW;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER trg_items_owner_id
+    AFTER UPDATE OF owner_id ON items
+    FOR EACH ROW
+    WHEN (OLD.owner_id IS DISTINCT FROM NEW.owner_id)
+    EXECUTE FUNCTION sync_bookings_owner_id();
+
+-- Суточные сводки по вещам для статистики владельца (GET /items/stats). Их ведет триггер на bookings в той же
+-- транзакции, что и изменение бронирования, так что статистика за любой период - сумма строк по дням.
+-- Удаление бронирований, в том числе перенос в архив, сводок не меняет.
+CREATE TABLE IF NOT EXISTS item_daily_stats (
+    item_id BIGINT NOT NULL,
+    day DATE NOT NULL,
+    requests INT NOT NULL DEFAULT 0,
+    lead_seconds BIGINT NOT NULL DEFAULT 0,
+    approved INT NOT NULL DEFAULT 0,
+    rejected INT NOT NULL DEFAULT 0,
+    expired INT NOT NULL DEFAULT 0,
+    booked_seconds BIGINT NOT NULL DEFAULT 0,
+
+    CONSTRAINT pk_item_daily_stats PRIMARY KEY (item_id, day),
+
+    CONSTRAINT fk_item_daily_stats_item_id
+        FOREIGN KEY(item_id)
+            REFERENCES items(id)
+                ON DELETE CASCADE
+);
+COMMENT ON TABLE item_daily_stats IS 'Суточные сводки бронирований вещи';
+COMMENT ON COLUMN item_daily_stats.item_id IS 'Идентификатор вещи';
+COMMENT ON COLUMN item_daily_stats.day IS 'День';
+COMMENT ON COLUMN item_daily_stats.requests IS 'Сколько бронирований вещи создано в этот день';
+COMMENT ON COLUMN item_daily_stats.lead_seconds IS 'Сумма секунд от создания до начала у бронирований, созданных в этот день';
+COMMENT ON COLUMN item_daily_stats.approved IS 'Сколько бронирований подтверждено в этот день';
+COMMENT ON COLUMN item_daily_stats.rejected IS 'Сколько бронирований отклонено в этот день';
+COMMENT ON COLUMN item_daily_stats.expired IS 'Сколько бронирований истекло без решения в этот день';
+COMMENT ON COLUMN item_daily_stats.booked_seconds IS 'Сколько секунд этого дня вещь занята подтвержденными бронированиями';
+
+-- Новое бронирование считается запросом в день создания. Решение по ожидающему бронированию считается в день
+-- решения, а подтвержденное бронирование добавляет занятое время каждому дню, который оно покрывает.
+CREATE OR REPLACE FUNCTION update_item_daily_stats() RETURNS TRIGGER AS '
+BEGIN
+    IF TG_OP = ''INSERT'' THEN
+        IF current_setting(''shareit.moving_bookings'', true) = ''on'' THEN
+            RETURN NULL;
+        END IF;
+        INSERT INTO item_daily_stats (item_id, day, requests, lead_seconds)
+        VALUES (NEW.item_id, CAST(LOCALTIMESTAMP AS DATE), 1,
+                GREATEST(CAST(extract(epoch FROM NEW.book_start - LOCALTIMESTAMP) AS BIGINT), 0))
+        ON CONFLICT (item_id, day) DO UPDATE
+        SET requests = item_daily_stats.requests + 1,
+            lead_seconds = item_daily_stats.lead_seconds + EXCLUDED.lead_seconds;
+        RETURN NULL;
+    END IF;
+    INSERT INTO item_daily_stats (item_id, day, approved, rejected, expired)
+    VALUES (NEW.item_id, CAST(LOCALTIMESTAMP AS DATE),
+            CAST(NEW.book_status = ''APPROVED'' AS INT),
+            CAST(NEW.book_status = ''REJECTED'' AS INT),
+            CAST(NEW.book_status = ''EXPIRED'' AS INT))
+    ON CONFLICT (item_id, day) DO UPDATE
+    SET approved = item_daily_stats.approved + EXCLUDED.approved,
+        rejected = item_daily_stats.rejected + EXCLUDED.rejected,
+        expired = item_daily_stats.expired + EXCLUDED.expired;
+    IF NEW.book_status = ''APPROVED'' THEN
+        INSERT INTO item_daily_stats (item_id, day, booked_seconds)
+        SELECT NEW.item_id, CAST(day AS DATE),
+               CAST(extract(epoch FROM LEAST(NEW.book_end, day + INTERVAL ''1 day'') - GREATEST(NEW.book_start, day))
+                    AS BIGINT)
+        FROM generate_series(date_trunc(''day'', NEW.book_start), NEW.book_end - INTERVAL ''1 microsecond'',
+                             INTERVAL ''1 day'') AS day
+        ON CONFLICT (item_id, day) DO UPDATE
+        SET booked_seconds = item_daily_stats.booked_seconds + EXCLUDED.booked_seconds;
+    END IF;
+    RETURN NULL;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER trg_bookings_stats_insert
+    AFTER INSERT ON bookings
+    FOR EACH ROW
+    EXECUTE FUNCTION update_item_daily_stats();
+
+CREATE OR REPLACE TRIGGER trg_bookings_stats_update
+    AFTER UPDATE ON bookings
+    FOR EACH ROW
+    WHEN (OLD.book_status = 'WAITING' AND NEW.book_status <> 'WAITING')
+    EXECUTE FUNCTION update_item_daily_stats();
 
 CREATE TABLE IF NOT EXISTS comments (
     id BIGSERIAL PRIMARY KEY,
@@ -91,6 +378,9 @@ CREATE TABLE IF NOT EXISTS comments (
     author_id BIGINT NOT NULL,
     item_id BIGINT NOT NULL,
     created TIMESTAMP NOT NULL,
+    search_vector TSVECTOR GENERATED ALWAYS AS (
+        to_tsvector('russian', comment_text) || to_tsvector('english', comment_text)
+    ) STORED,
 
     CONSTRAINT fk_comments_author_id
         FOREIGN KEY(author_id)
@@ -107,4 +397,7 @@ COMMENT ON COLUMN comments.id IS 'Идентификатор комментар
 COMMENT ON COLUMN comments.comment_text IS 'Текст комментария';
 COMMENT ON COLUMN comments.author_id IS 'Идентификатор автора комментария';
 COMMENT ON COLUMN comments.item_id IS 'Идентификатор комментируемой вещи';
-COMMENT ON COLUMN comments.created IS 'Время создания комментария';
\ No newline at end of file
+COMMENT ON COLUMN comments.created IS 'Время создания комментария';
+COMMENT ON COLUMN comments.search_vector IS 'Полнотекстовый индекс текста комментария (русский и английский)';
+
+CREATE INDEX IF NOT EXISTS idx_comments_search_vector ON comments USING GIN (search_vector);
\ No newline at end of file
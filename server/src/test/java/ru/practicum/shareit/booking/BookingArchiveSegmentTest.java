@@ -0,0 +1,78 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookingArchiveSegmentTest {
+
+    private static final int BOOKINGS = BookingArchiveSegment.BLOCK_ROWS * 3 + 7;
+    private static final LocalDateTime START = LocalDateTime.of(2023, 1, 1, 10, 0, 0, 123_456_000);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void readsBackEveryBookingInOrder() throws Exception {
+        List<ArchivedBooking> bookings = bookings();
+        BookingArchiveSegment segment = write(bookings.reversed());
+
+        List<ArchivedBooking> read = new ArrayList<>();
+        segment.forEach(read::add);
+
+        assertEquals(BOOKINGS, segment.getRows());
+        assertEquals(bookings.toString(), read.toString());
+        assertEquals(bookings.get(BOOKINGS - 1).getStart(), segment.getMaxStart());
+        assertEquals(bookings.get(BOOKINGS - 1).getEnd(), segment.getMaxEnd());
+    }
+
+    @Test
+    void findsBookingsOfBookerAndOwner() throws Exception {
+        List<ArchivedBooking> bookings = bookings();
+        BookingArchiveSegment segment = write(bookings);
+
+        assertEquals(bookings.stream().filter(booking -> booking.getBookerId() == 3).toList().toString(),
+                segment.findByBooker(3).toString());
+        assertEquals(bookings.stream().filter(booking -> booking.getOwnerId() == 1000).toList().toString(),
+                segment.findByOwner(1000).toString());
+        assertTrue(segment.findByBooker(1000).isEmpty());
+        assertTrue(segment.findByOwner(-1).isEmpty());
+    }
+
+    @Test
+    void storesBookingsCompactly() throws Exception {
+        write(bookings());
+
+        try (Stream<Path> files = Files.list(directory)) {
+            long size = Files.size(files.findFirst().orElseThrow());
+            // семь колонок по восемь байт без сжатия
+            assertTrue(size < BOOKINGS * 7L * Long.BYTES / 4, "segment size: " + size);
+        }
+    }
+
+    private BookingArchiveSegment write(List<ArchivedBooking> bookings) throws Exception {
+        Path file = directory.resolve("bookings" + BookingArchive.SEGMENT_SUFFIX);
+        Files.write(file, BookingArchiveSegment.encode(bookings));
+        return BookingArchiveSegment.open(file);
+    }
+
+    private static List<ArchivedBooking> bookings() {
+        List<ArchivedBooking> bookings = new ArrayList<>();
+        for (int i = 0; i < BOOKINGS; i++) {
+            LocalDateTime start = START.plusHours(i);
+            bookings.add(new ArchivedBooking(1000L + i, start, start.plusMinutes(30 + i % 5),
+                    i % 3 == 0 ? BookingStatus.REJECTED : BookingStatus.APPROVED,
+                    100L + i % 50, 1L + i % 20, 1000L + i % 4));
+        }
+        return bookings;
+    }
+}
@@ -0,0 +1,160 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingCursor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BookingArchiveTest {
+
+    private static final long BOOKER = 2L;
+    private static final long OWNER = 3L;
+    // архив, как и база, хранит время с точностью до микросекунд
+    private static final LocalDateTime NOW = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+    private static final LocalDateTime LONG_AGO = NOW.minusYears(2);
+
+    @TempDir
+    private Path directory;
+
+    // реестр сегментов в базе, общий для всех экземпляров архива
+    private final Set<String> registered = new HashSet<>();
+
+    private BookingArchive archive;
+
+    @BeforeEach
+    void setUp() {
+        archive = newArchive();
+        archive.append(List.of(booking(1L, 0, BookingStatus.APPROVED), booking(3L, 2, BookingStatus.REJECTED)));
+        archive.append(List.of(booking(2L, 1, BookingStatus.APPROVED), booking(4L, 3, BookingStatus.APPROVED)));
+    }
+
+    @Test
+    void findsPageAcrossSegmentsInOrder() {
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(query().bookerId(BOOKER).size(10)));
+        assertEquals(List.of(2L, 3L), ids(query().ownerId(OWNER).from(1).size(2)));
+        assertEquals(List.of(3L, 4L), ids(query().ownerId(OWNER)
+                .after(new BookingCursor(LONG_AGO.plusDays(1), 2L)).size(10)));
+        assertTrue(ids(query().bookerId(OWNER).size(10)).isEmpty());
+    }
+
+    @Test
+    void filtersByStateItemAndWindow() {
+        assertEquals(List.of(3L), ids(query().bookerId(BOOKER).states(Set.of(FilterBookingState.REJECTED)).size(10)));
+        assertEquals(List.of(2L), ids(query().bookerId(BOOKER).itemId(11L).size(10)));
+        assertEquals(List.of(2L, 3L), ids(query().bookerId(BOOKER)
+                .rangeStart(LONG_AGO.plusDays(1)).rangeEnd(LONG_AGO.plusDays(3)).size(10)));
+    }
+
+    @Test
+    void currentAndFutureQueriesDoNotNeedArchive() {
+        assertTrue(archive.mayContain(query().bookerId(BOOKER).states(Set.of(FilterBookingState.PAST)).size(10)
+                .build()));
+        assertFalse(archive.mayContain(query().bookerId(BOOKER)
+                .states(Set.of(FilterBookingState.CURRENT, FilterBookingState.FUTURE)).size(10).build()));
+        assertFalse(archive.mayContain(query().bookerId(BOOKER).after(new BookingCursor(NOW, 0)).size(10).build()));
+    }
+
+    @Test
+    void bookingArchivedTwiceIsReturnedOnce() {
+        archive.append(List.of(booking(2L, 1, BookingStatus.APPROVED)));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(query().bookerId(BOOKER).size(10)));
+    }
+
+    @Test
+    void reloadOpensSegmentsWrittenByAnotherInstance() {
+        BookingArchive other = newArchive();
+        other.append(List.of(booking(5L, 4, BookingStatus.APPROVED)));
+
+        assertFalse(archive.hasCompleted(14L, BOOKER));
+        archive.reload();
+
+        assertTrue(archive.hasCompleted(14L, BOOKER));
+        assertEquals(5, archive.size());
+    }
+
+    @Test
+    void iteratesBookerRowsAcrossSegmentsInOrderOnce() {
+        archive.append(List.of(booking(3L, 2, BookingStatus.REJECTED)));
+
+        List<Long> ids = new ArrayList<>();
+        archive.iterateByBooker(BOOKER).forEachRemaining(booking -> ids.add(booking.getId()));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids);
+        assertFalse(archive.iterateByBooker(OWNER).hasNext());
+    }
+
+    @Test
+    void segmentsMissingFromRecreatedSchemaAreIgnoredAndDeletedLater() throws IOException {
+        registered.clear();
+        archive.reload();
+
+        assertEquals(0, archive.size());
+        assertFalse(archive.hasCompleted(10L, BOOKER));
+        assertEquals(2, segmentFiles().size());
+
+        FileTime abandoned = FileTime.from(Instant.now().minus(BookingArchive.ABANDONED_SEGMENT_AGE).minusSeconds(1));
+        for (Path file : segmentFiles()) {
+            Files.setLastModifiedTime(file, abandoned);
+        }
+        archive.append(List.of(booking(5L, 4, BookingStatus.APPROVED)));
+        BookingArchive restarted = newArchive();
+
+        assertEquals(1, segmentFiles().size());
+        assertEquals(1, restarted.size());
+        assertTrue(restarted.hasCompleted(14L, BOOKER));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(BookingArchive.SEGMENT_SUFFIX)).toList();
+        }
+    }
+
+    private BookingArchive newArchive() {
+        BookingProperties properties = new BookingProperties();
+        properties.setArchiveDirectory(directory);
+        BookingRepository registry = mock(BookingRepository.class);
+        when(registry.findArchiveSegmentNames()).thenAnswer(invocation -> List.copyOf(registered));
+        doAnswer(invocation -> registered.add(invocation.getArgument(0)))
+                .when(registry).registerArchiveSegment(anyString());
+        BookingArchive created = new BookingArchive(properties, registry);
+        created.init();
+        return created;
+    }
+
+    private BookingQuery.BookingQueryBuilder query() {
+        return BookingQuery.builder().now(NOW);
+    }
+
+    private List<Long> ids(BookingQuery.BookingQueryBuilder query) {
+        return archive.find(query.build()).stream().map(ArchivedBooking::getId).toList();
+    }
+
+    private static ArchivedBooking booking(Long id, int day, BookingStatus status) {
+        LocalDateTime start = LONG_AGO.plusDays(day);
+        return new ArchivedBooking(id, start, start.plusHours(1), status, 10L + day, BOOKER, OWNER);
+    }
+}
@@ -0,0 +1,173 @@
+package ru.practicum.shareit.booking;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingPair;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BookingCompletionIndexTest {
+
+    @Mock
+    private BookingRepository bookingRepository;
+
+    @Mock
+    private BookingArchive archive;
+
+    private BookingCompletionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new BookingCompletionIndex(bookingRepository, archive, new BookingProperties(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void checksDatabaseUntilLoaded() {
+        LocalDateTime now = LocalDateTime.now();
+        when(bookingRepository.existsEndedBefore(1L, 2L, now)).thenReturn(true);
+
+        assertTrue(index.hasCompleted(1L, 2L, now));
+    }
+
+    @Test
+    void knownPairIsConfirmedInDatabase() {
+        List<BookingPair> pairs = List.of(pair(1L, 2L));
+        when(bookingRepository.findAllPairs()).thenReturn(pairs);
+        index.refresh();
+        LocalDateTime now = LocalDateTime.now();
+        when(bookingRepository.existsEndedBefore(1L, 2L, now)).thenReturn(true);
+
+        assertTrue(index.hasCompleted(1L, 2L, now));
+    }
+
+    @Test
+    void unknownPairIsCheckedOnlyAmongRecentlyEnded() {
+        LocalDateTime loadedAt = LocalDateTime.now();
+        when(bookingRepository.findAllPairs()).thenReturn(List.of());
+        index.refresh();
+        LocalDateTime now = LocalDateTime.now().plusSeconds(1);
+
+        assertFalse(index.hasCompleted(1L, 2L, now));
+
+        ArgumentCaptor<LocalDateTime> from = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(bookingRepository).existsEndedBetween(eq(1L), eq(2L), from.capture(), eq(now));
+        assertFalse(from.getValue().isBefore(loadedAt.minus(BookingCompletionIndex.COMMIT_LAG)));
+        verify(bookingRepository, never()).existsEndedBefore(anyLong(), anyLong(), any());
+        verify(archive, never()).hasCompleted(anyLong(), anyLong());
+    }
+
+    @Test
+    void bookingEndedOnAnotherInstanceIsFoundBeforeAndAfterCatchUp() {
+        when(bookingRepository.findAllPairs()).thenReturn(List.of());
+        index.refresh();
+        LocalDateTime now = LocalDateTime.now();
+        when(bookingRepository.existsEndedBetween(eq(1L), eq(2L), any(), eq(now))).thenReturn(true);
+
+        assertTrue(index.hasCompleted(1L, 2L, now));
+
+        List<BookingPair> ended = List.of(pair(1L, 2L));
+        when(bookingRepository.findPairsEndedBetween(any(), any())).thenReturn(ended);
+        index.refresh();
+        when(bookingRepository.existsEndedBefore(1L, 2L, now)).thenReturn(true);
+
+        assertTrue(index.hasCompleted(1L, 2L, now));
+        verify(bookingRepository).existsEndedBefore(1L, 2L, now);
+    }
+
+    @Test
+    void committedBookingIsAddedBeforeItEnds() {
+        when(bookingRepository.findAllPairs()).thenReturn(List.of());
+        index.refresh();
+        LocalDateTime start = LocalDateTime.now().plusHours(1);
+        index.onBookingChanged(new BookingChangedEvent(5L, 1L, 2L, start, start.plusHours(1), BookingStatus.WAITING));
+        LocalDateTime now = start.plusHours(2);
+        when(bookingRepository.existsEndedBefore(1L, 2L, now)).thenReturn(true);
+
+        assertTrue(index.hasCompleted(1L, 2L, now));
+    }
+
+    @Test
+    void bookingCommittedDuringLoadIsKept() {
+        when(bookingRepository.findAllPairs()).thenAnswer(invocation -> {
+            // выборка загрузки уже прочитана, бронирование закоммичено после нее
+            LocalDateTime start = LocalDateTime.now().minusDays(2);
+            index.onBookingChanged(new BookingChangedEvent(5L, 1L, 2L, start, start.plusDays(1),
+                    BookingStatus.APPROVED));
+            return List.of();
+        });
+        index.refresh();
+        LocalDateTime now = LocalDateTime.now();
+        when(bookingRepository.existsEndedBefore(1L, 2L, now)).thenReturn(true);
+
+        assertTrue(index.hasCompleted(1L, 2L, now));
+    }
+
+    @Test
+    void archivedPairsAreAddedWhenMovedToArchive() {
+        when(bookingRepository.findAllPairs()).thenReturn(List.of());
+        index.refresh();
+        LocalDateTime longAgo = LocalDateTime.now().minusYears(2);
+        index.addArchived(List.of(new ArchivedBooking(5L, longAgo, longAgo.plusDays(1), BookingStatus.APPROVED,
+                1L, 2L, 3L)));
+        LocalDateTime now = LocalDateTime.now();
+        when(archive.hasCompleted(1L, 2L)).thenReturn(true);
+
+        assertTrue(index.hasCompleted(1L, 2L, now));
+    }
+
+    @Test
+    void refreshReloadsOnlyWhenNotLoadedAndCatchesUpOtherwise() {
+        when(bookingRepository.findAllPairs()).thenReturn(List.of());
+        index.refresh();
+        index.refresh();
+        index.refresh();
+
+        verify(bookingRepository, times(1)).findAllPairs();
+        verify(bookingRepository, times(2)).findPairsEndedBetween(any(), any());
+    }
+
+    @Test
+    void archivedPairIsLoadedAndConfirmedInArchive() {
+        when(bookingRepository.findAllPairs()).thenReturn(List.of());
+        ArchivedBooking archived = new ArchivedBooking(5L, LocalDateTime.now().minusYears(2),
+                LocalDateTime.now().minusYears(2).plusDays(1), BookingStatus.APPROVED, 1L, 2L, 3L);
+        doAnswer(invocation -> {
+            invocation.<Consumer<ArchivedBooking>>getArgument(0).accept(archived);
+            return null;
+        }).when(archive).forEach(any());
+        index.refresh();
+        LocalDateTime now = LocalDateTime.now();
+        when(archive.hasCompleted(1L, 2L)).thenReturn(true);
+
+        assertTrue(index.hasCompleted(1L, 2L, now));
+        verify(bookingRepository).existsEndedBefore(1L, 2L, now);
+    }
+
+    private BookingPair pair(Long itemId, Long bookerId) {
+        BookingPair pair = mock(BookingPair.class);
+        when(pair.getItemId()).thenReturn(itemId);
+        when(pair.getBookerId()).thenReturn(bookerId);
+        return pair;
+    }
+}
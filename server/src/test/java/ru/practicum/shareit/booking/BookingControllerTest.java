@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
@@ -13,8 +14,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mapstruct.factory.Mappers;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingFilter;
 import ru.practicum.shareit.booking.dto.CreateBookingRequest;
 import ru.practicum.shareit.item.ItemMapper;
 import ru.practicum.shareit.item.model.Item;
@@ -24,13 +27,18 @@ import ru.practicum.shareit.user.dto.UserDto;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @Slf4j
@@ -58,7 +66,10 @@ class BookingControllerTest {
     private final User user2 = new User(2L, "User2", "user2@mail.ru");
     private final Item item = new Item(1L, user, "item1", "description1", true, null, null);
     private final Booking booking = new Booking(1L, LocalDateTime.now().minusDays(1), LocalDateTime.now().plusDays(1),
-            item, user2, BookingStatus.WAITING);
+            item, user2, user.getId(), BookingStatus.WAITING, 0L);
+    private final BookingView bookingView = new BookingView(booking.getId(), booking.getStart(), booking.getEnd(),
+            booking.getStatus(), item.getId(), item.getName(), item.getDescription(), item.isAvailable(), null, null,
+            user2.getId(), user2.getName(), user2.getEmail());
 
     @BeforeEach
     void setUp() {
@@ -120,20 +131,43 @@ class BookingControllerTest {
 
     @Test
     void getAllByUserOk() throws Exception {
-        when(bookingService.getUserBookings(anyString(), anyLong()))
-                .thenReturn(Collections.singletonList(booking));
+        when(bookingService.getUserBookings(any(), anyLong(), anyInt(), anyInt()))
+                .thenReturn(Collections.singletonList(bookingView));
 
         mvc.perform(get("/bookings")
                         .header("X-Sharer-User-Id", user2.getId())
                         .contentType(MediaType.APPLICATION_JSON)
                         .characterEncoding(StandardCharsets.UTF_8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].item.name", is(item.getName())))
+                .andExpect(jsonPath("$[0].booker.id", is(user2.getId().intValue())));
+    }
+
+    @Test
+    void getAllByUserBindsFilterParameters() throws Exception {
+        when(bookingService.getUserBookings(any(), anyLong(), anyInt(), anyInt()))
+                .thenReturn(Collections.singletonList(bookingView));
+
+        mvc.perform(get("/bookings")
+                        .param("state", "WAITING,FUTURE")
+                        .param("itemId", "1")
+                        .param("rangeStart", "2030-01-01T00:00:00")
+                        .param("rangeEnd", "2030-02-01T00:00:00")
+                        .header("X-Sharer-User-Id", user2.getId()))
                 .andExpect(status().isOk());
+
+        ArgumentCaptor<BookingFilter> filter = ArgumentCaptor.forClass(BookingFilter.class);
+        verify(bookingService).getUserBookings(filter.capture(), eq(user2.getId()), eq(0), eq(10));
+        assertEquals(List.of("WAITING", "FUTURE"), filter.getValue().getState());
+        assertEquals(1L, filter.getValue().getItemId());
+        assertEquals(LocalDateTime.of(2030, 1, 1, 0, 0), filter.getValue().getRangeStart());
+        assertEquals(LocalDateTime.of(2030, 2, 1, 0, 0), filter.getValue().getRangeEnd());
     }
 
     @Test
     void getAllByOwnerOk() throws Exception {
-        when(bookingService.getOwnerBookings(anyString(), anyLong()))
-                .thenReturn(Collections.singletonList(booking));
+        when(bookingService.getOwnerBookings(any(), anyLong(), anyInt(), anyInt()))
+                .thenReturn(Collections.singletonList(bookingView));
 
         mvc.perform(get("/bookings/owner")
                         .header("X-Sharer-User-Id", user.getId())
@@ -141,4 +175,37 @@ class BookingControllerTest {
                         .characterEncoding(StandardCharsets.UTF_8))
                 .andExpect(status().isOk());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getOwnerPageOk() throws Exception {
+        when(bookingService.getOwnerBookingsPage(any(), anyLong(), any(), anyInt()))
+                .thenReturn(new BookingPage(Collections.singletonList(bookingView), "next"));
+
+        mvc.perform(get("/bookings/owner/page")
+                        .param("size", "1")
+                        .header("X-Sharer-User-Id", user.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding(StandardCharsets.UTF_8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bookings[0].id", is(booking.getId().intValue())))
+                .andExpect(jsonPath("$.nextCursor", is("next")));
+    }
+
+    @Test
+    void exportStreamsBodyAsAttachment() throws Exception {
+        when(bookingService.exportUserBookings(user2.getId(), BookingExportFormat.NDJSON))
+                .thenReturn(out -> out.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8)));
+
+        MvcResult result = mvc.perform(get("/bookings/export")
+                        .param("format", "NDJSON")
+                        .header("X-Sharer-User-Id", user2.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"bookings.ndjson\""))
+                .andExpect(content().string("{\"id\":1}\n"));
+    }
+}
@@ -0,0 +1,172 @@
+package ru.practicum.shareit.booking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingExportRow;
+import ru.practicum.shareit.item.ItemService;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.User;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BookingExporterTest {
+
+    private static final long BOOKER = 2L;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 10, 0);
+
+    @Mock
+    private BookingRepository repo;
+    @Mock
+    private BookingArchive archive;
+    @Mock
+    private ItemService itemService;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private BookingExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        exporter = new BookingExporter(repo, Mappers.getMapper(BookingMapper.class), archive, itemService,
+                objectMapper);
+    }
+
+    @Test
+    void csvListsArchivedThenDatabaseRowsAndSkipsDeletedItems() throws Exception {
+        User owner = new User(1L, "owner", "owner@mail.ru");
+        ArchivedBooking archived = new ArchivedBooking(1L, START, START.plusHours(2), BookingStatus.APPROVED,
+                10L, BOOKER, owner.getId());
+        ArchivedBooking ofDeletedItem = new ArchivedBooking(2L, START.plusDays(1), START.plusDays(2),
+                BookingStatus.REJECTED, 11L, BOOKER, owner.getId());
+        when(archive.iterateByBooker(BOOKER)).thenReturn(List.of(archived, ofDeletedItem).iterator());
+        when(itemService.getByIds(Set.of(10L, 11L)))
+                .thenReturn(List.of(new Item(10L, owner, "Дрель, ударная", "дрель", true, null, null)));
+        BookingExportRow hot = row(3L, START.plusYears(1), "WAITING", 12L, "Пила \"Дружба\"");
+        when(repo.streamByBooker(BOOKER)).thenReturn(Stream.of(hot));
+
+        assertEquals(String.join("\n",
+                        BookingExporter.CSV_HEADER,
+                        "1,2024-03-01T10:00,2024-03-01T12:00,APPROVED,10,\"Дрель, ударная\"",
+                        "3,2025-03-01T10:00,2025-03-01T12:00,WAITING,12,\"Пила \"\"Дружба\"\"\"",
+                        ""),
+                export(BookingExportFormat.CSV));
+    }
+
+    @Test
+    void ndjsonWritesOneObjectPerLineAndClosesCursor() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        BookingExportRow first = row(3L, START, "APPROVED", 12L, "Пила");
+        BookingExportRow second = row(4L, START.plusDays(1), "REJECTED", 12L, "Пила");
+        when(archive.iterateByBooker(BOOKER)).thenReturn(Collections.emptyIterator());
+        when(repo.streamByBooker(BOOKER)).thenReturn(Stream.of(first, second).onClose(() -> closed.set(true)));
+
+        assertEquals("{\"id\":3,\"start\":\"2024-03-01T10:00\",\"end\":\"2024-03-01T12:00\","
+                        + "\"status\":\"APPROVED\",\"itemId\":12,\"itemName\":\"Пила\"}\n"
+                        + "{\"id\":4,\"start\":\"2024-03-02T10:00\",\"end\":\"2024-03-02T12:00\","
+                        + "\"status\":\"REJECTED\",\"itemId\":12,\"itemName\":\"Пила\"}\n",
+                export(BookingExportFormat.NDJSON));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void mergesArchiveAndDatabaseInOrderWithoutDuplicates(@TempDir Path directory) throws Exception {
+        BookingProperties properties = new BookingProperties();
+        properties.setArchiveDirectory(directory);
+        BookingArchive segments = new BookingArchive(properties, repo);
+        segments.init();
+        User owner = new User(1L, "owner", "owner@mail.ru");
+        ArchivedBooking first = new ArchivedBooking(1L, START, START.plusHours(2), BookingStatus.APPROVED,
+                10L, BOOKER, owner.getId());
+        ArchivedBooking third = new ArchivedBooking(3L, START.plusDays(2), START.plusDays(2).plusHours(2),
+                BookingStatus.APPROVED, 10L, BOOKER, owner.getId());
+        ArchivedBooking rolledBack = new ArchivedBooking(4L, START.plusDays(3), START.plusDays(3).plusHours(2),
+                BookingStatus.WAITING, 10L, BOOKER, owner.getId());
+        segments.append(List.of(first, third));
+        // после сбоя между записью сегмента и удалением строк бронирование 3 перенесено повторно
+        segments.append(List.of(third, rolledBack));
+        when(itemService.getByIds(Set.of(10L)))
+                .thenReturn(List.of(new Item(10L, owner, "Дрель", "дрель", true, null, null)));
+        // бронирование 2 еще не перенесено, 4 осталось в базе после отката удаления и там уже одобрено
+        when(repo.streamByBooker(BOOKER)).thenReturn(Stream.of(
+                row(2L, START.plusDays(1), "APPROVED", 10L, "Дрель"),
+                row(4L, START.plusDays(3), "APPROVED", 10L, "Дрель")));
+        BookingExporter merging = new BookingExporter(repo, Mappers.getMapper(BookingMapper.class), segments,
+                itemService, objectMapper);
+
+        assertEquals(String.join("\n",
+                        BookingExporter.CSV_HEADER,
+                        "1,2024-03-01T10:00,2024-03-01T12:00,APPROVED,10,Дрель",
+                        "2,2024-03-02T10:00,2024-03-02T12:00,APPROVED,10,Дрель",
+                        "3,2024-03-03T10:00,2024-03-03T12:00,APPROVED,10,Дрель",
+                        "4,2024-03-04T10:00,2024-03-04T12:00,APPROVED,10,Дрель",
+                        ""),
+                export(merging, BookingExportFormat.CSV));
+    }
+
+    @Test
+    void looksUpArchivedItemNamesInBoundedBatches() throws Exception {
+        User owner = new User(1L, "owner", "owner@mail.ru");
+        int archivedRows = BookingExporter.ITEM_NAMES_BATCH_SIZE * 2 + 1;
+        List<ArchivedBooking> archived = LongStream.rangeClosed(1, archivedRows)
+                .mapToObj(id -> new ArchivedBooking(id, START.plusHours(id), START.plusHours(id + 1),
+                        BookingStatus.APPROVED, 10L, BOOKER, owner.getId()))
+                .toList();
+        when(archive.iterateByBooker(BOOKER)).thenReturn(archived.iterator());
+        when(itemService.getByIds(Set.of(10L)))
+                .thenReturn(List.of(new Item(10L, owner, "Дрель", "дрель", true, null, null)));
+        when(repo.streamByBooker(BOOKER)).thenReturn(Stream.empty());
+
+        assertEquals(archivedRows, export(BookingExportFormat.NDJSON).lines().count());
+        verify(itemService, times(3)).getByIds(Set.of(10L));
+    }
+
+    private String export(BookingExportFormat format) throws Exception {
+        return export(exporter, format);
+    }
+
+    private String export(BookingExporter target, BookingExportFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        target.write(BOOKER, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static BookingExportRow row(Long id, LocalDateTime start, String status, Long itemId, String itemName) {
+        BookingExportRow row = mock(BookingExportRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getStart()).thenReturn(start);
+        when(row.getEnd()).thenReturn(start.plusHours(2));
+        when(row.getStatus()).thenReturn(status);
+        when(row.getItemId()).thenReturn(itemId);
+        when(row.getItemName()).thenReturn(itemName);
+        return row;
+    }
+}
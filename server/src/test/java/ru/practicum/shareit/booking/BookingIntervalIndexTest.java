@@ -0,0 +1,103 @@
+package ru.practicum.shareit.booking;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingInterval;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BookingIntervalIndexTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Mock
+    private BookingRepository bookingRepository;
+
+    private BookingIntervalIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new BookingIntervalIndex(bookingRepository, new BookingProperties(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void findConflictDoesNotLoadUnwatchedItem() {
+        assertEquals(Optional.empty(), index.findConflict(1L, DAY.plusHours(11), DAY.plusHours(13)));
+        verifyNoInteractions(bookingRepository);
+    }
+
+    @Test
+    void watchLoadsItemOnceAndFindsOverlap() {
+        BookingInterval interval = interval(3L, DAY.plusHours(10), DAY.plusHours(12));
+        when(bookingRepository.findActiveIntervals(eq(1L), any())).thenReturn(List.of(interval));
+
+        index.watch(1L);
+        index.watch(1L);
+        assertEquals(Optional.of(3L), index.findConflict(1L, DAY.plusHours(11), DAY.plusHours(13)));
+        assertEquals(Optional.of(3L), index.findConflict(1L, DAY.plusHours(9), DAY.plusHours(11)));
+        verify(bookingRepository, times(1)).findActiveIntervals(eq(1L), any());
+    }
+
+    @Test
+    void adjacentIntervalsDoNotConflict() {
+        BookingInterval interval = interval(3L, DAY.plusHours(10), DAY.plusHours(12));
+        when(bookingRepository.findActiveIntervals(eq(1L), any())).thenReturn(List.of(interval));
+        index.watch(1L);
+
+        assertEquals(Optional.empty(), index.findConflict(1L, DAY.plusHours(12), DAY.plusHours(14)));
+        assertEquals(Optional.empty(), index.findConflict(1L, DAY.plusHours(8), DAY.plusHours(10)));
+    }
+
+    @Test
+    void committedChangesUpdateLoadedItem() {
+        when(bookingRepository.findActiveIntervals(eq(1L), any())).thenReturn(List.of());
+        index.watch(1L);
+
+        index.onBookingChanged(new BookingChangedEvent(5L, 1L, 2L, DAY.plusHours(10), DAY.plusHours(12),
+                BookingStatus.WAITING));
+        assertEquals(Optional.of(5L), index.findConflict(1L, DAY.plusHours(11), DAY.plusHours(13)));
+
+        index.onBookingChanged(new BookingChangedEvent(5L, 1L, 2L, DAY.plusHours(10), DAY.plusHours(12),
+                BookingStatus.REJECTED));
+        assertEquals(Optional.empty(), index.findConflict(1L, DAY.plusHours(11), DAY.plusHours(13)));
+    }
+
+    @Test
+    void evictedItemIsReloadedOnNextWatch() {
+        BookingInterval interval = interval(3L, DAY.plusHours(10), DAY.plusHours(12));
+        when(bookingRepository.findActiveIntervals(eq(1L), any())).thenReturn(List.of(interval), List.of());
+        index.watch(1L);
+
+        index.evict(1L);
+        assertEquals(Optional.empty(), index.findConflict(1L, DAY.plusHours(11), DAY.plusHours(13)));
+
+        index.watch(1L);
+        assertEquals(Optional.empty(), index.findConflict(1L, DAY.plusHours(11), DAY.plusHours(13)));
+        verify(bookingRepository, times(2)).findActiveIntervals(eq(1L), any());
+    }
+
+    private static BookingInterval interval(Long id, LocalDateTime start, LocalDateTime end) {
+        BookingInterval interval = mock(BookingInterval.class);
+        when(interval.getId()).thenReturn(id);
+        when(interval.getStart()).thenReturn(start);
+        when(interval.getEnd()).thenReturn(end);
+        return interval;
+    }
+}
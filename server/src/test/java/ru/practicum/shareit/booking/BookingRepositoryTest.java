@@ -0,0 +1,208 @@
+package ru.practicum.shareit.booking;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ContextConfiguration;
+import ru.practicum.shareit.ShareItServer;
+import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingCursor;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.item.dao.CommentRepository;
+import ru.practicum.shareit.item.model.Comment;
+import ru.practicum.shareit.item.model.CommentView;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.User;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сколько SQL-запросов стоит чтение бронирований вместе со всем, что попадает в BookingDto.
+ * Сравнение памяти с прежним путем через сущности - в benchmark/booking_views.sql.
+ * Схема создается Hibernate в H2, schema.sql с расширениями Postgres не выполняется.
+ */
+@DataJpaTest(properties = {
+        "spring.sql.init.mode=never",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@ContextConfiguration(classes = ShareItServer.class)
+class BookingRepositoryTest {
+    private static final int BOOKINGS = 50;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private BookingRepository repository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    private final BookingMapper mapper = Mappers.getMapper(BookingMapper.class);
+
+    private Statistics statistics;
+    private User booker;
+    private Long ownerId;
+    private Long firstBookingId;
+
+    @BeforeEach
+    void setUp() {
+        User owner = em.persist(new User(null, "owner", "owner@mail.ru"));
+        booker = em.persist(new User(null, "booker", "booker@mail.ru"));
+        ownerId = owner.getId();
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        for (int i = 0; i < BOOKINGS; i++) {
+            Item item = em.persist(new Item(null, owner, "item " + i, "description", true, null, null));
+            em.persist(new Comment(null, "comment " + i, booker, item, Instant.now()));
+            Booking booking = em.persist(new Booking(null, start.plusDays(i), start.plusDays(i).plusHours(1),
+                    item, booker, ownerId, BookingStatus.WAITING, null));
+            if (firstBookingId == null) {
+                firstBookingId = booking.getId();
+            }
+        }
+        em.flush();
+        em.clear();
+
+        statistics = em.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void bookerPageStatementsDoNotDependOnPageSize() {
+        long small = statementsFor(BookingQuery.builder().bookerId(booker.getId()).size(2).build());
+        long large = statementsFor(BookingQuery.builder().bookerId(booker.getId()).size(BOOKINGS).build());
+
+        assertEquals(2, small);  // строки страницы, затем отзывы всех вещей страницы
+        assertEquals(small, large);
+    }
+
+    @Test
+    void ownerPageStatementsDoNotDependOnPageSize() {
+        long small = statementsFor(BookingQuery.builder().ownerId(ownerId).size(2).build());
+        long large = statementsFor(BookingQuery.builder().ownerId(ownerId).size(BOOKINGS).build());
+
+        assertEquals(2, small);
+        assertEquals(small, large);
+    }
+
+    @Test
+    void pageDoesNotLoadEntities() {
+        statementsFor(BookingQuery.builder().ownerId(ownerId).states(Set.of(FilterBookingState.FUTURE))
+                .now(LocalDateTime.now()).size(BOOKINGS).build());
+
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+    }
+
+    @Test
+    void findViewsCombinesStatesWithOr() {
+        LocalDateTime now = LocalDateTime.now();
+        Long past = bookingAt(now.minusDays(3), now.minusDays(2), BookingStatus.APPROVED);
+        Long current = bookingAt(now.minusHours(1), now.plusHours(1), BookingStatus.APPROVED);
+        Long rejected = bookingAt(now.plusDays(BOOKINGS + 1), now.plusDays(BOOKINGS + 2), BookingStatus.REJECTED);
+
+        assertEquals(List.of(past, current), ids(BookingQuery.builder().ownerId(ownerId).now(now)
+                .states(Set.of(FilterBookingState.PAST, FilterBookingState.CURRENT)).size(BOOKINGS)));
+        assertEquals(List.of(current, rejected), ids(BookingQuery.builder().bookerId(booker.getId()).now(now)
+                .states(Set.of(FilterBookingState.CURRENT, FilterBookingState.REJECTED)).size(BOOKINGS)));
+        assertEquals(BOOKINGS + 1, ids(BookingQuery.builder().ownerId(ownerId).now(now)
+                .states(Set.of(FilterBookingState.WAITING, FilterBookingState.REJECTED)).size(BOOKINGS * 2)).size());
+    }
+
+    @Test
+    void findViewsFiltersByItemAndWindowAndContinuesAfterCursor() {
+        List<Long> all = ids(BookingQuery.builder().ownerId(ownerId).size(BOOKINGS));
+        Booking third = em.find(Booking.class, all.get(2));
+        Booking sixth = em.find(Booking.class, all.get(5));
+
+        assertEquals(List.of(third.getId()), ids(BookingQuery.builder().ownerId(ownerId)
+                .itemId(third.getItem().getId()).size(BOOKINGS)));
+        assertEquals(all.subList(2, 6), ids(BookingQuery.builder().bookerId(booker.getId())
+                .rangeStart(third.getStart().plusMinutes(30)).rangeEnd(sixth.getEnd()).size(BOOKINGS)));
+        assertEquals(all.subList(3, 5), ids(BookingQuery.builder().ownerId(ownerId)
+                .after(new BookingCursor(third.getStart(), third.getId())).size(2)));
+        assertEquals(all.subList(4, 6), ids(BookingQuery.builder().ownerId(ownerId).from(4).size(2)));
+    }
+
+    @Test
+    void findViewsDoesNotReturnOtherUsersBookings() {
+        assertTrue(ids(BookingQuery.builder().ownerId(booker.getId()).size(BOOKINGS)).isEmpty());
+        assertTrue(ids(BookingQuery.builder().bookerId(ownerId).size(BOOKINGS)).isEmpty());
+    }
+
+    @Test
+    void findByIdLoadsItemAndBookerInOneStatement() {
+        Booking booking = repository.findById(firstBookingId).orElseThrow();
+
+        assertEquals(booker.getId(), booking.getBooker().getId());
+        assertEquals(ownerId, booking.getItem().getOwner().getId());
+        assertEquals("booker", booking.getBooker().getName());
+        assertEquals("item 0", booking.getItem().getName());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void existsPastBookingOnlyAfterItEnds() {
+        LocalDateTime now = LocalDateTime.now();
+        Long pastId = bookingAt(now.minusDays(3), now.minusDays(2), BookingStatus.APPROVED);
+        Long pastItemId = em.find(Booking.class, pastId).getItem().getId();
+        Long futureItemId = em.find(Booking.class, firstBookingId).getItem().getId();
+
+        assertTrue(repository.existsEndedBefore(pastItemId, booker.getId(), now));
+        assertFalse(repository.existsEndedBefore(futureItemId, booker.getId(), now));
+        assertFalse(repository.existsEndedBefore(pastItemId, ownerId, now));
+    }
+
+    private Long bookingAt(LocalDateTime start, LocalDateTime end, BookingStatus status) {
+        User owner = em.find(User.class, ownerId);
+        Item item = em.persist(new Item(null, owner, "extra", "description", true, null, null));
+        return em.persistAndGetId(new Booking(null, start, end, item, em.find(User.class, booker.getId()), ownerId,
+                status, null), Long.class);
+    }
+
+    private List<Long> ids(BookingQuery.BookingQueryBuilder query) {
+        return repository.findViews(query.build()).stream().map(BookingView::getId).toList();
+    }
+
+    private long statementsFor(BookingQuery query) {
+        em.clear();
+        statistics.clear();
+        List<BookingDto> dtos = mapper.toDto(withItemComments(repository.findViews(query)));
+
+        assertEquals(query.getSize(), dtos.size());
+        dtos.forEach(dto -> {
+            assertEquals("booker", dto.getBooker().getName());
+            assertEquals(1, dto.getItem().getComments().size());
+            assertEquals("booker", dto.getItem().getComments().get(0).getAuthorName());
+        });
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * То же, что BookingService делает со страницей: отзывы всех вещей одним запросом.
+     */
+    private List<BookingView> withItemComments(List<BookingView> bookings) {
+        Map<Long, List<CommentView>> comments = bookings.isEmpty() ? Map.of() : commentRepository
+                .findViewsByItemIds(bookings.stream().map(BookingView::getItemId).collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.groupingBy(CommentView::getItemId));
+        return bookings.stream()
+                .map(booking -> booking.withItemComments(comments.getOrDefault(booking.getItemId(), List.of())))
+                .toList();
+    }
+}
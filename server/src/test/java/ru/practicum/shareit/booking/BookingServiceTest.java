@@ -1,21 +1,38 @@
 package ru.practicum.shareit.booking;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mapstruct.factory.Mappers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.test.context.ContextConfiguration;
 import ru.practicum.shareit.ShareItServer;
 import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.booking.dto.BookingArchiveRow;
+import ru.practicum.shareit.booking.dto.BookingCursor;
+import ru.practicum.shareit.booking.dto.BookingDecisionRequest;
+import ru.practicum.shareit.booking.dto.BookingDecisionResult;
+import ru.practicum.shareit.booking.dto.BookingDecisionState;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingFilter;
+import ru.practicum.shareit.booking.dto.BookingInsertedRow;
 import ru.practicum.shareit.booking.dto.CreateBookingRequest;
 import ru.practicum.shareit.exception.BadRequest;
+import ru.practicum.shareit.exception.ConflictException;
 import ru.practicum.shareit.exception.ForbiddenException;
 import ru.practicum.shareit.item.ItemMapper;
+import ru.practicum.shareit.item.dto.CommentDto;
 import ru.practicum.shareit.item.model.Comment;
+import ru.practicum.shareit.item.model.CommentView;
 import ru.practicum.shareit.request.ItemRequestService;
 import ru.practicum.shareit.request.model.ItemRequest;
 import ru.practicum.shareit.user.User;
@@ -26,14 +43,27 @@ import ru.practicum.shareit.user.UserMapper;
 import ru.practicum.shareit.user.UserService;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ContextConfiguration(classes = ShareItServer.class)
@@ -48,6 +78,20 @@ class BookingServiceTest {
     private ItemRequestService itemRequestService;
     @Mock
     private UserService userService;
+    @Mock
+    private BookingIntervalIndex intervalIndex;
+    @Mock
+    private BookingCompletionIndex completionIndex;
+    @Mock
+    private BookingArchive archive;
+    @Mock
+    private BookingExporter exporter;
+    @Spy
+    private BookingProperties properties = new BookingProperties();
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     @InjectMocks
     private BookingService bookingService;
@@ -66,11 +110,11 @@ class BookingServiceTest {
     private Item item = new Item(1L, user, "Дрель", "Простая дрель", true, null, new ItemRequest(1));
     private final Item itemNotAvailable = new Item(1L, user, "Дрель", "Непростая дрель", false, null, null);
     private Booking booking = new Booking(1L, LocalDateTime.now().minusDays(1), LocalDateTime.now().plusDays(1),
-            item, user2, BookingStatus.WAITING);
+            item, user2, user.getId(), BookingStatus.WAITING, 0L);
     private Booking bookingApprove = new Booking(2L, LocalDateTime.now(), LocalDateTime.now().plusDays(1),
-            item, user2, BookingStatus.APPROVED);
+            item, user2, user.getId(), BookingStatus.APPROVED, 0L);
     private Booking bookingReject = new Booking(3L, LocalDateTime.now(), LocalDateTime.now().plusDays(1),
-            item, user2, BookingStatus.REJECTED);
+            item, user2, user.getId(), BookingStatus.REJECTED, 0L);
 
     @Test
     void getBookingByIdTest() throws ForbiddenException, NotFoundException {
@@ -87,10 +131,74 @@ class BookingServiceTest {
 
     @Test
     void createBookingTest() throws NotFoundException {
+        when(userService.getById(anyLong()))
+                .thenReturn(user2);
+        when(itemService.getById(any(Long.class)))
+                .thenReturn(item);
+        when(bookingRepository.insertIfFree(any(), any(), any(), any(), any(), any()))
+                .thenReturn(Optional.of(1L));
+        assertDoesNotThrow(() -> bookingService.createBooking(new CreateBookingRequest(
+                1L, LocalDateTime.now().plusMinutes(1), LocalDateTime.now().plusDays(2)), 2));
+        verify(bookingRepository).insertIfFree(eq(item.getId()), eq(user2.getId()), eq(user.getId()),
+                any(), any(), any());
+        verify(itemService).refreshBookingDates(item);
+        verify(eventPublisher).publishEvent(any(BookingChangedEvent.class));
+    }
+
+    @Test
+    void createBookingOverlappingInDatabaseNamesConflictingBooking() throws NotFoundException {
+        when(userService.getById(anyLong()))
+                .thenReturn(user2);
+        when(itemService.getById(any(Long.class)))
+                .thenReturn(item);
+        when(bookingRepository.insertIfFree(any(), any(), any(), any(), any(), any()))
+                .thenReturn(Optional.empty());
+        when(bookingRepository.findOverlapping(any(), any(), any()))
+                .thenReturn(Optional.of(7L));
+
+        ConflictException e = assertThrows(ConflictException.class, () -> bookingService.createBooking(
+                new CreateBookingRequest(1L, LocalDateTime.now().plusMinutes(1), LocalDateTime.now().plusDays(2)), 2));
+
+        assertTrue(e.getMessage().contains("id = 7"));
+        verify(intervalIndex).watch(item.getId());
+        verify(itemService, never()).refreshBookingDates(any());
+    }
+
+    @Test
+    void createBookingOverlappingInIndexIsConfirmedInDatabaseWithoutInsert() throws NotFoundException {
+        when(userService.getById(anyLong()))
+                .thenReturn(user2);
+        when(itemService.getById(any(Long.class)))
+                .thenReturn(item);
+        when(intervalIndex.findConflict(any(), any(), any()))
+                .thenReturn(Optional.of(7L));
+        when(bookingRepository.findOverlapping(any(), any(), any()))
+                .thenReturn(Optional.of(7L));
+
+        ConflictException exception = assertThrows(ConflictException.class, () -> bookingService.createBooking(
+                new CreateBookingRequest(1L, LocalDateTime.now().plusMinutes(1), LocalDateTime.now().plusDays(2)), 2));
+        assertTrue(exception.getMessage().endsWith("конфликт с бронированием с id = 7"));
+        verify(bookingRepository, never()).insertIfFree(any(), any(), any(), any(), any(), any());
+        verify(intervalIndex, never()).evict(any());
+    }
+
+    @Test
+    void createBookingWithStaleIndexConflictEvictsItemAndInserts() throws NotFoundException {
+        when(userService.getById(anyLong()))
+                .thenReturn(user2);
         when(itemService.getById(any(Long.class)))
                 .thenReturn(item);
+        when(intervalIndex.findConflict(any(), any(), any()))
+                .thenReturn(Optional.of(7L));
+        when(bookingRepository.findOverlapping(any(), any(), any()))
+                .thenReturn(Optional.empty());
+        when(bookingRepository.insertIfFree(any(), any(), any(), any(), any(), any()))
+                .thenReturn(Optional.of(1L));
+
         assertDoesNotThrow(() -> bookingService.createBooking(new CreateBookingRequest(
                 1L, LocalDateTime.now().plusMinutes(1), LocalDateTime.now().plusDays(2)), 2));
+        verify(intervalIndex).evict(item.getId());
+        verify(eventPublisher).publishEvent(any(BookingChangedEvent.class));
     }
 
     @Test
@@ -123,9 +231,39 @@ class BookingServiceTest {
 
     @Test
     void updateBookingTest() {
+        when(bookingRepository.decideIfWaiting(booking.getId(), user.getId(), BookingStatus.APPROVED))
+                .thenReturn(1);
         when(bookingRepository.findById(anyLong()))
                 .thenReturn(Optional.ofNullable(booking));
         assertDoesNotThrow(() -> bookingService.approveBooking(booking.getId(), true, user.getId()));
+        verify(itemService).refreshBookingDates(item);
+        assertEquals(1, meterRegistry.counter(BookingService.TRANSITIONS_METRIC,
+                "outcome", BookingService.TRANSITION_APPLIED).count());
+    }
+
+    @Test
+    void repeatedDecisionReturnsBookingWithoutChanges() throws Exception {
+        when(bookingRepository.findById(anyLong()))
+                .thenReturn(Optional.ofNullable(bookingApprove));
+
+        Booking result = bookingService.approveBooking(bookingApprove.getId(), true, user.getId());
+
+        assertEquals(BookingStatus.APPROVED, result.getStatus());
+        verify(itemService, never()).refreshBookingDates(any());
+        verify(eventPublisher, never()).publishEvent(any());
+        assertEquals(1, meterRegistry.counter(BookingService.TRANSITIONS_METRIC,
+                "outcome", BookingService.TRANSITION_REPEATED).count());
+    }
+
+    @Test
+    void oppositeDecisionOnDecidedBookingThrowsConflict() {
+        when(bookingRepository.findById(anyLong()))
+                .thenReturn(Optional.ofNullable(bookingReject));
+
+        assertThrows(ConflictException.class,
+                () -> bookingService.approveBooking(bookingReject.getId(), true, user.getId()));
+        assertEquals(1, meterRegistry.counter(BookingService.TRANSITIONS_METRIC,
+                "outcome", BookingService.TRANSITION_CONFLICT).count());
     }
 
     @Test
@@ -137,123 +275,359 @@ class BookingServiceTest {
     }
 
     @Test
-    void getAllBookingByUserIdTest() throws NotFoundException {
+    void getAllBookingByUserIdTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllByBookerOrderByStartAsc(any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getUserBookings("ALL", user2.getId()).size());
+                bookingService.getUserBookings(BookingFilter.of("ALL"), user2.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByUserIdCURRENTTest() throws NotFoundException {
+    void getAllBookingByUserIdCURRENTTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllByBookerAndStartBeforeAndEndAfterOrderByStartAsc(any(), any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getUserBookings("CURRENT", user2.getId()).size());
+                bookingService.getUserBookings(BookingFilter.of("CURRENT"), user2.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByUserIdPASTTest() throws NotFoundException {
+    void getAllBookingByUserIdPASTTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllByBookerAndEndBeforeOrderByStartAsc(any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getUserBookings("PAST", user2.getId()).size());
+                bookingService.getUserBookings(BookingFilter.of("PAST"), user2.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByUserIdFUTURETest() throws NotFoundException {
+    void getAllBookingByUserIdFUTURETest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllByBookerAndStartAfterOrderByStartAsc(any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getUserBookings("FUTURE", user2.getId()).size());
+                bookingService.getUserBookings(BookingFilter.of("FUTURE"), user2.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByUserIdWAITINGTest() throws NotFoundException {
+    void getAllBookingByUserIdWAITINGTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllByBookerAndStatusOrderByStartAsc(any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getUserBookings("WAITING", user2.getId()).size());
+                bookingService.getUserBookings(BookingFilter.of("WAITING"), user2.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByUserIdREJECTEDTest() throws NotFoundException {
+    void getAllBookingByUserIdREJECTEDTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllByBookerAndStatusOrderByStartAsc(any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getUserBookings("REJECTED", user2.getId()).size());
+                bookingService.getUserBookings(BookingFilter.of("REJECTED"), user2.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByOwnerIdTest() throws NotFoundException {
+    void getAllBookingByOwnerIdTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllSortedOwnerBookings(any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getOwnerBookings("ALL", user.getId()).size());
+                bookingService.getOwnerBookings(BookingFilter.of("ALL"), user.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByOwnerIdCURRENTTest() throws NotFoundException {
+    void getAllBookingByOwnerIdCURRENTTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllCurrentByOwnerOrderByStartAsc(any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getOwnerBookings("CURRENT", user.getId()).size());
+                bookingService.getOwnerBookings(BookingFilter.of("CURRENT"), user.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByOwnerIdPASTTest() throws NotFoundException {
+    void getAllBookingByOwnerIdPASTTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllPastByOwnerOrderByStartAsc(any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getOwnerBookings("PAST", user.getId()).size());
+                bookingService.getOwnerBookings(BookingFilter.of("PAST"), user.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByOwnerIdFUTURETest() throws NotFoundException {
+    void getAllBookingByOwnerIdFUTURETest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllSortedOwnerBookings(any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getOwnerBookings("FUTURE", user.getId()).size());
+                bookingService.getOwnerBookings(BookingFilter.of("FUTURE"), user.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByOwnerIdWAITINGTest() throws NotFoundException {
+    void getAllBookingByOwnerIdWAITINGTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllByOwnerAndStatusOrderByStartAsc(any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getOwnerBookings("WAITING", user.getId()).size());
+                bookingService.getOwnerBookings(BookingFilter.of("WAITING"), user.getId(), 0, 10).size());
     }
 
     @Test
-    void getAllBookingByOwnerIdREJECTEDTest() throws NotFoundException {
+    void getAllBookingByOwnerIdREJECTEDTest() throws NotFoundException, BadRequest {
         when(userService.getById(anyLong()))
                 .thenReturn(new User());
-        when(bookingRepository.findAllByOwnerAndStatusOrderByStartAsc(any(), any()))
-                .thenReturn(List.of(booking, bookingApprove, bookingReject));
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove), view(bookingReject)));
         assertEquals(3,
-                bookingService.getOwnerBookings("REJECTED", user.getId()).size());
+                bookingService.getOwnerBookings(BookingFilter.of("REJECTED"), user.getId(), 0, 10).size());
+    }
+
+    @Test
+    void getUserBookingsPageReturnsCursorOfLastBookingOnFullPage() throws Exception {
+        when(userService.getById(anyLong()))
+                .thenReturn(user2);
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(bookingApprove)));
+
+        BookingPage page = bookingService.getUserBookingsPage(BookingFilter.of("ALL"), user2.getId(), null, 2);
+
+        BookingCursor next = BookingCursor.decode(page.getNextCursor());
+        assertEquals(bookingApprove.getStart(), next.getStart());
+        assertEquals(bookingApprove.getId(), next.getId());
+    }
+
+    @Test
+    void getOwnerBookingsPageContinuesAfterCursorAndStopsOnShortPage() throws Exception {
+        String cursor = new BookingCursor(booking.getStart(), booking.getId()).encode();
+        when(userService.getById(anyLong()))
+                .thenReturn(user);
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(bookingApprove)));
+
+        BookingPage page = bookingService.getOwnerBookingsPage(BookingFilter.of("WAITING"), user.getId(), cursor, 2);
+
+        assertEquals(1, page.getBookings().size());
+        assertNull(page.getNextCursor());
+        ArgumentCaptor<BookingQuery> query = ArgumentCaptor.forClass(BookingQuery.class);
+        verify(bookingRepository).findViews(query.capture());
+        assertEquals(user.getId(), query.getValue().getOwnerId());
+        assertNull(query.getValue().getBookerId());
+        assertEquals(Set.of(FilterBookingState.WAITING), query.getValue().getStates());
+        assertEquals(booking.getStart(), query.getValue().getAfter().getStart());
+        assertEquals(booking.getId(), query.getValue().getAfter().getId());
+        assertEquals(2, query.getValue().getSize());
+    }
+
+    @Test
+    void getUserBookingsComposesSeveralStatesItemAndWindowIntoOneQuery() throws Exception {
+        LocalDateTime rangeStart = LocalDateTime.now();
+        LocalDateTime rangeEnd = rangeStart.plusDays(7);
+        when(userService.getById(anyLong()))
+                .thenReturn(user2);
+
+        bookingService.getUserBookings(new BookingFilter(List.of("WAITING", "FUTURE"), item.getId(), rangeStart,
+                rangeEnd), user2.getId(), 5, 10);
+
+        ArgumentCaptor<BookingQuery> query = ArgumentCaptor.forClass(BookingQuery.class);
+        verify(bookingRepository).findViews(query.capture());
+        assertEquals(user2.getId(), query.getValue().getBookerId());
+        assertNull(query.getValue().getOwnerId());
+        assertEquals(Set.of(FilterBookingState.WAITING, FilterBookingState.FUTURE), query.getValue().getStates());
+        assertEquals(item.getId(), query.getValue().getItemId());
+        assertEquals(rangeStart, query.getValue().getRangeStart());
+        assertEquals(rangeEnd, query.getValue().getRangeEnd());
+        assertSame(BookingCursor.FIRST, query.getValue().getAfter());
+        assertEquals(5, query.getValue().getFrom());
+    }
+
+    @Test
+    void getUserBookingsWithUnknownStateThrowsBadRequest() {
+        assertThrows(BadRequest.class, () -> bookingService.getUserBookings(BookingFilter.of("WAITING", "SOMETIME"),
+                user2.getId(), 0, 10));
+        verify(bookingRepository, never()).findViews(any());
+    }
+
+    @Test
+    void getOwnerBookingsWithInvertedWindowThrowsBadRequest() {
+        LocalDateTime rangeStart = LocalDateTime.now();
+        BookingFilter filter = new BookingFilter(List.of("ALL"), null, rangeStart, rangeStart.minusDays(1));
+
+        assertThrows(BadRequest.class, () -> bookingService.getOwnerBookings(filter, user.getId(), 0, 10));
+        verify(bookingRepository, never()).findViews(any());
+    }
+
+    @Test
+    void getUserBookingsAttachesItemCommentsLoadedOnceForPage() throws Exception {
+        Item otherItem = new Item(2L, user, "Пила", "Ручная пила", true, null, null);
+        Booking otherBooking = new Booking(4L, LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(3),
+                otherItem, user2, user.getId(), BookingStatus.WAITING, 0L);
+        CommentView comment = new CommentView(item.getId(), 1L, "Хорошая дрель", "user2", Instant.now());
+        when(userService.getById(anyLong()))
+                .thenReturn(user2);
+        when(bookingRepository.findViews(any()))
+                .thenReturn(List.of(view(booking), view(otherBooking)));
+        when(itemService.getCommentViews(Set.of(item.getId(), otherItem.getId())))
+                .thenReturn(Map.of(item.getId(), List.of(comment)));
+
+        List<BookingDto> bookings = bookingMapper.toDto(
+                bookingService.getUserBookings(BookingFilter.of("ALL"), user2.getId(), 0, 10));
+
+        assertEquals(List.of("Хорошая дрель"),
+                bookings.get(0).getItem().getComments().stream().map(CommentDto::getText).toList());
+        assertTrue(bookings.get(1).getItem().getComments().isEmpty());
+        assertEquals(user2.getEmail(), bookings.get(0).getBooker().getEmail());
+        assertEquals(otherItem.getName(), bookings.get(1).getItem().getName());
+        verify(itemService).getCommentViews(any());
+    }
+
+    @Test
+    void getUserBookingsPageWithBrokenCursorThrowsBadRequest() {
+        assertThrows(BadRequest.class, () -> bookingService.getUserBookingsPage(BookingFilter.of("ALL"), 1, "not a cursor", 10));
+    }
+
+    @Test
+    void createBookingsBestEffortInsertsValidBookingsAndReportsTheRest() throws Exception {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        Item otherItem = new Item(2L, user, "Пила", "Пила", true, null, null);
+        when(userService.getById(anyLong()))
+                .thenReturn(user2);
+        when(itemService.getByIds(any()))
+                .thenReturn(List.of(item, otherItem));
+        BookingInsertedRow inserted = mock(BookingInsertedRow.class);
+        when(inserted.getPosition()).thenReturn(1);
+        when(inserted.getId()).thenReturn(10L);
+        when(bookingRepository.insertAllIfFree(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(inserted));
+        when(bookingRepository.findOverlapping(eq(2L), any(), any()))
+                .thenReturn(Optional.of(7L));
+
+        List<BookingCreation> results = bookingService.createBookings(List.of(
+                new CreateBookingRequest(1L, start, start.plusHours(2)),
+                new CreateBookingRequest(1L, start.plusHours(1), start.plusHours(3)),
+                new CreateBookingRequest(1L, start.plusHours(3), start),
+                new CreateBookingRequest(2L, start, start.plusHours(1))), BookingBatchMode.BEST_EFFORT, user2.getId());
+
+        assertEquals(List.of(BookingCreation.Outcome.CREATED, BookingCreation.Outcome.CONFLICT,
+                        BookingCreation.Outcome.INVALID, BookingCreation.Outcome.CONFLICT),
+                results.stream().map(BookingCreation::getOutcome).toList());
+        assertEquals(10L, results.get(0).getBooking().getId());
+        assertTrue(results.get(3).getError().contains("id = 7"));
+        verify(itemService).refreshAllBookingDates(Set.of(item.getId()));
+    }
+
+    @Test
+    void createBookingsAllOrNothingRejectsBatchWithOverlapBeforeInsert() throws NotFoundException {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        when(userService.getById(anyLong()))
+                .thenReturn(user2);
+        when(itemService.getByIds(any()))
+                .thenReturn(List.of(item));
+
+        assertThrows(ConflictException.class, () -> bookingService.createBookings(List.of(
+                new CreateBookingRequest(1L, start, start.plusHours(2)),
+                new CreateBookingRequest(1L, start.plusHours(1), start.plusHours(3))),
+                BookingBatchMode.ALL_OR_NOTHING, user2.getId()));
+        verify(bookingRepository, never()).insertAllIfFree(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void approveBookingsReportsOutcomePerBookingInRequestOrder() throws BadRequest {
+        BookingDecisionState waiting = decisionState(1L, user.getId(), BookingStatus.WAITING);
+        BookingDecisionState approved = decisionState(2L, user.getId(), BookingStatus.APPROVED);
+        BookingDecisionState rejected = decisionState(3L, user.getId(), BookingStatus.REJECTED);
+        BookingDecisionState foreign = decisionState(4L, user2.getId(), BookingStatus.WAITING);
+        when(bookingRepository.findDecisionStates(any()))
+                .thenReturn(List.of(waiting, approved, rejected, foreign));
+        when(bookingRepository.decideAllIfWaiting(user.getId(), new Long[]{1L}, new String[]{"APPROVED"}))
+                .thenReturn(List.of(1L));
+
+        List<BookingDecisionResult> results = bookingService.approveBookings(List.of(
+                new BookingDecisionRequest(1L, true),
+                new BookingDecisionRequest(2L, true),
+                new BookingDecisionRequest(3L, true),
+                new BookingDecisionRequest(4L, true),
+                new BookingDecisionRequest(5L, true)), user.getId());
+
+        assertEquals(List.of(BookingDecisionResult.Outcome.APPLIED, BookingDecisionResult.Outcome.REPEATED,
+                        BookingDecisionResult.Outcome.CONFLICT, BookingDecisionResult.Outcome.FORBIDDEN,
+                        BookingDecisionResult.Outcome.NOT_FOUND),
+                results.stream().map(BookingDecisionResult::getOutcome).toList());
+        verify(itemService).refreshAllBookingDates(Set.of(item.getId()));
+        verify(eventPublisher).publishEvent(any(BookingChangedEvent.class));
+    }
+
+    @Test
+    void approveBookingsReportsLostRaceAsConflict() throws BadRequest {
+        BookingDecisionState waiting = decisionState(1L, user.getId(), BookingStatus.WAITING);
+        BookingDecisionState rejectedMeanwhile = mock(BookingDecisionState.class);
+        when(rejectedMeanwhile.getId()).thenReturn(1L);
+        when(rejectedMeanwhile.getStatus()).thenReturn(BookingStatus.REJECTED.name());
+        when(bookingRepository.findDecisionStates(any()))
+                .thenReturn(List.of(waiting), List.of(rejectedMeanwhile));
+        when(bookingRepository.decideAllIfWaiting(any(), any(), any()))
+                .thenReturn(List.of());
+
+        List<BookingDecisionResult> results = bookingService.approveBookings(
+                List.of(new BookingDecisionRequest(1L, true)), user.getId());
+
+        assertEquals(BookingDecisionResult.Outcome.CONFLICT, results.get(0).getOutcome());
+        assertEquals(BookingStatus.REJECTED, results.get(0).getStatus());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void createBookingsRejectsOversizedBatch() {
+        properties.setBatchMaxSize(2);
+        CreateBookingRequest request = new CreateBookingRequest();
+
+        assertThrows(BadRequest.class, () -> bookingService.createBookings(List.of(request, request, request),
+                BookingBatchMode.BEST_EFFORT, 1L));
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    void approveBookingsRejectsEmptyAndOversizedBatches() {
+        List<BookingDecisionRequest> decisions = LongStream.rangeClosed(1, properties.getBatchMaxSize() + 1)
+                .mapToObj(id -> new BookingDecisionRequest(id, true))
+                .toList();
+
+        assertThrows(BadRequest.class, () -> bookingService.approveBookings(List.of(), 1L));
+        assertThrows(BadRequest.class, () -> bookingService.approveBookings(decisions, 1L));
+        verify(bookingRepository, never()).findDecisionStates(any());
+    }
+
+    @Test
+    void approveBookingsWithDuplicateIdThrowsBadRequest() {
+        assertThrows(BadRequest.class, () -> bookingService.approveBookings(List.of(
+                new BookingDecisionRequest(1L, true), new BookingDecisionRequest(1L, false)), user.getId()));
+    }
+
+    private BookingDecisionState decisionState(Long id, Long ownerId, BookingStatus status) {
+        BookingDecisionState state = mock(BookingDecisionState.class);
+        when(state.getId()).thenReturn(id);
+        lenient().when(state.getOwnerId()).thenReturn(ownerId);
+        lenient().when(state.getItemId()).thenReturn(item.getId());
+        lenient().when(state.getStatus()).thenReturn(status.name());
+        return state;
+    }
+
+    private BookingView view(Booking booking) {
+        return new BookingView(booking.getId(), booking.getStart(), booking.getEnd(), booking.getStatus(),
+                booking.getItem().getId(), booking.getItem().getName(), booking.getItem().getDescription(),
+                booking.getItem().isAvailable(), null, null,
+                booking.getBooker().getId(), booking.getBooker().getName(), booking.getBooker().getEmail());
     }
 
     @Test
@@ -271,13 +645,98 @@ class BookingServiceTest {
         assertDoesNotThrow(() -> bookingService.existPastApprovedItemBookingByUser(new Item(), new User()));
     }
 
+    @Test
+    void expireStaleBookingsPublishesEventsAndCountsExpired() {
+        BookingDecisionState first = decisionState(1L, user.getId(), BookingStatus.EXPIRED);
+        BookingDecisionState second = decisionState(2L, user.getId(), BookingStatus.EXPIRED);
+        when(bookingRepository.expireWaitingStartedBefore(any(), eq(500))).thenReturn(List.of(first, second));
+
+        assertEquals(2, bookingService.expireStaleBookings(500));
+
+        ArgumentCaptor<BookingChangedEvent> events = ArgumentCaptor.forClass(BookingChangedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(List.of(1L, 2L), events.getAllValues().stream().map(BookingChangedEvent::getBookingId).toList());
+        assertTrue(events.getAllValues().stream().noneMatch(BookingChangedEvent::isActive));
+        assertEquals(2.0, meterRegistry.counter(BookingService.EXPIRED_METRIC).count());
+    }
+
+    @Test
+    void maintainPartitionsCreatesPartitionsFromCurrentMonth() {
+        when(bookingRepository.createPartitions(any(), anyInt())).thenReturn(2);
+
+        assertEquals(2, bookingService.maintainPartitions(12));
+        verify(bookingRepository).createPartitions(LocalDate.now().withDayOfMonth(1), 13);
+        verify(bookingRepository).deletePeriodsEndedBefore(any());
+    }
+
+    @Test
+    void pastBookingsMergeDatabaseAndArchive() throws Exception {
+        LocalDateTime longAgo = LocalDateTime.now().minusYears(2);
+        ArchivedBooking archived = new ArchivedBooking(10L, longAgo, longAgo.plusDays(1), BookingStatus.APPROVED,
+                item.getId(), user2.getId(), user.getId());
+        // копия строки базы, оставшаяся в архиве после сбоя
+        ArchivedBooking stale = new ArchivedBooking(booking.getId(), booking.getStart(), booking.getEnd(),
+                BookingStatus.REJECTED, item.getId(), user2.getId(), user.getId());
+        when(userService.getById(anyLong())).thenReturn(user2);
+        when(archive.mayContain(any())).thenReturn(true);
+        when(bookingRepository.findViews(any())).thenReturn(List.of(view(booking)));
+        when(archive.find(any())).thenReturn(List.of(archived, stale));
+        when(itemService.getByIds(Set.of(item.getId()))).thenReturn(List.of(item));
+        when(userService.getByIds(Set.of(user2.getId()))).thenReturn(List.of(user2));
+
+        List<BookingView> page = bookingService.getUserBookings(BookingFilter.of("PAST"), user2.getId(), 1, 2);
+
+        assertEquals(List.of(booking.getId()), page.stream().map(BookingView::getId).toList());
+        assertEquals(BookingStatus.WAITING, page.get(0).getStatus());
+        ArgumentCaptor<BookingQuery> query = ArgumentCaptor.forClass(BookingQuery.class);
+        verify(bookingRepository).findViews(query.capture());
+        assertEquals(0, query.getValue().getFrom());
+        assertEquals(3, query.getValue().getSize());
+    }
+
+    @Test
+    void exportChecksUserBeforeStreaming() throws NotFoundException {
+        when(userService.getById(100L)).thenThrow(new NotFoundException("Не найден пользователь с id = %d", 100L));
+
+        assertThrows(NotFoundException.class,
+                () -> bookingService.exportUserBookings(100L, BookingExportFormat.CSV));
+        verifyNoInteractions(exporter);
+    }
+
+    @Test
+    void archiveEndedBookingsWritesSegmentBeforeDeletingRows() {
+        LocalDateTime endedBefore = LocalDateTime.now().minusYears(1);
+        BookingArchiveRow row = mock(BookingArchiveRow.class);
+        when(row.getId()).thenReturn(7L);
+        when(row.getStart()).thenReturn(endedBefore.minusDays(3));
+        when(row.getEnd()).thenReturn(endedBefore.minusDays(2));
+        when(row.getStatus()).thenReturn(BookingStatus.APPROVED.name());
+        when(bookingRepository.tryLockArchive()).thenReturn(true);
+        when(bookingRepository.lockEndedBefore(endedBefore, 100)).thenReturn(List.of(row));
+
+        assertEquals(1, bookingService.archiveEndedBookings(endedBefore, 100));
+
+        InOrder order = inOrder(archive, bookingRepository);
+        order.verify(archive).append(any());
+        order.verify(bookingRepository).deleteArchived(new Long[]{7L}, new LocalDateTime[]{endedBefore.minusDays(3)});
+    }
+
+    @Test
+    void archiveEndedBookingsSkipsRunWhenAnotherInstanceArchives() {
+        when(bookingRepository.tryLockArchive()).thenReturn(false);
+
+        assertEquals(0, bookingService.archiveEndedBookings(LocalDateTime.now(), 100));
+        verify(bookingRepository, never()).lockEndedBefore(any(), anyInt());
+        verify(archive, never()).append(any());
+    }
+
     @Test
     void getByIdTest() {
         when(bookingRepository.findById(anyLong()))
                 .thenReturn(Optional.of(new Booking(1L, LocalDateTime.now(), LocalDateTime.now(),
                         new Item(1L, user, "Дрель",
                                 "Непростая дрель", false, null, null),
-                        new User(1L, "a", "b"), BookingStatus.APPROVED)));
+                        new User(1L, "a", "b"), user.getId(), BookingStatus.APPROVED, 0L)));
         assertThrows(ForbiddenException.class, () -> bookingService.getById(1L, 2L));
     }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PairBloomFilterTest {
+
+    private static final int PAIRS = 10_000;
+
+    @Test
+    void containsEveryAddedPair() {
+        PairBloomFilter filter = new PairBloomFilter(PAIRS, 0.01);
+        for (long i = 0; i < PAIRS; i++) {
+            filter.add(i, i + 1);
+        }
+
+        for (long i = 0; i < PAIRS; i++) {
+            assertTrue(filter.mightContain(i, i + 1));
+        }
+        assertFalse(filter.isFull());
+    }
+
+    @Test
+    void falsePositivesStayNearConfiguredRate() {
+        PairBloomFilter filter = new PairBloomFilter(PAIRS, 0.01);
+        for (long i = 0; i < PAIRS; i++) {
+            filter.add(i, i + 1);
+        }
+
+        int falsePositives = 0;
+        for (long i = 0; i < PAIRS; i++) {
+            // те же числа в обратном порядке - другая пара
+            if (filter.mightContain(i + 1, i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < PAIRS * 0.02, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void overfilledFilterReportsFull() {
+        PairBloomFilter filter = new PairBloomFilter(10, 0.01);
+        for (long i = 0; i <= 10; i++) {
+            filter.add(i, i);
+        }
+
+        assertTrue(filter.isFull());
+    }
+}
@@ -0,0 +1,165 @@
+package ru.practicum.shareit.item;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.shareit.item.dao.InMemoryItemRepo;
+import ru.practicum.shareit.item.dao.ItemRepository;
+import ru.practicum.shareit.item.dto.ItemSearchHit;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemDocument;
+import ru.practicum.shareit.item.model.ItemSearchFacets;
+import ru.practicum.shareit.user.User;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryItemRepoTest {
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    private InMemoryItemRepo index;
+
+    @BeforeEach
+    void setUp() {
+        ItemSearchProperties properties = new ItemSearchProperties();
+        properties.setEngine(ItemSearchProperties.Engine.MEMORY);
+        properties.setIndexLoadChunkSize(2);
+        properties.setIndexLoadThreads(2);
+        index = new InMemoryItemRepo(itemRepository, properties);
+    }
+
+    @Test
+    void rebuildLoadsAllChunksAndBecomesReady() {
+        when(itemRepository.findMaxId()).thenReturn(5L);
+        when(itemRepository.findDocumentsByIdRange(anyLong(), anyLong()))
+                .thenAnswer(invocation -> {
+                    long from = invocation.getArgument(0);
+                    return from == 1 ? List.of(document(1L, "Дрель", "Ударная дрель", true))
+                            : from == 3 ? List.of(document(4L, "Отвертка", "Аккумуляторная", true))
+                            : List.of(document(5L, "Пила", "Дисковая пила", true));
+                });
+
+        assertFalse(index.isReady());
+        index.rebuild();
+
+        assertTrue(index.isReady());
+        assertThat(ids(index.search("пила")), contains(5L));
+        assertThat(ids(index.search("аккум")), contains(4L));
+    }
+
+    @Test
+    void searchMatchesAllQueryWordsByPrefixAndSkipsUnavailable() {
+        index.save(item(1L, "Дрель ударная", "Мощная", true));
+        index.save(item(2L, "Дрель", "Простая ударная", true));
+        index.save(item(3L, "Дрель ударная", "Сломана", false));
+        index.save(item(4L, "Молоток", "Ударный", true));
+
+        assertThat(ids(index.search("ДРЕЛ удар")), contains(1L, 2L));
+        assertThat(index.search("пила"), empty());
+        assertThat(index.search("  "), empty());
+    }
+
+    @Test
+    void searchPagesByOffsetAndByCursor() {
+        for (long id = 1; id <= 5; id++) {
+            index.save(item(id, "Дрель " + id, "Описание", true));
+        }
+
+        assertThat(ids(index.search("дрель", 1, 2)), contains(2L, 3L));
+        assertThat(ids(index.search("дрель", 10, 2)), empty());
+
+        List<ItemSearchHit> firstPage = index.searchAfter("дрель", Float.POSITIVE_INFINITY, 0L, 2);
+        ItemSearchHit last = firstPage.get(1);
+        List<ItemSearchHit> secondPage = index.searchAfter("дрель", last.getScore(), last.getId(), 2);
+        assertThat(secondPage.stream().map(ItemSearchHit::getId).toList(), contains(3L, 4L));
+    }
+
+    @Test
+    void searchRanksNameMatchesFirstAndKeepsOnlyRequestedPage() {
+        index.save(item(1L, "Молоток", "Подходит к дрели", true));
+        index.save(item(2L, "Дрель", "Ударная", true));
+        index.save(item(3L, "Ключ", "Для дрели", true));
+        index.save(item(4L, "Дрель аккумуляторная", "Легкая", true));
+
+        assertThat(ids(index.search("дрел")), contains(2L, 4L, 1L, 3L));
+        assertThat(ids(index.search("дрел", 1, 2)), contains(4L, 1L));
+        List<ItemSearchHit> afterName = index.searchAfter("дрел", 2f, 4L, 10);
+        assertThat(afterName.stream().map(ItemSearchHit::getId).toList(), contains(1L, 3L));
+    }
+
+    @Test
+    void itemsWithIdsBeyondIntRangeAreIndexed() {
+        long id = Integer.MAX_VALUE + 10L;
+        index.onItemChanged(new ItemChangedEvent(null, document(id, "Дрель", "Ударная", true)));
+        assertThat(ids(index.search("дрель")), contains(id));
+
+        index.onItemChanged(new ItemChangedEvent(null, document(id, "Дрель", "Ударная", false)));
+        assertThat(index.search("дрель"), empty());
+        assertThat(index.facets("дрель", 1).getUnavailable(), equalTo(1L));
+    }
+
+    @Test
+    void changeEventsUpdateIndexIncrementally() {
+        ItemDocument drill = document(1L, "Дрель", "Ударная", true);
+        index.onItemChanged(new ItemChangedEvent(null, drill));
+        assertThat(ids(index.search("дрель")), contains(1L));
+
+        ItemDocument saw = document(1L, "Пила", "Ударная", true);
+        index.onItemChanged(new ItemChangedEvent(drill, saw));
+        assertThat(index.search("дрель"), empty());
+        assertThat(ids(index.search("пила")), contains(1L));
+
+        ItemDocument unavailableSaw = document(1L, "Пила", "Ударная", false);
+        index.onItemChanged(new ItemChangedEvent(saw, unavailableSaw));
+        assertThat(index.search("пила"), empty());
+        assertThat(index.getByUserId(10L).size(), equalTo(1));
+
+        index.onItemChanged(new ItemChangedEvent(unavailableSaw, null));
+        assertTrue(index.getItemById(1L).isEmpty());
+        assertThat(index.getByUserId(10L), empty());
+    }
+
+    @Test
+    void facetsCountAllMatchesInOnePass() {
+        index.onItemChanged(new ItemChangedEvent(null, new ItemDocument(1L, 10L, "Дрель", "Ударная", true, null)));
+        index.onItemChanged(new ItemChangedEvent(null, new ItemDocument(2L, 20L, "Дрель", "Старая", true, 5L)));
+        index.onItemChanged(new ItemChangedEvent(null, new ItemDocument(3L, 20L, "Дрель", "Детская", true, null)));
+        index.onItemChanged(new ItemChangedEvent(null, new ItemDocument(4L, 10L, "Дрель", "Сломана", false, null)));
+        index.onItemChanged(new ItemChangedEvent(null, new ItemDocument(5L, 30L, "Пила", "Ручная", true, null)));
+
+        ItemSearchFacets facets = index.facets("дрель", 1);
+
+        assertThat(facets.getTotal(), equalTo(3L));
+        assertThat(facets.getAvailable(), equalTo(3L));
+        assertThat(facets.getUnavailable(), equalTo(1L));
+        assertThat(facets.getForRequest(), equalTo(1L));
+        assertThat(facets.getNotForRequest(), equalTo(2L));
+        assertThat(facets.getOwners(), equalTo(Map.of(20L, 2L)));
+    }
+
+    private static ItemDocument document(Long id, String name, String description, boolean available) {
+        return new ItemDocument(id, 10L, name, description, available, null);
+    }
+
+    private static Item item(Long id, String name, String description, boolean available) {
+        return new Item(id, new User(10L, "owner", "owner@mail.ru"), name, description, available, null, null);
+    }
+
+    private static List<Long> ids(List<Item> items) {
+        return items.stream().map(Item::getId).toList();
+    }
+}
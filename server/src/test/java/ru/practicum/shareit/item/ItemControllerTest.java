@@ -20,6 +20,9 @@ import ru.practicum.shareit.item.dto.CreateCommentRequest;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.model.Comment;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemSearchFacets;
+import ru.practicum.shareit.item.model.ItemSearchPage;
+import ru.practicum.shareit.item.model.ItemStats;
 import ru.practicum.shareit.request.model.ItemRequest;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.UserService;
@@ -27,8 +30,10 @@ import ru.practicum.shareit.user.dto.UserDto;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.core.Is.is;
 import static org.mockito.Mockito.*;
@@ -61,10 +66,10 @@ class ItemControllerTest {
 
     private final UserDto userDto1 = new UserDto(1, "user1", "user1@user1.ru");
     private final ItemDto itemDto1 = new ItemDto(1L, "item1",
-            "description1", true, null, LocalDateTime.now(), LocalDateTime.now());
+            "description1", true, null, LocalDateTime.now(), LocalDateTime.now(), null);
 
     private final ItemDto itemDtoWithBooking = new ItemDto(2L, "itemDtoWithBooking", "descriptionDtoWithBooking",
-            true, null, null, null);
+            true, null, null, null, null);
     private final CommentDto commentDto1 = new CommentDto(1L, "comment1", "user1", Instant.now());
 
     @BeforeEach
@@ -115,7 +120,7 @@ class ItemControllerTest {
     void getItemByIdTest() throws Exception {
         Item item = new Item(itemDtoWithBooking.getId(), new User(), itemDtoWithBooking.getName(), itemDtoWithBooking.getDescription(),
                 itemDtoWithBooking.isAvailable(), null, new ItemRequest());
-        when(itemService.getById(anyLong()))
+        when(itemService.getById(anyLong(), anyLong()))
                 .thenReturn(item);
         mockMvc.perform(get("/items/" + itemDto1.getId())
                         .header("X-Sharer-User-Id", userDto1.getId()))
@@ -130,9 +135,9 @@ class ItemControllerTest {
     void searchByTextTest() throws Exception {
         Item item = new Item(itemDto1.getId(), new User(), itemDto1.getName(), itemDto1.getDescription(),
                 itemDto1.isAvailable(), null, new ItemRequest());
-        when(itemService.search(anyString()))
+        when(itemService.search("item1", 0, 10, false))
                 .thenReturn(List.of(item));
-        mockMvc.perform(get("/items/search").param("text", "item1")
+        mockMvc.perform(get("/items/search").param("text", "item1").param("from", "0").param("size", "10")
                         .content(mapper.writeValueAsString(itemDto1))
                         .characterEncoding(StandardCharsets.UTF_8)
                         .contentType(MediaType.APPLICATION_JSON)
@@ -143,6 +148,53 @@ class ItemControllerTest {
                 .andExpect(jsonPath("$[0].name", is(itemDto1.getName()), String.class));
     }
 
+    @Test
+    void searchPageTest() throws Exception {
+        Item item = new Item(itemDto1.getId(), new User(), itemDto1.getName(), itemDto1.getDescription(),
+                itemDto1.isAvailable(), null, new ItemRequest());
+        when(itemService.searchPage("item1", "cursor", 5, true))
+                .thenReturn(new ItemSearchPage(List.of(item), "next", "item1",
+                        new ItemSearchFacets(1, 1, 2, 0, 1, Map.of(7L, 1L))));
+        mockMvc.perform(get("/items/search/page")
+                        .param("text", "item1")
+                        .param("cursor", "cursor")
+                        .param("size", "5")
+                        .param("facets", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.facets.total", is(1)))
+                .andExpect(jsonPath("$.facets.unavailable", is(2)))
+                .andExpect(jsonPath("$.facets.owners.7", is(1)))
+                .andExpect(jsonPath("$.items[0].id", is(itemDto1.getId()), Long.class))
+                .andExpect(jsonPath("$.nextCursor", is("next")))
+                .andExpect(jsonPath("$.suggestion", is("item1")));
+    }
+
+    @Test
+    void statsTest() throws Exception {
+        when(itemService.getStats(1L, LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 14)))
+                .thenReturn(List.of(new ItemStats(1L, "item1", 4, 2, 1, 1, 0.5, 2.0, 21.0, 10.5)));
+        mockMvc.perform(get("/items/stats")
+                        .header("X-Sharer-User-Id", 1)
+                        .param("from", "2024-03-01")
+                        .param("to", "2024-03-14"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].itemId", is(1L), Long.class))
+                .andExpect(jsonPath("$[0].approvalRate", is(0.5)))
+                .andExpect(jsonPath("$[0].bookedHoursPerWeek", is(10.5)));
+    }
+
+    @Test
+    void suggestTest() throws Exception {
+        when(itemService.suggest("дре", 3))
+                .thenReturn(List.of("Дрель", "Дрель ударная"));
+        mockMvc.perform(get("/items/suggest")
+                        .param("prefix", "дре")
+                        .param("size", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0]", is("Дрель")))
+                .andExpect(jsonPath("$[1]", is("Дрель ударная")));
+    }
+
     @Test
     void addIncorrectCommentTest() throws Exception {
         Comment comment = new Comment(commentDto1.getId(), commentDto1.getText(),
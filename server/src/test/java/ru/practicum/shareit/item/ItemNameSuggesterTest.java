@@ -0,0 +1,127 @@
+package ru.practicum.shareit.item;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.shareit.item.dao.ItemRepository;
+import ru.practicum.shareit.item.dto.ItemNameCount;
+import ru.practicum.shareit.item.model.ItemDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ItemNameSuggesterTest {
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    private ItemSearchProperties properties;
+    private ItemNameSuggester suggester;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ItemSearchProperties();
+        suggester = new ItemNameSuggester(itemRepository, properties);
+    }
+
+    @Test
+    void suggestReturnsMostFrequentNamesByPrefixIgnoringCase() {
+        when(itemRepository.countAvailableByName()).thenReturn(List.of(
+                count("Дрель", 5), count("дрель ударная", 7), count("Дрезина", 1),
+                count("Ёлка", 2), count("Пила", 9)));
+        suggester.rebuild();
+
+        assertThat(suggester.suggest("ДРЕ", 2), contains("дрель ударная", "Дрель"));
+        assertThat(suggester.suggest("дре", 10), contains("дрель ударная", "Дрель", "Дрезина"));
+        assertThat(suggester.suggest("елк", 10), contains("Ёлка"));
+        assertThat(suggester.suggest("молоток", 10), empty());
+    }
+
+    @Test
+    void suggestScansManyBlocksAndKeepsTopByCount() {
+        List<ItemNameCount> counts = new ArrayList<>();
+        IntStream.range(0, 1000).forEach(i -> counts.add(count(String.format("вещь %04d", i), i % 100 + 1)));
+        counts.add(count("весло", 500));
+        when(itemRepository.countAvailableByName()).thenReturn(counts);
+        suggester.rebuild();
+
+        assertThat(suggester.suggest("ве", 3), contains("весло", "вещь 0099", "вещь 0199"));
+        assertThat(suggester.suggest("вещь 05", 2), contains("вещь 0599", "вещь 0598"));
+    }
+
+    @Test
+    void changesAreVisibleImmediatelyAndSurviveMerge() {
+        properties.setSuggestMergeThreshold(2);
+        when(itemRepository.countAvailableByName()).thenReturn(List.of(count("Дрель", 1), count("Дрезина", 2)));
+        suggester.rebuild();
+
+        ItemDocument drill = document("Дрель", true);
+        suggester.onItemChanged(new ItemChangedEvent(null, drill));
+        suggester.onItemChanged(new ItemChangedEvent(null, drill));
+        assertThat(suggester.suggest("дре", 10), contains("Дрель", "Дрезина"));
+
+        suggester.onItemChanged(new ItemChangedEvent(document("Дрезина", true), document("Дрезина", false)));
+        suggester.onItemChanged(new ItemChangedEvent(document("Дрезина", true), document("Самокат", true)));
+        suggester.onItemChanged(new ItemChangedEvent(null, document("Дрова", true)));
+        suggester.merge();
+
+        assertThat(suggester.suggest("др", 10), contains("Дрель", "Дрова"));
+        assertThat(suggester.suggest("с", 10), contains("Самокат"));
+    }
+
+    @Test
+    void itemsOfDeletedOwnerAreRemovedBeforeAndAfterMerge() {
+        properties.setSuggestMergeThreshold(1);
+        when(itemRepository.countAvailableByName()).thenReturn(List.of(count("Дрель", 1), count("Дрезина", 2)));
+        suggester.rebuild();
+
+        suggester.onItemChanged(new ItemChangedEvent(document("Дрезина", true), null));
+        suggester.onItemChanged(new ItemChangedEvent(document("Дрезина", true), null));
+        assertThat(suggester.suggest("дре", 10), contains("Дрель"));
+
+        suggester.merge();
+        assertThat(suggester.suggest("дре", 10), contains("Дрель"));
+    }
+
+    @Test
+    void scheduledRebuildPicksUpChangesFromOtherInstancesWithoutDoubleCounting() {
+        when(itemRepository.countAvailableByName()).thenReturn(
+                List.of(count("Дрель", 1), count("Дрезина", 2)),
+                List.of(count("Дрель", 3), count("Дрезина", 2), count("Дрова", 4)));
+        suggester.rebuild();
+        ItemDocument drill = document("Дрель", true);
+        suggester.onItemChanged(new ItemChangedEvent(null, drill));
+        suggester.onItemChanged(new ItemChangedEvent(null, drill));
+
+        new ItemNameSuggestRebuildJob(suggester).rebuildSuggestions();
+
+        assertThat(suggester.suggest("др", 10), contains("Дрова", "Дрель", "Дрезина"));
+    }
+
+    private static ItemDocument document(String name, boolean available) {
+        return new ItemDocument(1L, 10L, name, "описание", available, null);
+    }
+
+    private static ItemNameCount count(String name, long count) {
+        return new ItemNameCount() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public Long getCount() {
+                return count;
+            }
+        };
+    }
+}
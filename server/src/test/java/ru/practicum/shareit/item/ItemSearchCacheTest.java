@@ -0,0 +1,186 @@
+package ru.practicum.shareit.item;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.shareit.item.dao.ItemRepository;
+import ru.practicum.shareit.item.model.ItemDocument;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ItemSearchCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ItemRepository itemRepository;
+    private ItemSearchCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        itemRepository = mock(ItemRepository.class);
+        cache = new ItemSearchCache(new ItemSearchProperties(), itemRepository, meterRegistry);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void normalizedQueriesShareEntryAndHitsAreCounted() {
+        cache.get("Дрель  ударная", 0, 10, () -> load(1L));
+        List<Long> ids = cache.get(" дрель ударная", 0, 10, () -> load(2L));
+        cache.get("дрель ударная", 10, 10, () -> load(3L));
+
+        assertThat(ids, contains(1L));
+        assertThat(loads.get(), equalTo(2));
+        assertThat(meterRegistry.get("cache.gets").tag("cache", ItemSearchCache.NAME).tag("result", "hit")
+                .functionCounter().count(), equalTo(1.0));
+        assertThat(meterRegistry.get("cache.gets").tag("cache", ItemSearchCache.NAME).tag("result", "miss")
+                .functionCounter().count(), equalTo(2.0));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<List<Long>> first = executor.submit(() -> cache.get("дрель", 0, 10, () -> {
+                loading.countDown();
+                await(release);
+                return load(1L);
+            }));
+            loading.await(5, TimeUnit.SECONDS);
+            Future<List<Long>> second = executor.submit(() -> cache.get("дрель", 0, 10, () -> load(2L)));
+            Future<List<Long>> third = executor.submit(() -> cache.get("дрель", 0, 10, () -> load(3L)));
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS), contains(1L));
+            assertThat(second.get(5, TimeUnit.SECONDS), contains(1L));
+            assertThat(third.get(5, TimeUnit.SECONDS), contains(1L));
+            assertThat(loads.get(), equalTo(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void itemChangeInvalidatesOnlyQueriesItCouldMatch() {
+        cache.get("дрели", 0, 10, () -> load(1L));
+        cache.get("пила", 0, 10, () -> load(2L));
+        when(itemRepository.findQueriesMatching(any(), eq("Дрель Ударная"))).thenAnswer(invocation ->
+                List.of(invocation.<String[]>getArgument(0)).stream().filter("дрели"::equals).toList());
+
+        cache.onItemChanged(new ItemChangedEvent(null, document("Дрель", "Ударная", true)));
+
+        cache.get("дрели", 0, 10, () -> load(3L));
+        cache.get("пила", 0, 10, () -> load(4L));
+        assertThat(loads.get(), equalTo(3));
+    }
+
+    @Test
+    void queryWithSameLexemeButNoCommonSubstringIsInvalidated() {
+        // "happiness" и "happy" в английской морфологии оба дают лексему happi
+        cache.get("happiness", 0, 10, () -> load(1L));
+        when(itemRepository.findQueriesMatching(argThat(queries -> List.of(queries).contains("happiness")),
+                eq("Happy Birthday set"))).thenReturn(List.of("happiness"));
+
+        cache.onItemChanged(new ItemChangedEvent(null, document("Happy", "Birthday set", true)));
+        cache.get("happiness", 0, 10, () -> load(2L));
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    void substringMatchIsInvalidatedWithoutQuery() {
+        cache.get("дрел", 0, 10, () -> load(1L));
+
+        cache.onItemChanged(new ItemChangedEvent(null, document("Дрель", "Ударная", true)));
+        cache.get("дрел", 0, 10, () -> load(2L));
+
+        assertThat(loads.get(), equalTo(2));
+        verify(itemRepository, never()).findQueriesMatching(any(), anyString());
+    }
+
+    @Test
+    void loadOverlappingInvalidationIsNotStored() {
+        // загрузка прочитала базу до коммита новой вещи, а инвалидация прошла раньше, чем загрузка закончилась
+        List<Long> stale = cache.get("дрель", 0, 10, () -> {
+            cache.onItemChanged(new ItemChangedEvent(null, document("Дрель", "Ударная", true)));
+            return load(1L);
+        });
+        List<Long> fresh = cache.get("дрель", 0, 10, () -> load(2L));
+
+        assertThat(stale, contains(1L));
+        assertThat(fresh, contains(2L));
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    void failedLexemeMatchClearsCache() {
+        cache.get("пила", 0, 10, () -> load(1L));
+        when(itemRepository.findQueriesMatching(any(), anyString())).thenThrow(new IllegalStateException("down"));
+
+        cache.onItemChanged(new ItemChangedEvent(null, document("Дрель", "Ударная", true)));
+        cache.get("пила", 0, 10, () -> load(2L));
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    void availabilityChangeInvalidatesAndUnrelatedEditDoesNot() {
+        cache.get("пила", 0, 10, () -> load(1L));
+
+        ItemDocument saw = document("Пила", "Дисковая", true);
+        cache.onItemChanged(new ItemChangedEvent(saw, saw));
+        cache.get("пила", 0, 10, () -> load(2L));
+        assertThat(loads.get(), equalTo(1));
+
+        cache.onItemChanged(new ItemChangedEvent(saw, document("Пила", "Дисковая", false)));
+        cache.get("пила", 0, 10, () -> load(3L));
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    void unavailableItemChangeKeepsEntries() {
+        cache.get("пила", 0, 10, () -> load(1L));
+
+        cache.onItemChanged(new ItemChangedEvent(document("Пила", "", false), null));
+        cache.get("пила", 0, 10, () -> load(2L));
+
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    private List<Long> load(Long id) {
+        loads.incrementAndGet();
+        return List.of(id);
+    }
+
+    private static ItemDocument document(String name, String description, boolean available) {
+        return new ItemDocument(1L, 10L, name, description, available, null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
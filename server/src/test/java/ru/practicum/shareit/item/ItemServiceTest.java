@@ -2,27 +2,48 @@ package ru.practicum.shareit.item;
 
 import org.mapstruct.factory.Mappers;
 import ru.practicum.shareit.booking.dao.BookingRepository;
+import ru.practicum.shareit.exception.BadRequest;
 import ru.practicum.shareit.exception.ForbiddenException;
 import ru.practicum.shareit.item.dto.CreateItemRequest;
+import ru.practicum.shareit.item.dto.ItemCommentSnippet;
+import ru.practicum.shareit.item.dto.ItemLastNextBookDate;
+import ru.practicum.shareit.item.dto.ItemSearchCursor;
+import ru.practicum.shareit.item.dto.ItemSearchFacetRow;
+import ru.practicum.shareit.item.dto.ItemSearchHit;
+import ru.practicum.shareit.item.dto.ItemSearchTermCorrection;
+import ru.practicum.shareit.item.dto.ItemStatsRow;
 import ru.practicum.shareit.item.dto.UpdateItemRequest;
 import ru.practicum.shareit.item.model.Comment;
+import ru.practicum.shareit.item.model.CommentView;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemDocument;
+import ru.practicum.shareit.item.model.ItemSearchFacets;
+import ru.practicum.shareit.item.model.ItemSearchPage;
+import ru.practicum.shareit.item.model.ItemStats;
 import ru.practicum.shareit.item.dao.CommentRepository;
+import ru.practicum.shareit.item.dao.InMemoryItemRepo;
 import ru.practicum.shareit.item.dao.ItemRepository;
 import ru.practicum.shareit.request.dao.ItemRequestRepository;
 import ru.practicum.shareit.exception.NotFoundException;
 import ru.practicum.shareit.request.model.ItemRequest;
 import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserDeletedEvent;
 import ru.practicum.shareit.user.UserService;
 import ru.practicum.shareit.user.dao.UserRepository;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.ApplicationEventPublisher;
 import org.mockito.*;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -48,6 +69,17 @@ class ItemServiceTest {
     private ItemRequestRepository itemRequestRepository;
     @Mock
     private UserService userService;
+    @Mock
+    private InMemoryItemRepo itemIndex;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private ItemNameSuggester nameSuggester;
+    @Spy
+    private ItemSearchProperties searchProperties = new ItemSearchProperties();
+    @Spy
+    private ItemSearchCache searchCache = new ItemSearchCache(new ItemSearchProperties(),
+            mock(ItemRepository.class), new SimpleMeterRegistry());
 
     @InjectMocks
     private ItemService itemService;
@@ -71,6 +103,23 @@ class ItemServiceTest {
                 .findAllByOwnerWithComments(any());
     }
 
+    @Test
+    void getCommentViewsGroupsByItemAndSkipsQueryForNoItems() {
+        CommentView first = new CommentView(1L, 1L, "first", "author", Instant.now());
+        CommentView second = new CommentView(1L, 2L, "second", "author", Instant.now());
+        CommentView other = new CommentView(2L, 3L, "other", "author", Instant.now());
+        when(commentRepository.findViewsByItemIds(Set.of(1L, 2L, 3L)))
+                .thenReturn(List.of(first, second, other));
+
+        Map<Long, List<CommentView>> comments = itemService.getCommentViews(Set.of(1L, 2L, 3L));
+
+        assertEquals(List.of(first, second), comments.get(1L));
+        assertEquals(List.of(other), comments.get(2L));
+        assertFalse(comments.containsKey(3L));
+        assertTrue(itemService.getCommentViews(Set.of()).isEmpty());
+        verify(commentRepository, times(1)).findViewsByItemIds(any());
+    }
+
     @Test
     void getAllItemsByUserWhenInvokedThenReturnedItemsCollectionInList() throws NotFoundException {
         long userId = 0L;
@@ -98,6 +147,111 @@ class ItemServiceTest {
                 .findAllByOwnerWithComments(any());
     }
 
+    @Test
+    void getAllItemsByUserRecomputesOnlyStaleBookingDates() throws NotFoundException {
+        LocalDateTime stored = LocalDateTime.now().minusDays(3);
+        Item fresh = new Item();
+        fresh.setId(1L);
+        fresh.setLastBooking(stored);
+        fresh.setBookingDatesValidUntil(LocalDateTime.now().plusDays(1));
+        Item stale = new Item();
+        stale.setId(2L);
+        stale.setLastBooking(stored);
+        stale.setBookingDatesValidUntil(LocalDateTime.now().minusMinutes(1));
+        LocalDateTime recomputed = LocalDateTime.now().minusMinutes(1);
+        ItemLastNextBookDate dates = mock(ItemLastNextBookDate.class);
+        when(dates.getId()).thenReturn(2L);
+        when(dates.getLastBooking()).thenReturn(recomputed);
+        when(itemRepository.findAllByOwnerWithComments(any())).thenReturn(List.of(fresh, stale));
+        when(itemRepository.getLastAndNextBookingDate(eq(List.of(2L)), any())).thenReturn(List.of(dates));
+
+        List<Item> actualItems = itemService.getItemsByUserId(1L);
+
+        assertThat(actualItems.get(0).getLastBooking(), equalTo(stored));
+        assertThat(actualItems.get(1).getLastBooking(), equalTo(recomputed));
+    }
+
+    @Test
+    void getItemByIdWithFreshBookingDatesDoesNotRecomputeThem() throws NotFoundException {
+        User owner = new User();
+        owner.setId(5L);
+        Item item = new Item();
+        item.setId(1L);
+        item.setOwner(owner);
+        item.setBookingDatesValidUntil(LocalDateTime.now().plusHours(1));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
+
+        itemService.getById(1L, 5L);
+
+        verify(itemRepository, never()).getLastAndNextBookingDate(any(), any());
+    }
+
+    @Test
+    void getItemByIdForNonOwnerReturnsNoBookingDates() throws NotFoundException {
+        User owner = new User();
+        owner.setId(5L);
+        Item item = new Item();
+        item.setId(1L);
+        item.setOwner(owner);
+        item.setLastBooking(LocalDateTime.now().minusDays(1));
+        item.setNextBooking(LocalDateTime.now().plusDays(1));
+        item.setBookingDatesValidUntil(LocalDateTime.now().minusMinutes(1));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
+
+        Item actualItem = itemService.getById(1L, 6L);
+
+        assertNull(actualItem.getLastBooking());
+        assertNull(actualItem.getNextBooking());
+        verify(itemRepository, never()).getLastAndNextBookingDate(any(), any());
+    }
+
+    @Test
+    void getItemByIdForOwnerReturnsBookingDates() throws NotFoundException {
+        User owner = new User();
+        owner.setId(5L);
+        Item item = new Item();
+        item.setId(1L);
+        item.setOwner(owner);
+        LocalDateTime last = LocalDateTime.now().minusDays(1);
+        item.setLastBooking(last);
+        item.setBookingDatesValidUntil(LocalDateTime.now().plusHours(1));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
+
+        Item actualItem = itemService.getById(1L, 5L);
+
+        assertThat(actualItem.getLastBooking(), equalTo(last));
+    }
+
+    @Test
+    void refreshExpiredBookingDatesUpdatesLockedItems() {
+        when(itemRepository.lockExpiredBookingDates(any(), eq(10))).thenReturn(List.of(1L, 2L));
+
+        assertThat(itemService.refreshExpiredBookingDates(10), equalTo(2));
+        verify(itemRepository).refreshBookingDates(eq(List.of(1L, 2L)), any());
+    }
+
+    @Test
+    void refreshBookingDatesCopiesUpdatedDatesIntoLoadedItem() {
+        Item item = new Item();
+        item.setId(1L);
+        LocalDateTime last = LocalDateTime.now().minusDays(3);
+        item.setLastBooking(last);
+        LocalDateTime next = LocalDateTime.now().plusDays(1);
+        ItemLastNextBookDate dates = mock(ItemLastNextBookDate.class);
+        when(dates.getLastBooking()).thenReturn(last);
+        when(dates.getNextBooking()).thenReturn(next);
+        when(dates.getValidUntil()).thenReturn(next);
+        when(itemRepository.lockForBookingDates(List.of(1L))).thenReturn(List.of(1L));
+        when(itemRepository.findStoredBookingDates(List.of(1L))).thenReturn(List.of(dates));
+
+        itemService.refreshBookingDates(item);
+
+        verify(itemRepository).refreshBookingDates(eq(List.of(1L)), any());
+        assertThat(item.getLastBooking(), equalTo(last));
+        assertThat(item.getNextBooking(), equalTo(next));
+        assertThat(item.getBookingDatesValidUntil(), equalTo(next));
+    }
+
     @Test
     void getItemByIdWhenItemFoundThenReturnedItem() throws NotFoundException {
         long itemId = 0L;
@@ -163,7 +317,7 @@ class ItemServiceTest {
                 .thenReturn(List.of(new Item()));
 
         assertDoesNotThrow(() -> itemService.getItemsByUserId(userId));
-        verify(itemRepository, never()).search("");
+        verify(itemRepository, never()).search(anyString(), anyString(), anyInt(), anyInt());
     }
 
     @Test
@@ -208,6 +362,65 @@ class ItemServiceTest {
         assertDoesNotThrow(() -> itemService.deleteById(item.getId(), user.getId()));
     }
 
+    @Test
+    void updateItemPublishesBeforeAndAfterState() throws Exception {
+        User user = new User(1L, "name", "email");
+        Item item = new Item(1L, user, "a", "b", true, null, null);
+        when(itemRepository.findById(any()))
+                .thenReturn(Optional.of(item));
+        when(userService.getById(anyLong()))
+                .thenReturn(user);
+
+        itemService.updateItem(new UpdateItemRequest("name", null, false), item.getId(), user.getId());
+
+        ArgumentCaptor<ItemChangedEvent> captor = ArgumentCaptor.forClass(ItemChangedEvent.class);
+        verify(eventPublisher).publishEvent(captor.capture());
+        assertThat(captor.getValue().getBefore().getName(), equalTo("a"));
+        assertThat(captor.getValue().getAfter().getName(), equalTo("name"));
+        assertFalse(captor.getValue().getAfter().isAvailable());
+    }
+
+    @Test
+    void deletingUserPublishesRemovalOfEachOwnedItem() {
+        when(itemRepository.findDocumentsByOwnerId(1L)).thenReturn(List.of(
+                new ItemDocument(1L, 1L, "Дрель", "Ударная", true, null),
+                new ItemDocument(2L, 1L, "Пила", "Ручная", false, null)));
+
+        itemService.onUserDeleted(new UserDeletedEvent(1L));
+
+        ArgumentCaptor<ItemChangedEvent> captor = ArgumentCaptor.forClass(ItemChangedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(captor.capture());
+        assertThat(captor.getAllValues().stream().map(ItemChangedEvent::getItemId).toList(), equalTo(List.of(1L, 2L)));
+        assertTrue(captor.getAllValues().stream().allMatch(event -> event.getAfter() == null));
+    }
+
+    @Test
+    void deleteByIdPublishesRemoval() throws Exception {
+        User user = new User(1L, "name", "email");
+        Item item = new Item(1L, user, "a", "b", true, null, null);
+        when(itemRepository.findById(any()))
+                .thenReturn(Optional.of(item));
+        when(userService.getById(anyLong()))
+                .thenReturn(user);
+
+        itemService.deleteById(item.getId(), user.getId());
+
+        ArgumentCaptor<ItemChangedEvent> captor = ArgumentCaptor.forClass(ItemChangedEvent.class);
+        verify(eventPublisher).publishEvent(captor.capture());
+        assertThat(captor.getValue().getItemId(), equalTo(1L));
+        assertNull(captor.getValue().getAfter());
+    }
+
+    @Test
+    void searchUsesInMemoryIndexWhenReady() {
+        Item item = new Item(1L, new User(), "Дрель", "Простая дрель", true, null, null);
+        when(itemIndex.isReady()).thenReturn(true);
+        when(itemIndex.search("дрель", 0, 10)).thenReturn(List.of(item));
+
+        assertThat(itemService.search("дрель", 0, 10), equalTo(List.of(item)));
+        verify(itemRepository, never()).search(anyString(), anyString(), anyInt(), anyInt());
+    }
+
     @Test
     void deleteByIdFailTest() throws NotFoundException {
         User user = new User(1L, "name", "email");
@@ -257,7 +470,295 @@ class ItemServiceTest {
 
     @Test
     void search() {
-        assertDoesNotThrow(() -> itemService.search(""));
+        assertDoesNotThrow(() -> itemService.search("", 0, 10));
+    }
+
+    @Test
+    void searchPageReturnsItemsInHitOrderWithNextCursor() throws BadRequest {
+        Item first = new Item(1L, new User(), "Дрель", "Простая дрель", true, null, null);
+        Item second = new Item(2L, new User(), "Дрель", "Ударная дрель", true, null, null);
+        when(itemRepository.searchAfter(eq("дрель"), eq("%дрель%"), eq(Float.POSITIVE_INFINITY), eq(0L), eq(2)))
+                .thenReturn(List.of(hit(2L, 0.5f), hit(1L, 0.25f)));
+        when(itemRepository.findAllById(List.of(2L, 1L)))
+                .thenReturn(List.of(first, second));
+
+        ItemSearchPage page = itemService.searchPage("дрель", null, 2, false);
+
+        assertThat(page.getItems(), equalTo(List.of(second, first)));
+        ItemSearchCursor next = ItemSearchCursor.decode(page.getNextCursor());
+        assertThat(next.getScore(), equalTo(0.25f));
+        assertThat(next.getId(), equalTo(1L));
+    }
+
+    @Test
+    void searchPageContinuesAfterCursorAndStopsOnShortPage() throws BadRequest {
+        String cursor = new ItemSearchCursor(0.25f, 1L).encode();
+        when(itemRepository.searchAfter("дрель", "%дрель%", 0.25f, 1L, 2))
+                .thenReturn(List.of(hit(3L, 0.1f)));
+        when(itemRepository.findAllById(List.of(3L)))
+                .thenReturn(List.of(new Item(3L, new User(), "Дрель", "Старая дрель", true, null, null)));
+
+        ItemSearchPage page = itemService.searchPage("дрель", cursor, 2, false);
+
+        assertThat(page.getItems().size(), equalTo(1));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void searchPageWithBrokenCursorThrowsBadRequest() {
+        assertThrows(BadRequest.class, () -> itemService.searchPage("дрель", "not-a-cursor", 2, false));
+        verify(itemRepository, never()).searchAfter(anyString(), anyString(), anyFloat(), anyLong(), anyInt());
+    }
+
+    @Test
+    void searchPageWithoutHitsReturnsCorrectedResultsAndSuggestion() throws BadRequest {
+        when(itemRepository.searchAfter(eq("Дрелл ударнаяя"), anyString(), anyFloat(), anyLong(), anyInt()))
+                .thenReturn(List.of());
+        when(itemRepository.findTermCorrections("дрелл ударнаяя"))
+                .thenReturn(List.of(correction("дрелл", "дрель"), correction("ударнаяя", "ударная")));
+        when(itemRepository.searchAfter("дрель ударная", "%дрель ударная%", Float.POSITIVE_INFINITY, 0L, 2))
+                .thenReturn(List.of(hit(1L, 0.5f)));
+        when(itemRepository.findAllById(List.of(1L)))
+                .thenReturn(List.of(new Item(1L, new User(), "Дрель ударная", "Мощная", true, null, null)));
+
+        ItemSearchPage page = itemService.searchPage("Дрелл ударнаяя", null, 2, false);
+
+        assertThat(page.getSuggestion(), equalTo("дрель ударная"));
+        assertThat(page.getItems().get(0).getId(), equalTo(1L));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void searchPageWithoutHitsAndKnownWordsHasNoSuggestion() throws BadRequest {
+        when(itemRepository.searchAfter(eq("пила"), anyString(), anyFloat(), anyLong(), anyInt()))
+                .thenReturn(List.of());
+        when(itemRepository.findTermCorrections("пила"))
+                .thenReturn(List.of(correction("пила", "пила")));
+
+        ItemSearchPage page = itemService.searchPage("пила", null, 2, false);
+
+        assertThat(page.getItems(), empty());
+        assertNull(page.getSuggestion());
+    }
+
+    @Test
+    void searchPageWithCursorDoesNotCorrectSpelling() throws BadRequest {
+        String cursor = new ItemSearchCursor(0.25f, 1L).encode();
+        when(itemRepository.searchAfter("дрелл", "%дрелл%", 0.25f, 1L, 2))
+                .thenReturn(List.of());
+
+        itemService.searchPage("дрелл", cursor, 2, false);
+
+        verify(itemRepository, never()).findTermCorrections(anyString());
+    }
+
+    @Test
+    void searchPageWithFacetsFoldsGroupedRows() throws BadRequest {
+        when(itemRepository.searchAfter(eq("дрель"), anyString(), anyFloat(), anyLong(), anyInt()))
+                .thenReturn(List.of(hit(1L, 0.5f)));
+        when(itemRepository.findAllById(List.of(1L)))
+                .thenReturn(List.of(new Item(1L, new User(), "Дрель", "Мощная", true, null, null)));
+        when(itemRepository.searchFacets("дрель", "%дрель%", 10))
+                .thenReturn(List.of(
+                        facetRow(1, 5L, null, 1L, 0L),
+                        facetRow(1, 7L, null, 3L, 2L),
+                        facetRow(2, null, true, 1L, 1L),
+                        facetRow(2, null, false, 3L, 1L),
+                        facetRow(3, null, null, 4L, 2L)));
+
+        ItemSearchFacets facets = itemService.searchPage("дрель", null, 1, true).getFacets();
+
+        assertThat(facets.getTotal(), equalTo(4L));
+        assertThat(facets.getUnavailable(), equalTo(2L));
+        assertThat(facets.getForRequest(), equalTo(1L));
+        assertThat(facets.getNotForRequest(), equalTo(3L));
+        assertThat(List.copyOf(facets.getOwners().keySet()), equalTo(List.of(7L, 5L)));
+    }
+
+    @Test
+    void searchPageWithoutFacetsDoesNotCountThem() throws BadRequest {
+        when(itemRepository.searchAfter(eq("дрель"), anyString(), anyFloat(), anyLong(), anyInt()))
+                .thenReturn(List.of(hit(1L, 0.5f)));
+        when(itemRepository.findAllById(List.of(1L)))
+                .thenReturn(List.of(new Item(1L, new User(), "Дрель", "Мощная", true, null, null)));
+
+        assertNull(itemService.searchPage("дрель", null, 1, false).getFacets());
+        verify(itemRepository, never()).searchFacets(anyString(), anyString(), anyInt());
+    }
+
+    @Test
+    void statsDeriveRatesFromDailyRollups() throws Exception {
+        LocalDate from = LocalDate.of(2024, 3, 1);
+        LocalDate to = LocalDate.of(2024, 3, 14);
+        List<ItemStatsRow> rows = List.of(
+                statsRow(1L, 4L, 4 * 7200L, 2L, 1L, 1L, 21 * 3600L),
+                statsRow(2L, 0L, 0L, 0L, 0L, 0L, 0L));
+        when(itemRepository.findStats(1L, from, to)).thenReturn(rows);
+
+        List<ItemStats> stats = itemService.getStats(1L, from, to);
+
+        assertThat(stats.get(0).getApprovalRate(), equalTo(0.5));
+        assertThat(stats.get(0).getAverageLeadTimeHours(), equalTo(2.0));
+        assertThat(stats.get(0).getBookedHours(), equalTo(21.0));
+        assertThat(stats.get(0).getBookedHoursPerWeek(), equalTo(10.5));
+        assertNull(stats.get(1).getApprovalRate());
+        assertNull(stats.get(1).getAverageLeadTimeHours());
+        verify(userService).getById(1L);
+    }
+
+    @Test
+    void statsDefaultToLastFourWeeks() throws Exception {
+        itemService.getStats(1L, null, null);
+
+        verify(itemRepository).findStats(1L, LocalDate.now().minusDays(27), LocalDate.now());
+    }
+
+    @Test
+    void statsRejectInvertedPeriod() {
+        assertThrows(BadRequest.class, () -> itemService.getStats(1L, LocalDate.of(2024, 3, 2),
+                LocalDate.of(2024, 3, 1)));
+        verify(itemRepository, never()).findStats(any(), any(), any());
+    }
+
+    private static ItemStatsRow statsRow(Long itemId, Long requests, Long leadSeconds, Long approved, Long rejected,
+                                         Long expired, Long bookedSeconds) {
+        ItemStatsRow row = mock(ItemStatsRow.class);
+        lenient().when(row.getItemId()).thenReturn(itemId);
+        when(row.getRequests()).thenReturn(requests);
+        lenient().when(row.getLeadSeconds()).thenReturn(leadSeconds);
+        when(row.getApproved()).thenReturn(approved);
+        when(row.getRejected()).thenReturn(rejected);
+        when(row.getExpired()).thenReturn(expired);
+        when(row.getBookedSeconds()).thenReturn(bookedSeconds);
+        return row;
+    }
+
+    private static ItemSearchFacetRow facetRow(int grouping, Long ownerId, Boolean forRequest,
+                                               Long available, Long unavailable) {
+        return new ItemSearchFacetRow() {
+            @Override
+            public Integer getGrouping() {
+                return grouping;
+            }
+
+            @Override
+            public Long getOwnerId() {
+                return ownerId;
+            }
+
+            @Override
+            public Boolean getForRequest() {
+                return forRequest;
+            }
+
+            @Override
+            public Long getAvailable() {
+                return available;
+            }
+
+            @Override
+            public Long getUnavailable() {
+                return unavailable;
+            }
+        };
+    }
+
+    private static ItemSearchTermCorrection correction(String word, String correction) {
+        return new ItemSearchTermCorrection() {
+            @Override
+            public String getWord() {
+                return word;
+            }
+
+            @Override
+            public String getCorrection() {
+                return correction;
+            }
+        };
+    }
+
+    private static ItemSearchHit hit(long id, float score) {
+        return new ItemSearchHit() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Float getScore() {
+                return score;
+            }
+        };
+    }
+
+    @Test
+    void searchBlankTextDoesNotQueryRepository() {
+        assertThat(itemService.search("   ", 0, 10), empty());
+        verify(itemRepository, never()).search(anyString(), anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void searchPassesEscapedPatternToRepository() {
+        Item item = new Item(1L, new User(), "Дрель", "Простая дрель", true, null, null);
+        when(itemRepository.search("дрель 100%", "%дрель 100\\%%", 20, 10))
+                .thenReturn(List.of(item));
+
+        List<Item> actualItems = itemService.search("дрель 100%", 20, 10);
+
+        assertThat(actualItems, equalTo(List.of(item)));
+    }
+
+    @Test
+    void repeatedSearchIsServedFromCacheAndReloadedById() {
+        Item item = new Item(1L, new User(), "Дрель", "Простая дрель", true, null, null);
+        when(itemRepository.search("дрель", "%дрель%", 0, 10))
+                .thenReturn(List.of(item));
+        when(itemRepository.findAllById(List.of(1L)))
+                .thenReturn(List.of(item));
+
+        assertThat(itemService.search("Дрель", 0, 10), equalTo(List.of(item)));
+        assertThat(itemService.search("  дрель ", 0, 10), equalTo(List.of(item)));
+
+        verify(itemRepository, times(1)).search(anyString(), anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void suggestBlankPrefixDoesNotTouchSuggester() {
+        assertThat(itemService.suggest(" ", 10), empty());
+        verifyNoInteractions(nameSuggester);
+    }
+
+    @Test
+    void searchWithCommentsAttachesSnippetsToRankedItems() {
+        Item drill = new Item(1L, new User(), "Дрель", "Ударная", true, null, null);
+        Item saw = new Item(2L, new User(), "Пила", "Дисковая", true, null, null);
+        when(itemRepository.searchWithComments("мощная", "%мощная%", 0, 10))
+                .thenReturn(List.of(hit(2L, 0.6f), hit(1L, 0.3f)));
+        when(itemRepository.findAllById(List.of(2L, 1L)))
+                .thenReturn(List.of(drill, saw));
+        when(itemRepository.findCommentSnippets("мощная", List.of(2L, 1L), 3))
+                .thenReturn(List.of(snippet(2L, "очень <b>мощная</b> пила")));
+
+        List<Item> items = itemService.search("Мощная", 0, 10, true);
+
+        assertThat(items, equalTo(List.of(saw, drill)));
+        assertThat(saw.getCommentSnippets(), equalTo(List.of("очень <b>мощная</b> пила")));
+        assertThat(drill.getCommentSnippets(), empty());
+        verify(itemIndex, never()).isReady();
+    }
+
+    private static ItemCommentSnippet snippet(Long itemId, String text) {
+        return new ItemCommentSnippet() {
+            @Override
+            public Long getItemId() {
+                return itemId;
+            }
+
+            @Override
+            public String getSnippet() {
+                return text;
+            }
+        };
     }
 
     @Test
@@ -167,7 +167,7 @@ class ItemRequestServiceTest {
         Set<ItemDto> items = new HashSet<>();
         items.add(new ItemDto(1L, "a", "b", true,
                 List.of(new CommentDto(1L, "text", "author", Instant.now())),
-                LocalDateTime.now(), LocalDateTime.now()));
+                LocalDateTime.now(), LocalDateTime.now(), null));
         assertDoesNotThrow(() -> itemRequestMapper.toItemRequest(new ItemRequestDto(1L, "descr", Instant.now(), items), new User()));
     }
 
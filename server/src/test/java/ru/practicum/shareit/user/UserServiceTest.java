@@ -3,6 +3,8 @@ package ru.practicum.shareit.user;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mapstruct.factory.Mappers;
+import org.springframework.context.ApplicationEventPublisher;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
@@ -18,6 +20,7 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -29,6 +32,9 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private UserService userService;
 
@@ -78,6 +84,11 @@ public class UserServiceTest {
     void deleteUserByIdTest() {
         userService.deleteUser(1L);
         assertNull(userRepository.findById(1L).orElse(null));
+
+        InOrder order = inOrder(eventPublisher, userRepository);
+        order.verify(eventPublisher).publishEvent(argThat((Object event) ->
+                event instanceof UserDeletedEvent deleted && deleted.getUserId() == 1L));
+        order.verify(userRepository).deleteById(1L);
     }
 
     @Test
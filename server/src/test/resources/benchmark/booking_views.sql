@@ -0,0 +1,99 @@
+-- Сравнение чтения страницы бронирований через сущности с графом загрузки Booking.DETAILS_GRAPH
+-- и через строки BookingView (BookingQueryRepositoryImpl.findViews).
+-- Запуск на базе со схемой из schema.sql:
+--     psql -h localhost -p 6541 -U shareit -d shareit -f server/src/test/resources/benchmark/booking_views.sql
+-- Данные генерируются внутри транзакции и откатываются в конце, база остается как была.
+--
+-- Набор данных: арендатор с 5000 бронированиями 500 вещей с длинными описаниями, страница - 50 строк.
+-- Оба запроса идут по idx_bookings_booker_start; разница в ширине строки: путь через сущности читает
+-- все колонки трех таблиц, которые Hibernate затем превращает в управляемые сущности, BookingView -
+-- только поля BookingDto. Последний запрос показывает, сколько байт строк страницы получает драйвер.
+-- Память на стороне JVM этот скрипт не измеряет: ее стоит снимать профилировщиком сервера
+-- (например, JFR) на этих же данных.
+
+BEGIN;
+
+INSERT INTO users (name, email)
+SELECT 'benchmark ' || n, 'benchmark' || n || '@example.com'
+FROM generate_series(1, 2) AS n;
+
+CREATE TEMP TABLE benchmark_users ON COMMIT DROP AS
+SELECT min(id) AS owner_id, max(id) AS booker_id FROM users WHERE email LIKE 'benchmark%@example.com';
+
+INSERT INTO items (owner_id, name, description, available)
+SELECT benchmark_users.owner_id, 'Вещь ' || n, repeat('Подробное описание вещи. ', 20), true
+FROM benchmark_users, generate_series(1, 500) AS n;
+
+-- бронирования арендатора: по одному в день, по кругу по вещам владельца
+INSERT INTO bookings (book_start, book_end, item_id, booker_id, owner_id, book_status)
+SELECT now() + (n || ' days')::interval,
+       now() + (n || ' days')::interval + interval '1 hour',
+       item.id, benchmark_users.booker_id, benchmark_users.owner_id, 'APPROVED'
+FROM benchmark_users
+CROSS JOIN generate_series(1, 5000) AS n
+JOIN LATERAL (
+    SELECT id FROM items
+    WHERE owner_id = benchmark_users.owner_id
+    ORDER BY id
+    OFFSET n % 500
+    LIMIT 1
+) item ON true;
+
+ANALYZE users;
+ANALYZE items;
+ANALYZE bookings;
+
+-- было: сущности с графом загрузки (SQL, в который Hibernate переводил запрос с Booking.DETAILS_GRAPH)
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT booking.id, booking.book_start, booking.book_end, booking.item_id, booking.booker_id, booking.owner_id,
+       booking.book_status, booking.version,
+       item.id, item.owner_id, item.name, item.description, item.available, item.last_booking, item.next_booking,
+       item.booking_dates_valid_until, item.request_id,
+       booker.id, booker.name, booker.email
+FROM bookings booking
+LEFT JOIN items item ON item.id = booking.item_id
+LEFT JOIN users booker ON booker.id = booking.booker_id
+WHERE booking.booker_id = (SELECT booker_id FROM benchmark_users)
+ORDER BY booking.book_start, booking.id
+LIMIT 50;
+
+-- стало: строки BookingView только с полями BookingDto
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT booking.id, booking.book_start, booking.book_end, booking.book_status,
+       item.id, item.name, item.description, item.available, item.last_booking, item.next_booking,
+       booker.id, booker.name, booker.email
+FROM bookings booking
+JOIN items item ON item.id = booking.item_id
+JOIN users booker ON booker.id = booking.booker_id
+WHERE booking.booker_id = (SELECT booker_id FROM benchmark_users)
+ORDER BY booking.book_start, booking.id
+LIMIT 50;
+
+-- объем строк страницы, который получает драйвер
+SELECT 'entities' AS path, count(*) AS rows, sum(pg_column_size(page.*)) AS bytes
+FROM (
+    SELECT booking.*, item.id AS item_id_, item.owner_id AS item_owner_id, item.name, item.description,
+           item.available, item.last_booking, item.next_booking, item.booking_dates_valid_until,
+           item.request_id, booker.id AS booker_id_, booker.name AS booker_name, booker.email
+    FROM bookings booking
+    LEFT JOIN items item ON item.id = booking.item_id
+    LEFT JOIN users booker ON booker.id = booking.booker_id
+    WHERE booking.booker_id = (SELECT booker_id FROM benchmark_users)
+    ORDER BY booking.book_start, booking.id
+    LIMIT 50
+) page
+UNION ALL
+SELECT 'views', count(*), sum(pg_column_size(page.*))
+FROM (
+    SELECT booking.id, booking.book_start, booking.book_end, booking.book_status,
+           item.id AS item_id, item.name, item.description, item.available, item.last_booking, item.next_booking,
+           booker.id AS booker_id, booker.name AS booker_name, booker.email
+    FROM bookings booking
+    JOIN items item ON item.id = booking.item_id
+    JOIN users booker ON booker.id = booking.booker_id
+    WHERE booking.booker_id = (SELECT booker_id FROM benchmark_users)
+    ORDER BY booking.book_start, booking.id
+    LIMIT 50
+) page;
+
+ROLLBACK;
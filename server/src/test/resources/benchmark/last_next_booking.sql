@@ -0,0 +1,95 @@
+-- Сравнение старого и нового запроса дат последнего и ближайшего бронирования (ItemRepository.FIND_LAST_AND_NEXT_BOOK_DATE).
+-- Запуск на базе со схемой из schema.sql:
+--     psql -h localhost -p 6541 -U shareit -d shareit -f server/src/test/resources/benchmark/last_next_booking.sql
+-- Данные генерируются внутри транзакции и откатываются в конце, база остается как была.
+--
+-- Набор данных: "тяжелый" владелец с 20 вещами, у каждой 2000 прошедших и 200 будущих бронирований,
+-- плюс 2000 вещей других владельцев по 20 бронирований. Старый запрос строит для каждой вещи
+-- тяжелого владельца 2000 x 200 = 400 000 строк до GROUP BY, новый читает по одной строке индекса на вещь.
+
+BEGIN;
+
+INSERT INTO users (name, email)
+SELECT 'benchmark ' || n, 'benchmark' || n || '@example.com'
+FROM generate_series(1, 101) AS n;
+
+CREATE TEMP TABLE benchmark_owner ON COMMIT DROP AS
+SELECT min(id) AS id FROM users WHERE email LIKE 'benchmark%@example.com';
+
+INSERT INTO items (owner_id, name, description, available)
+SELECT benchmark_owner.id, 'Тяжелая вещь ' || n, 'Вещь с длинной историей бронирований', true
+FROM benchmark_owner, generate_series(1, 20) AS n;
+
+INSERT INTO items (owner_id, name, description, available)
+SELECT benchmark_owner.id + 1 + n % 100, 'Вещь ' || n, 'Обычная вещь', true
+FROM benchmark_owner, generate_series(1, 2000) AS n;
+
+-- прошедшие бронирования: по одному в день назад от текущего момента
+INSERT INTO bookings (book_start, book_end, item_id, booker_id, book_status)
+SELECT now() - (n || ' days')::interval - interval '1 hour',
+       now() - (n || ' days')::interval,
+       item.id, benchmark_owner.id + 1, 'APPROVED'
+FROM benchmark_owner
+JOIN items item ON item.owner_id = benchmark_owner.id
+CROSS JOIN generate_series(1, 2000) AS n;
+
+-- будущие бронирования
+INSERT INTO bookings (book_start, book_end, item_id, booker_id, book_status)
+SELECT now() + (n || ' days')::interval,
+       now() + (n || ' days')::interval + interval '1 hour',
+       item.id, benchmark_owner.id + 1, 'WAITING'
+FROM benchmark_owner
+JOIN items item ON item.owner_id = benchmark_owner.id
+CROSS JOIN generate_series(1, 200) AS n;
+
+-- фон: вещи остальных владельцев
+INSERT INTO bookings (book_start, book_end, item_id, booker_id, book_status)
+SELECT now() + ((n - 10) || ' days')::interval,
+       now() + ((n - 10) || ' days')::interval + interval '1 hour',
+       item.id, benchmark_owner.id, 'APPROVED'
+FROM benchmark_owner
+JOIN items item ON item.owner_id <> benchmark_owner.id AND item.name LIKE 'Вещь %'
+CROSS JOIN generate_series(1, 20) AS n;
+
+ANALYZE users;
+ANALYZE items;
+ANALYZE bookings;
+
+-- было: два LEFT JOIN и GROUP BY (SQL, в который Hibernate переводил JPQL-запрос)
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT item.id,
+       max(past_booking.book_start) AS last_booking,
+       min(next_booking.book_end) AS next_booking
+FROM items item
+LEFT JOIN bookings past_booking ON past_booking.item_id = item.id AND past_booking.book_end < now()
+LEFT JOIN bookings next_booking ON next_booking.item_id = item.id AND next_booking.book_start > now()
+WHERE item.owner_id = (SELECT id FROM benchmark_owner)
+GROUP BY item.id;
+
+-- стало: LATERAL-подзапросы с LIMIT 1 по индексам idx_bookings_item_start и idx_bookings_item_end
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT item.id,
+       last_booking.book_start AS last_booking,
+       next_booking.book_end AS next_booking
+FROM items item
+LEFT JOIN LATERAL (
+    SELECT booking.book_start
+    FROM bookings booking
+    WHERE booking.item_id = item.id
+    AND booking.book_start < now()
+    AND booking.book_end < now()
+    ORDER BY booking.book_start DESC
+    LIMIT 1
+) last_booking ON true
+LEFT JOIN LATERAL (
+    SELECT booking.book_end
+    FROM bookings booking
+    WHERE booking.item_id = item.id
+    AND booking.book_end > now()
+    AND booking.book_start > now()
+    ORDER BY booking.book_end
+    LIMIT 1
+) next_booking ON true
+WHERE item.owner_id = (SELECT id FROM benchmark_owner);
+
+ROLLBACK;